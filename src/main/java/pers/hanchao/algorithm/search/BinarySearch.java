@@ -2,6 +2,10 @@ package pers.hanchao.algorithm.search;
 
 /**
  * <p>二分查找:只针对有序数组</P>
+ * 1.binarySearch(a, value)：递归实现，查找整个数组
+ * 2.binarySearch(a, fromIndex, toIndex, value)：循环实现，只查找[fromIndex, toIndex)，供IntArrayList等只使用数组前size个元素的列表调用；
+ *   有int[]、long[]、double[]三个版本，double按Double.compare比较，与Arrays.sort的顺序一致
+ * 3.不存在返回-1；有重复元素时返回其中任意一个的下标
  *
  * @author hanchao
  */
@@ -39,10 +43,87 @@ public class BinarySearch {
         }
     }
 
+    /**
+     * 在a[fromIndex, toIndex)中查找
+     */
+    public static int binarySearch(int[] a, int fromIndex, int toIndex, int value) {
+        rangeCheck(a.length, fromIndex, toIndex);
+        int low = fromIndex;
+        int high = toIndex - 1;
+        while (low <= high) {
+            //无符号右移，low + high溢出时仍然正确
+            int mid = (low + high) >>> 1;
+            if (a[mid] < value) {
+                low = mid + 1;
+            } else if (a[mid] > value) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 在a[fromIndex, toIndex)中查找
+     */
+    public static int binarySearch(long[] a, int fromIndex, int toIndex, long value) {
+        rangeCheck(a.length, fromIndex, toIndex);
+        int low = fromIndex;
+        int high = toIndex - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (a[mid] < value) {
+                low = mid + 1;
+            } else if (a[mid] > value) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 在a[fromIndex, toIndex)中查找，按Double.compare比较(NaN最大，-0.0 < 0.0)
+     */
+    public static int binarySearch(double[] a, int fromIndex, int toIndex, double value) {
+        rangeCheck(a.length, fromIndex, toIndex);
+        int low = fromIndex;
+        int high = toIndex - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Double.compare(a[mid], value);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 范围校验：0 <= fromIndex <= toIndex <= length
+     */
+    private static void rangeCheck(int length, int fromIndex, int toIndex) {
+        if (fromIndex > toIndex) {
+            throw new IllegalArgumentException("fromIndex(" + fromIndex + ") > toIndex(" + toIndex + ")");
+        }
+        if (fromIndex < 0 || toIndex > length) {
+            throw new ArrayIndexOutOfBoundsException("fromIndex = " + fromIndex + ", toIndex = " + toIndex
+                    + ", length = " + length);
+        }
+    }
+
     public static void main(String[] args) {
         int[] a = new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
         for (int i = 0; i < 12; i++) {
             System.out.println(BinarySearch.binarySearch(a, i));
         }
+        //只查找前5个元素
+        System.out.println(BinarySearch.binarySearch(a, 0, 5, 5) + " " + BinarySearch.binarySearch(a, 0, 5, 6));
     }
 }
@@ -0,0 +1,99 @@
+package pers.hanchao.datastructure.list;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * <p>MyGapBufferList和MyArrayList在编辑轨迹上的性能对比</P>
+ * 1.参数：args[0] = 初始元素数量，默认1000000；args[1] = 编辑次数，默认20000
+ * 2.编辑轨迹：光标随机游走，每次移动0~8个位置，60%在光标处插入、40%删除光标前一个元素(退格)；
+ *   jump = 光标每次编辑有多大概率跳到随机位置，0表示完全聚集，1表示完全随机
+ * 3.两个列表回放同一条轨迹，最后校验内容一致，输出每次编辑的平均耗时(ns/op)
+ * 4.完全聚集时MyGapBufferList只移动几个元素；MyArrayList每次移动光标之后的全部元素；
+ *   完全随机时MyGapBufferList平均移动n/3个元素，但不是相邻移动，与MyArrayList相差不大
+ *
+ * @author hanchao
+ */
+public class GapBufferBenchmark {
+
+    private static final Object ELEMENT = new Object();
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int edits = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+
+        //预热
+        for (int round = 0; round < 3; round++) {
+            run(10_000, 100_000, 0, false);
+        }
+        for (double jump : new double[]{0, 0.01, 0.1, 1}) {
+            for (int round = 0; round < 2; round++) {
+                run(n, edits, jump, true);
+            }
+        }
+    }
+
+    private static void run(int n, int edits, double jump, boolean print) {
+        int[] trace = trace(n, edits, jump);
+
+        MyGapBufferList<Object> gap = new MyGapBufferList<>(n);
+        MyArrayList<Object> array = new MyArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            gap.add(ELEMENT);
+            array.add(ELEMENT);
+        }
+
+        long start = System.nanoTime();
+        for (int op : trace) {
+            if (op >= 0) {
+                gap.add(op, ELEMENT);
+            } else {
+                gap.remove(~op);
+            }
+        }
+        long gapNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int op : trace) {
+            if (op >= 0) {
+                array.add(op, ELEMENT);
+            } else {
+                array.remove(~op);
+            }
+        }
+        long arrayNanos = System.nanoTime() - start;
+
+        if (gap.size() != array.size() || !Arrays.equals(gap.toArray(), array.toArray())) {
+            throw new IllegalStateException("Lists differ !");
+        }
+        if (print) {
+            System.out.printf("n = %,d, edits = %,d, jump = %4.2f: MyGapBufferList %9.1f ns/op, MyArrayList %9.1f ns/op%n",
+                    n, edits, jump, (double) gapNanos / edits, (double) arrayNanos / edits);
+        }
+    }
+
+    /**
+     * 生成编辑轨迹：op >= 0表示在op处插入，op < 0表示删除~op处的元素
+     */
+    private static int[] trace(int n, int edits, double jump) {
+        Random random = new Random(42);
+        int[] trace = new int[edits];
+        int size = n;
+        int cursor = n / 2;
+        for (int i = 0; i < edits; i++) {
+            if (random.nextDouble() < jump) {
+                cursor = random.nextInt(size + 1);
+            } else {
+                cursor = Math.max(0, Math.min(size, cursor + random.nextInt(17) - 8));
+            }
+            if (random.nextInt(10) < 6 || cursor == 0) {
+                trace[i] = cursor++;
+                size++;
+            } else {
+                trace[i] = ~--cursor;
+                size--;
+            }
+        }
+        return trace;
+    }
+}
@@ -0,0 +1,384 @@
+package pers.hanchao.datastructure.list;
+
+import pers.hanchao.algorithm.search.BinarySearch;
+import pers.hanchao.algorithm.sort.Sortable;
+import pers.hanchao.algorithm.sort.bucket.RadixSort;
+import pers.hanchao.algorithm.sort.swap.QuickSort;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * <p>用int数组实现列表，MyArrayList<Integer>的不装箱版本</P>
+ * 1.elementData是int[]，每个元素4字节；MyArrayList<Integer>每个元素是一个引用 + 一个Integer对象(约16字节)
+ * 2.扩容与MyArrayList相同：1.5倍扩容，ensureCapacity(minCapacity)预分配，trimToSize()收缩
+ * 3.add(e)、get(index)、set(index,e)：不装箱；复杂度O(1)
+ * 4.add(index,e)、removeAt(index)：index及之后的元素移动；复杂度O(n)
+ * 5.addAll(int[])：一次扩容 + 一次System.arraycopy
+ * 6.indexOf(e)、contains(e)、removeValue(e)：直接用==比较，不调用equals；复杂度O(n)
+ * 7.sort()：Arrays.sort排序[0,size)；sort(Sortable)：装箱后交给项目中的排序算法，排序结果写回
+ *   RadixSort按十进制位分桶，不处理符号(负数下标越界)，并且sort返回null而不是排序结果，
+ *   所以sort(Sortable)不支持RadixSort，传入时抛出IllegalArgumentException
+ * 8.binarySearch(e)：列表有序时，用BinarySearch在[0,size)中查找，不存在返回-1
+ * 9.iterator()返回PrimitiveIterator.OfInt，nextInt()不装箱；forEach(IntConsumer)；stream()返回IntStream
+ *
+ * @author hanchao
+ */
+public class IntArrayList {
+    /**
+     * 默认容量：第一次添加元素时分配
+     */
+    private static final int DEFAULT_CAPACITY = 10;
+
+    /**
+     * 数组最大长度，部分虚拟机会在数组中保留头信息
+     */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * 空数组，所有空列表共用
+     */
+    private static final int[] EMPTY_ELEMENT_DATA = {};
+
+    /**
+     * 用数组存储元素，capacity = elementData.length >= size
+     */
+    private int[] elementData;
+
+    /**
+     * 实际元素个数
+     */
+    private int size;
+
+    /**
+     * 默认构造函数
+     */
+    public IntArrayList() {
+        this.elementData = EMPTY_ELEMENT_DATA;
+    }
+
+    /**
+     * 容量构造函数
+     */
+    public IntArrayList(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("The capacity must bigger than 0 !");
+        }
+        this.elementData = capacity == 0 ? EMPTY_ELEMENT_DATA : new int[capacity];
+    }
+
+    /**
+     * 数组构造函数：拷贝a中的元素
+     */
+    public IntArrayList(int[] a) {
+        this(a.length);
+        addAll(a);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 当前容量 = elementData.length
+     */
+    public int capacity() {
+        return elementData.length;
+    }
+
+    /**
+     * 确保数组容量，容量足够时什么都不做
+     */
+    public void ensureCapacity(int minCapacity) {
+        //1.minCapacity溢出为负数说明元素太多
+        if (minCapacity < 0) {
+            throw new OutOfMemoryError("Required array size too large");
+        }
+        //2.容量足够则直接返回
+        if (minCapacity > elementData.length) {
+            grow(minCapacity);
+        }
+    }
+
+    /**
+     * 扩容：新容量 = 旧容量 * 1.5，不足minCapacity时取minCapacity，空数组至少扩到DEFAULT_CAPACITY
+     */
+    private void grow(int minCapacity) {
+        int oldCapacity = elementData.length;
+        int newCapacity = oldCapacity + (oldCapacity >> 1);
+        if (elementData == EMPTY_ELEMENT_DATA) {
+            newCapacity = DEFAULT_CAPACITY;
+        }
+        if (newCapacity - minCapacity < 0) {
+            newCapacity = minCapacity;
+        }
+        if (newCapacity - MAX_ARRAY_SIZE > 0) {
+            newCapacity = minCapacity > MAX_ARRAY_SIZE ? Integer.MAX_VALUE : MAX_ARRAY_SIZE;
+        }
+        elementData = Arrays.copyOf(elementData, newCapacity);
+    }
+
+    /**
+     * 把容量收缩为size
+     */
+    public void trimToSize() {
+        if (size < elementData.length) {
+            elementData = size == 0 ? EMPTY_ELEMENT_DATA : Arrays.copyOf(elementData, size);
+        }
+    }
+
+    /**
+     * 越界判断
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new ArrayIndexOutOfBoundsException("index must small than " + size + ", index = " + index);
+        }
+    }
+
+    public int get(int index) {
+        checkIndex(index);
+        return elementData[index];
+    }
+
+    /**
+     * 覆盖指定位置的元素，返回旧元素
+     */
+    public int set(int index, int element) {
+        checkIndex(index);
+        int old = elementData[index];
+        elementData[index] = element;
+        return old;
+    }
+
+    /**
+     * 末尾添加元素
+     */
+    public void add(int element) {
+        if (size == elementData.length) {
+            grow(size + 1);
+        }
+        elementData[size++] = element;
+    }
+
+    /**
+     * 指定位置添加元素，index及之后的元素后移
+     */
+    public void add(int index, int element) {
+        if (index < 0 || index > size) {
+            throw new ArrayIndexOutOfBoundsException("index must not bigger than " + size + ", index = " + index);
+        }
+        ensureCapacity(size + 1);
+        System.arraycopy(elementData, index, elementData, index + 1, size - index);
+        elementData[index] = element;
+        size++;
+    }
+
+    /**
+     * 末尾批量添加
+     */
+    public void addAll(int[] a) {
+        addAll(a, 0, a.length);
+    }
+
+    /**
+     * 末尾批量添加a[offset, offset + length)
+     */
+    public void addAll(int[] a, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > a.length - length) {
+            throw new ArrayIndexOutOfBoundsException("offset = " + offset + ", length = " + length);
+        }
+        //1.一次扩容
+        ensureCapacity(size + length);
+        //2.一次拷贝
+        System.arraycopy(a, offset, elementData, size, length);
+        size += length;
+    }
+
+    public void addAll(IntArrayList list) {
+        addAll(list.elementData, 0, list.size);
+    }
+
+    /**
+     * 删除指定位置的元素并返回，index+1及之后的元素前移
+     */
+    public int removeAt(int index) {
+        checkIndex(index);
+        int old = elementData[index];
+        System.arraycopy(elementData, index + 1, elementData, index, size - index - 1);
+        size--;
+        return old;
+    }
+
+    /**
+     * 删除第一个等于element的元素
+     */
+    public boolean removeValue(int element) {
+        int index = indexOf(element);
+        if (index < 0) {
+            return false;
+        }
+        removeAt(index);
+        return true;
+    }
+
+    public int indexOf(int element) {
+        for (int i = 0; i < size; i++) {
+            if (elementData[i] == element) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int lastIndexOf(int element) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (elementData[i] == element) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(int element) {
+        return indexOf(element) >= 0;
+    }
+
+    /**
+     * 清空，容量不变；int数组不需要置空
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(elementData, size);
+    }
+
+    /**
+     * 升序排序
+     */
+    public void sort() {
+        Arrays.sort(elementData, 0, size);
+    }
+
+    /**
+     * 用项目中的排序算法排序：装箱为Integer[]，排序后写回
+     */
+    public void sort(Sortable sorter) {
+        if (sorter instanceof RadixSort) {
+            throw new IllegalArgumentException("RadixSort is not supported, use sort() instead !");
+        }
+        Integer[] boxed = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            boxed[i] = elementData[i];
+        }
+        //项目中的排序算法返回的是Number[]拷贝
+        Number[] sorted = sorter.sort(boxed);
+        for (int i = 0; i < size; i++) {
+            elementData[i] = sorted[i].intValue();
+        }
+    }
+
+    /**
+     * 二分查找，列表必须升序；不存在返回-1
+     */
+    public int binarySearch(int element) {
+        return BinarySearch.binarySearch(elementData, 0, size, element);
+    }
+
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(elementData[i]);
+        }
+    }
+
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            int cursor;
+
+            @Override
+            public boolean hasNext() {
+                return cursor < size;
+            }
+
+            @Override
+            public int nextInt() {
+                if (cursor >= size) {
+                    throw new NoSuchElementException();
+                }
+                return elementData[cursor++];
+            }
+        };
+    }
+
+    public IntStream stream() {
+        return Arrays.stream(elementData, 0, size);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(elementData[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    public static void main(String[] args) {
+        IntArrayList list = new IntArrayList(new int[]{49, 38, 65, 97, 76, 13, 27});
+        list.add(0, 8);
+        list.addAll(new int[]{5, 1});
+        System.out.println(list + " size = " + list.size() + " contains 97 = " + list.contains(97));
+        //交给项目中的快速排序
+        list.sort(new QuickSort());
+        System.out.println(list + " binarySearch(76) = " + list.binarySearch(76) + " binarySearch(77) = "
+                + list.binarySearch(77));
+        System.out.println(list.removeAt(0) + " " + list.removeValue(97) + " " + list + " sum = " + list.stream().sum());
+
+        //与MyArrayList<Integer>对比：占用内存和contains耗时
+        int n = 5_000_000;
+        Runtime runtime = Runtime.getRuntime();
+        for (int round = 0; round < 3; round++) {
+            System.gc();
+            long before = runtime.totalMemory() - runtime.freeMemory();
+            IntArrayList ids = new IntArrayList();
+            for (int i = 0; i < n; i++) {
+                ids.add(i * 7);
+            }
+            ids.trimToSize();
+            System.gc();
+            long primitiveBytes = runtime.totalMemory() - runtime.freeMemory() - before;
+            long start = System.nanoTime();
+            boolean found = ids.contains(-1);
+            long primitiveNanos = System.nanoTime() - start;
+
+            System.gc();
+            before = runtime.totalMemory() - runtime.freeMemory();
+            MyArrayList<Integer> boxed = new MyArrayList<>();
+            for (int i = 0; i < n; i++) {
+                boxed.add(i * 7);
+            }
+            boxed.trimToSize();
+            System.gc();
+            long boxedBytes = runtime.totalMemory() - runtime.freeMemory() - before;
+            start = System.nanoTime();
+            found |= boxed.contains(-1);
+            long boxedNanos = System.nanoTime() - start;
+            System.out.printf("round %d: IntArrayList %.1f bytes/element, contains %.2f ms; "
+                            + "MyArrayList<Integer> %.1f bytes/element, contains %.2f ms; found %b, sizes %d/%d%n",
+                    round, (double) primitiveBytes / n, primitiveNanos / 1e6, (double) boxedBytes / n,
+                    boxedNanos / 1e6, found, ids.size(), boxed.size());
+        }
+    }
+}
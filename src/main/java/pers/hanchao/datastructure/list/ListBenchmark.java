@@ -0,0 +1,110 @@
+package pers.hanchao.datastructure.list;
+
+import java.util.function.Predicate;
+
+/**
+ * <p>MyArrayList、MyBigArrayList追加性能</P>
+ * 1.参数：args[0] = 最大元素数量，默认100000000；从100万开始每次乘以10
+ * 2.每个规模分别测试：逐个add(1.5倍扩容)、先ensureCapacity(n)再add，输出每个元素的平均耗时(ns/op)、扩容次数和最终容量；
+ *   均摊O(1)时ns/op不随n增长，总耗时与n成正比
+ * 3.对比：每次add后trimToSize()，模拟每次只扩容1个元素，n翻倍时总耗时约变为4倍(O(n²))，只测到几万个元素
+ * 4.分段列表：对比MyArrayList和MyBigArrayList追加最大数量元素的总耗时和单次add的最大耗时；
+ *   MyArrayList扩容时一次拷贝整个数组(新旧数组同时存在)，MyBigArrayList只分配一个新段
+ * 5.所有位置都添加同一个对象，避免创建元素的开销混入结果；1亿个引用约400MB，建议 java -Xmx2g ListBenchmark
+ *
+ * @author hanchao
+ */
+public class ListBenchmark {
+
+    private static final Object ELEMENT = new Object();
+
+    public static void main(String[] args) {
+        long max = args.length > 0 ? Long.parseLong(args[0]) : 100_000_000L;
+
+        //预热
+        for (int round = 0; round < 5; round++) {
+            append(1_000_000, false);
+            exactFit(10_000);
+        }
+
+        System.out.println("======= append =======");
+        for (long n = 1_000_000; n <= max; n *= 10) {
+            report("add", (int) n, false);
+            report("ensureCapacity + add", (int) n, true);
+        }
+
+        System.out.println("======= max add pause, n = " + max + " =======");
+        for (int round = 0; round < 2; round++) {
+            maxPause("MyArrayList", (int) max, new MyArrayList<>()::add);
+            maxPause("MyBigArrayList", (int) max, new MyBigArrayList<>()::add);
+        }
+
+        System.out.println("======= exact fit (trimToSize after every add) =======");
+        for (int n = 10_000; n <= 80_000; n *= 2) {
+            long nanos = exactFit(n);
+            System.out.printf("n = %,11d, total %9.3f ms, %9.1f ns/op%n", n, nanos / 1e6, (double) nanos / n);
+        }
+    }
+
+    private static void report(String name, int n, boolean presize) {
+        System.gc();
+        long[] result = append(n, presize);
+        System.out.printf("%-22s n = %,11d, total %9.3f ms, %6.2f ns/op, grows %2d, capacity %,d%n",
+                name, n, result[0] / 1e6, (double) result[0] / n, result[1], result[2]);
+    }
+
+    /**
+     * 追加n个元素，返回{耗时，扩容次数，最终容量}
+     */
+    private static long[] append(int n, boolean presize) {
+        MyArrayList<Object> list = new MyArrayList<>();
+        long grows = 0;
+        int capacity = list.capacity();
+        long start = System.nanoTime();
+        if (presize) {
+            list.ensureCapacity(n);
+        }
+        for (int i = 0; i < n; i++) {
+            list.add(ELEMENT);
+            if (list.capacity() != capacity) {
+                capacity = list.capacity();
+                grows++;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        if (list.size() != n) {
+            throw new IllegalStateException("size " + list.size() + " != " + n);
+        }
+        return new long[]{nanos, grows, capacity};
+    }
+
+    /**
+     * 逐个add，记录单次add的最大耗时
+     */
+    private static void maxPause(String name, int n, Predicate<Object> add) {
+        System.gc();
+        long max = 0;
+        long start = System.nanoTime();
+        long last = start;
+        for (int i = 0; i < n; i++) {
+            add.test(ELEMENT);
+            long now = System.nanoTime();
+            max = Math.max(max, now - last);
+            last = now;
+        }
+        System.out.printf("%-15s total %9.3f ms, max add %8.3f ms%n", name, (last - start) / 1e6, max / 1e6);
+    }
+
+    /**
+     * 每次add后收缩容量，下一次add必然扩容并拷贝整个数组
+     */
+    private static long exactFit(int n) {
+        MyArrayList<Object> list = new MyArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            list.add(ELEMENT);
+            list.trimToSize();
+        }
+        return System.nanoTime() - start;
+    }
+}
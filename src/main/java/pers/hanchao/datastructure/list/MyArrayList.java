@@ -2,12 +2,20 @@ package pers.hanchao.datastructure.list;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * <p>用数组实现列表</P>
  * 1.size是实际元素个数，capacity是elementDate的定义长度，有可能size lt capacity，但是不可能size > capacity
- * 2.新增元素时，务必通过ensureCapacity保证elementDate的长度足够，避免数组越界
+ * 2.新增元素时，务必通过ensureCapacity保证elementDate的长度足够，避免数组越界；
+ *   容量不足时按1.5倍扩容(不足所需容量时直接扩到所需容量)，n次add只发生O(log n)次数组拷贝，均摊复杂度O(1)
  * 3.删除元素时，无需考虑elementDate的长度问题
  * 4.add(e)：末尾添加元素，size+1; 复杂度O(1)
  * 5.add(index,e)：确保index <= size；index及之后的元素后移；指定index添加元素； size++；复杂度O(n)
@@ -19,12 +27,31 @@ import java.util.Objects;
  * 11.Object[] Arrays.copyOf(srcArray, copyLength); 返回一个拷贝自srcArray数组的长度为copyLength的数组
  * 12.System.arraycopy(srcArray, srcArrayStartIndex, toArray, toArrayStartIndex, srcCopyLength); 从srcArray的第srcArrayStartIndex开始，拷贝至toArray数组的toArrayStartIndex，共计拷贝srcCopyLength个元素
  * 13.移除的元素置为null，有利于GC
+ * 14.ensureCapacity(minCapacity)：预估元素数量时提前扩容，避免多次扩容；trimToSize()：把容量收缩为size，释放多余空间
+ * 15.实现Iterable：iterator()、forEach(action)直接按下标访问数组；modCount记录结构修改次数，遍历过程中列表被修改则抛出ConcurrentModificationException
+ * 16.spliterator()：按下标范围[index, fence)二分切分，两半元素个数相差不超过1，切分后大小仍然精确(SIZED | SUBSIZED | ORDERED)；
+ *   第一次使用时才绑定size，stream()、parallelStream()基于它创建，不需要先toArray()
  *
  * @author hanchao
  */
-public class MyArrayList<E> {
+public class MyArrayList<E> implements Iterable<E> {
     /**
-     * 用数组存储元素
+     * 默认容量：第一次添加元素时分配
+     */
+    private static final int DEFAULT_CAPACITY = 10;
+
+    /**
+     * 数组最大长度，部分虚拟机会在数组中保留头信息
+     */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * 空数组，所有空列表共用
+     */
+    private static final Object[] EMPTY_ELEMENT_DATA = {};
+
+    /**
+     * 用数组存储元素，capacity = elementDate.length >= size
      */
     private Object[] elementDate;
 
@@ -33,11 +60,16 @@ public class MyArrayList<E> {
      */
     private int size;
 
+    /**
+     * 结构修改(元素个数变化)的次数，迭代器据此快速失败
+     */
+    private int modCount;
+
     /**
      * 默认构造函数
      */
     public MyArrayList() {
-        this.elementDate = new Object[]{};
+        this.elementDate = EMPTY_ELEMENT_DATA;
         this.size = 0;
     }
 
@@ -89,7 +121,7 @@ public class MyArrayList<E> {
      */
     public boolean contains(Object o) {
         //获取index
-        return Objects.nonNull(get(indexOf(o)));
+        return indexOf(o) >= 0;
     }
 
     /**
@@ -183,6 +215,7 @@ public class MyArrayList<E> {
 
         //添加元素
         elementDate[size] = e;
+        modCount++;
 
         //size+1
         size++;
@@ -192,17 +225,56 @@ public class MyArrayList<E> {
 
 
     /**
-     * 确保数组容量(确保新增元素时，数组不越界；移除元素无需担心)
+     * 确保数组容量(确保新增元素时，数组不越界；移除元素无需担心)，容量足够时什么都不做
+     */
+    public void ensureCapacity(int minCapacity) {
+        //1.minCapacity溢出为负数说明元素太多
+        if (minCapacity < 0) {
+            throw new OutOfMemoryError("Required array size too large");
+        }
+        //2.容量足够则直接返回
+        if (minCapacity > elementDate.length) {
+            grow(minCapacity);
+        }
+    }
+
+    /**
+     * 扩容：新容量 = 旧容量 * 1.5，不足minCapacity时取minCapacity，空数组至少扩到DEFAULT_CAPACITY
      */
-    private void ensureCapacity(int newCapacity) {
-        //1.校验新capacity大于size
-        if (newCapacity <= size) {
-            throw new IllegalArgumentException("New capacity must bigger than size.");
+    private void grow(int minCapacity) {
+        int oldCapacity = elementDate.length;
+        //1.1.5倍扩容，int溢出时newCapacity为负数
+        int newCapacity = oldCapacity + (oldCapacity >> 1);
+        if (elementDate == EMPTY_ELEMENT_DATA) {
+            newCapacity = DEFAULT_CAPACITY;
+        }
+        if (newCapacity - minCapacity < 0) {
+            newCapacity = minCapacity;
         }
-        //2.拷贝新数组
+        //2.不超过数组最大长度
+        if (newCapacity - MAX_ARRAY_SIZE > 0) {
+            newCapacity = minCapacity > MAX_ARRAY_SIZE ? Integer.MAX_VALUE : MAX_ARRAY_SIZE;
+        }
+        //3.拷贝新数组
         elementDate = Arrays.copyOf(elementDate, newCapacity);
     }
 
+    /**
+     * 把容量收缩为size
+     */
+    public void trimToSize() {
+        if (size < elementDate.length) {
+            elementDate = size == 0 ? EMPTY_ELEMENT_DATA : Arrays.copyOf(elementDate, size);
+        }
+    }
+
+    /**
+     * 当前容量 = elementDate.length
+     */
+    public int capacity() {
+        return elementDate.length;
+    }
+
     /**
      * Removes the first occurrence of the specified element from this list,
      * if it is present (optional operation).  If this list does not contain
@@ -227,10 +299,14 @@ public class MyArrayList<E> {
     public boolean remove(Object o) {
         //1.获取元素位置
         int index = indexOf(o);
+        if (index < 0) {
+            return false;
+        }
         //2.将index 至 size之间的元素左移一位
         System.arraycopy(elementDate, index + 1, elementDate, index, size - index - 1);
-        //3.删除最后一个元素
-        elementDate[size] = null;
+        //3.删除最后一个元素，容量不变，数组中size之后的位置必须为null
+        elementDate[--size] = null;
+        modCount++;
         return true;
     }
 
@@ -286,6 +362,7 @@ public class MyArrayList<E> {
         System.arraycopy(cArray, 0, elementDate, size, cArray.length);
         //4.size+n
         size += cArray.length;
+        modCount++;
         return false;
     }
 
@@ -331,6 +408,7 @@ public class MyArrayList<E> {
         System.arraycopy(cArray, 0, elementDate, index, cArray.length);
         //6.size+n
         size += cArray.length;
+        modCount++;
         return true;
     }
 
@@ -380,7 +458,7 @@ public class MyArrayList<E> {
      * @see #contains(Object)
      */
     public boolean retainAll(Collection<?> c) {
-        for (Object e : elementDate) {
+        for (Object e : toArray()) {
             if (!c.contains(e)) {
                 remove(e);
             }
@@ -396,12 +474,13 @@ public class MyArrayList<E> {
      *                                       is not supported by this list
      */
     public void clear() {
-        //1.每个元素置为kong
-        for (int i = 0; i < elementDate.length; i++) {
+        //1.每个元素置为kong(size之后本来就是null)
+        for (int i = 0; i < size; i++) {
             elementDate[i] = null;
         }
         //2.size=0
         size = 0;
+        modCount++;
     }
 
     /**
@@ -472,7 +551,7 @@ public class MyArrayList<E> {
      */
     public void add(int index, E element) {
         //1.index 不能超过size
-        if (index >= size) {
+        if (index < 0 || index > size) {
             throw new IllegalArgumentException("Index cannot bigger than size.");
         }
         //2.扩容+1
@@ -483,6 +562,7 @@ public class MyArrayList<E> {
         elementDate[index] = element;
         //5.size+1
         size++;
+        modCount++;
     }
 
     /**
@@ -507,6 +587,7 @@ public class MyArrayList<E> {
         elementDate[size - 1] = null;
         //4.size--
         size--;
+        modCount++;
         //返回当前元素
         return e;
     }
@@ -533,14 +614,14 @@ public class MyArrayList<E> {
         int index = -1;
         //2.遍历
         if (o == null) {
-            for (int i = 0; i < elementDate.length; i++) {
+            for (int i = 0; i < size; i++) {
                 if (null == elementDate[i]) {
                     index = i;
                     break;
                 }
             }
         } else {
-            for (int i = 0; i < elementDate.length; i++) {
+            for (int i = 0; i < size; i++) {
                 if (o.equals(elementDate[i])) {
                     index = i;
                     break;
@@ -573,14 +654,14 @@ public class MyArrayList<E> {
         int index = -1;
         //2.遍历
         if (o == null) {
-            for (int i = elementDate.length - 1; i >= 0; i--) {
+            for (int i = size - 1; i >= 0; i--) {
                 if (null == elementDate[i]) {
                     index = i;
                     break;
                 }
             }
         } else {
-            for (int i = elementDate.length - 1; i >= 0; i--) {
+            for (int i = size - 1; i >= 0; i--) {
                 if (o.equals(elementDate[i])) {
                     index = i;
                     break;
@@ -590,4 +671,165 @@ public class MyArrayList<E> {
 
         return index;
     }
+
+    /**
+     * 按下标顺序遍历的迭代器，支持remove()
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr();
+    }
+
+    private class Itr implements Iterator<E> {
+        /**
+         * 下一个元素的下标
+         */
+        int cursor;
+        /**
+         * 上一次返回的元素下标，-1表示没有或已删除
+         */
+        int lastRet = -1;
+        int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return cursor < size;
+        }
+
+        @Override
+        public E next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (cursor >= size) {
+                throw new NoSuchElementException();
+            }
+            lastRet = cursor++;
+            return (E) elementDate[lastRet];
+        }
+
+        @Override
+        public void remove() {
+            if (lastRet < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            MyArrayList.this.remove(lastRet);
+            cursor = lastRet;
+            lastRet = -1;
+            expectedModCount = modCount;
+        }
+    }
+
+    /**
+     * 直接遍历数组，结束后检查是否被修改
+     */
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = modCount;
+        Object[] elements = elementDate;
+        int size = this.size;
+        for (int i = 0; i < size && modCount == expectedModCount; i++) {
+            action.accept((E) elements[i]);
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        return new ArrayListSpliterator(0, -1, 0);
+    }
+
+    public Stream<E> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    public Stream<E> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * 按下标范围[index, fence)切分的Spliterator，第一次使用时才绑定size和modCount
+     */
+    private final class ArrayListSpliterator implements Spliterator<E> {
+        int index;
+        /**
+         * 下标上界(不含)，-1表示还未绑定
+         */
+        int fence;
+        int expectedModCount;
+
+        ArrayListSpliterator(int origin, int fence, int expectedModCount) {
+            this.index = origin;
+            this.fence = fence;
+            this.expectedModCount = expectedModCount;
+        }
+
+        private int getFence() {
+            if (fence < 0) {
+                expectedModCount = modCount;
+                fence = size;
+            }
+            return fence;
+        }
+
+        /**
+         * 从中间切开，前一半交给新的Spliterator
+         */
+        @Override
+        public ArrayListSpliterator trySplit() {
+            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+            if (lo >= mid) {
+                return null;
+            }
+            return new ArrayListSpliterator(lo, index = mid, expectedModCount);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            Objects.requireNonNull(action);
+            int hi = getFence();
+            if (index >= hi) {
+                return false;
+            }
+            E e = (E) elementDate[index++];
+            action.accept(e);
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action) {
+            Objects.requireNonNull(action);
+            int hi = getFence();
+            Object[] elements = elementDate;
+            if (hi > elements.length) {
+                throw new ConcurrentModificationException();
+            }
+            for (int i = index; i < hi; i++) {
+                action.accept((E) elements[i]);
+            }
+            index = hi;
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return getFence() - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED;
+        }
+    }
 }
@@ -0,0 +1,341 @@
+package pers.hanchao.datastructure.list;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * <p>分段数组实现的大列表，下标是long，元素个数可以超过Integer.MAX_VALUE</P>
+ * 1.元素存放在多个定长段中：每段长度 = 2^segmentShift，段目录segments[]保存每个段的引用
+ * 2.下标index对应：段号 = index >>> segmentShift，段内下标 = index & segmentMask；
+ *   get(index)、set(index,e)只需一次移位和一次按位与；复杂度O(1)
+ * 3.add(e)：末尾段满时只分配一个新段，已有元素不拷贝、不移动；扩容时不需要新旧两份数组同时存在，
+ *   也不会因为一次拷贝整个数组而出现停顿；复杂度O(1)
+ * 4.段目录满时二倍扩容，只拷贝段的引用(1亿个元素、每段2^16时只有1526个引用)
+ * 5.add(index,e)、remove(index)：index之后的元素按段分批System.arraycopy，跨段边界的元素单独拷贝；复杂度O(n)；
+ *   removeLast()：复杂度O(1)
+ * 6.ensureCapacity(minCapacity)：提前分配足够的段；trimToSize()：释放size之后的整段，最后一段不收缩
+ * 7.最大容量 = 段目录长度上限(2^31 - 9) * 段长度，默认段长度2^16时约为2^47，远超实际内存
+ *
+ * @author hanchao
+ */
+public class MyBigArrayList<E> {
+    /**
+     * 默认段长度 = 2^16，Object引用开启压缩指针时每段256KB
+     */
+    private static final int DEFAULT_SEGMENT_SHIFT = 16;
+
+    /**
+     * 段目录默认长度
+     */
+    private static final int DEFAULT_DIRECTORY_LENGTH = 16;
+
+    /**
+     * 数组最大长度，部分虚拟机会在数组中保留头信息
+     */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * 段长度 = 1 << segmentShift
+     */
+    private final int segmentShift;
+
+    /**
+     * 段内下标掩码 = 段长度 - 1
+     */
+    private final int segmentMask;
+
+    /**
+     * 段目录：segments[i]是第i段，已分配的段连续排列在前segmentCount个位置
+     */
+    private Object[][] segments;
+
+    /**
+     * 已分配的段个数
+     */
+    private int segmentCount;
+
+    /**
+     * 实际元素个数
+     */
+    private long size;
+
+    /**
+     * 默认构造函数
+     */
+    public MyBigArrayList() {
+        this(DEFAULT_SEGMENT_SHIFT);
+    }
+
+    /**
+     * 指定段长度 = 2^segmentShift
+     */
+    public MyBigArrayList(int segmentShift) {
+        if (segmentShift < 1 || segmentShift > 30) {
+            throw new IllegalArgumentException("The segmentShift must between 1 and 30 !");
+        }
+        this.segmentShift = segmentShift;
+        this.segmentMask = (1 << segmentShift) - 1;
+        this.segments = new Object[DEFAULT_DIRECTORY_LENGTH][];
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 当前容量 = 已分配的段个数 * 段长度
+     */
+    public long capacity() {
+        return (long) segmentCount << segmentShift;
+    }
+
+    /**
+     * 段长度
+     */
+    public int segmentLength() {
+        return segmentMask + 1;
+    }
+
+    /**
+     * 确保容量，只分配新段，不拷贝已有元素
+     */
+    public void ensureCapacity(long minCapacity) {
+        if (minCapacity < 0) {
+            throw new IllegalArgumentException("The capacity must bigger than 0 !");
+        }
+        //1.需要的段个数，向上取整
+        long needed = (minCapacity + segmentMask) >>> segmentShift;
+        if (needed > MAX_ARRAY_SIZE) {
+            throw new OutOfMemoryError("Required segment count too large");
+        }
+        //2.逐段分配
+        while (segmentCount < needed) {
+            addSegment();
+        }
+    }
+
+    /**
+     * 追加一个新段：段目录满时二倍扩容，只拷贝段的引用
+     */
+    private void addSegment() {
+        if (segmentCount == segments.length) {
+            if (segmentCount == MAX_ARRAY_SIZE) {
+                throw new OutOfMemoryError("Required segment count too large");
+            }
+            segments = Arrays.copyOf(segments, (int) Math.min(MAX_ARRAY_SIZE, segments.length * 2L));
+        }
+        segments[segmentCount++] = new Object[segmentMask + 1];
+    }
+
+    /**
+     * 释放size之后的整段
+     */
+    public void trimToSize() {
+        int needed = (int) ((size + segmentMask) >>> segmentShift);
+        for (int i = needed; i < segmentCount; i++) {
+            segments[i] = null;
+        }
+        segmentCount = needed;
+        if (segments.length > Math.max(DEFAULT_DIRECTORY_LENGTH, needed)) {
+            segments = Arrays.copyOf(segments, Math.max(DEFAULT_DIRECTORY_LENGTH, needed));
+        }
+    }
+
+    /**
+     * 越界判断
+     */
+    private void checkIndex(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index must small than " + size + ", index = " + index);
+        }
+    }
+
+    public E get(long index) {
+        checkIndex(index);
+        return (E) segments[(int) (index >>> segmentShift)][(int) index & segmentMask];
+    }
+
+    /**
+     * 覆盖指定位置的元素，返回旧元素
+     */
+    public E set(long index, E element) {
+        checkIndex(index);
+        Object[] segment = segments[(int) (index >>> segmentShift)];
+        int offset = (int) index & segmentMask;
+        E old = (E) segment[offset];
+        segment[offset] = element;
+        return old;
+    }
+
+    /**
+     * 末尾添加元素，末尾段满时分配新段
+     */
+    public boolean add(E element) {
+        int segment = (int) (size >>> segmentShift);
+        if (segment == segmentCount) {
+            addSegment();
+        }
+        segments[segment][(int) size & segmentMask] = element;
+        size++;
+        return true;
+    }
+
+    /**
+     * 末尾批量添加
+     */
+    public boolean addAll(Collection<? extends E> c) {
+        ensureCapacity(size + c.size());
+        for (E e : c) {
+            add(e);
+        }
+        return !c.isEmpty();
+    }
+
+    /**
+     * 指定位置添加元素，index及之后的元素后移一位(跨段)
+     */
+    public void add(long index, E element) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("index must not bigger than " + size + ", index = " + index);
+        }
+        //1.末尾追加一个占位元素，保证容量
+        add(null);
+        //2.index及之后的元素后移一位
+        shift(index, size - 1, 1);
+        set(index, element);
+    }
+
+    /**
+     * 删除指定位置的元素并返回，index+1及之后的元素前移一位(跨段)
+     */
+    public E remove(long index) {
+        E old = get(index);
+        shift(index + 1, size, -1);
+        segments[(int) ((size - 1) >>> segmentShift)][(int) (size - 1) & segmentMask] = null;
+        size--;
+        return old;
+    }
+
+    /**
+     * 删除最后一个元素；复杂度O(1)
+     */
+    public E removeLast() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        size--;
+        Object[] segment = segments[(int) (size >>> segmentShift)];
+        int offset = (int) size & segmentMask;
+        E old = (E) segment[offset];
+        segment[offset] = null;
+        return old;
+    }
+
+    /**
+     * 把[from, to)的元素整体移动distance(1或-1)位，按段拆成多次System.arraycopy：
+     * 每次拷贝的源区间和目标区间都不能跨段，跨段边界的那一个元素单独拷贝
+     */
+    private void shift(long from, long to, int distance) {
+        long segmentStart = ~(long) segmentMask;
+        if (distance > 0) {
+            //1.后移：从后向前拷贝，避免覆盖
+            long end = to;
+            while (end > from) {
+                long start = Math.max(from, Math.max((end - 1) & segmentStart, (end & segmentStart) - 1));
+                copy(start, start + 1, (int) (end - start));
+                end = start;
+            }
+        } else {
+            //2.前移：从前向后拷贝
+            long start = from;
+            while (start < to) {
+                long end = Math.min(to, Math.min((start | segmentMask) + 1, ((start - 1) | segmentMask) + 2));
+                copy(start, start - 1, (int) (end - start));
+                start = end;
+            }
+        }
+    }
+
+    /**
+     * 拷贝length个元素，源区间和目标区间都在同一段内
+     */
+    private void copy(long src, long dest, int length) {
+        System.arraycopy(segments[(int) (src >>> segmentShift)], (int) src & segmentMask,
+                segments[(int) (dest >>> segmentShift)], (int) dest & segmentMask, length);
+    }
+
+    public long indexOf(Object o) {
+        for (int s = 0; s < segmentCount && ((long) s << segmentShift) < size; s++) {
+            Object[] segment = segments[s];
+            int length = (int) Math.min(segment.length, size - ((long) s << segmentShift));
+            for (int i = 0; i < length; i++) {
+                if (o == null ? segment[i] == null : o.equals(segment[i])) {
+                    return ((long) s << segmentShift) + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * 清空，保留已分配的段
+     */
+    public void clear() {
+        for (int s = 0; s < segmentCount; s++) {
+            Arrays.fill(segments[s], null);
+        }
+        size = 0;
+    }
+
+    /**
+     * 按下标顺序遍历，逐段访问数组
+     */
+    public void forEach(Consumer<? super E> action) {
+        long remaining = size;
+        for (int s = 0; remaining > 0; s++) {
+            Object[] segment = segments[s];
+            int length = (int) Math.min(segment.length, remaining);
+            for (int i = 0; i < length; i++) {
+                action.accept((E) segment[i]);
+            }
+            remaining -= length;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        forEach(e -> sb.append(sb.length() > 1 ? ", " : "").append(e));
+        return sb.append(']').toString();
+    }
+
+    public static void main(String[] args) {
+        //每段4个元素，方便观察跨段移动
+        MyBigArrayList<String> list = new MyBigArrayList<>(2);
+        for (int i = 0; i < 10; i++) {
+            list.add("e" + i);
+        }
+        System.out.println(list + " size = " + list.size() + " capacity = " + list.capacity());
+        list.add(1, "x");
+        System.out.println(list + " " + list.get(4) + " " + list.indexOf("e9"));
+        System.out.println(list.remove(0) + " " + list.removeLast() + " " + list);
+        list.trimToSize();
+        System.out.println("size = " + list.size() + " capacity = " + list.capacity());
+
+        //下标超过Integer.MAX_VALUE时的段号和段内下标
+        long index = 3_000_000_000L;
+        MyBigArrayList<Object> big = new MyBigArrayList<>();
+        System.out.println("index " + index + " -> segment " + (index >>> DEFAULT_SEGMENT_SHIFT) + ", offset "
+                + (index & (big.segmentLength() - 1)));
+    }
+}
@@ -0,0 +1,284 @@
+package pers.hanchao.datastructure.list;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * <p>用间隙缓冲区(gap buffer)实现列表，适合在某个位置附近反复插入、删除，例如文本编辑器</P>
+ * 1.elementData中间保留一段空闲区间[gapStart, gapEnd)，元素分布在间隙两侧：[0, gapStart)和[gapEnd, capacity)
+ * 2.get(index)、set(index,e)：index < gapStart时直接访问，否则跳过间隙访问index + 间隙长度；复杂度O(1)
+ * 3.add(index,e)：把间隙移动到index，再写入间隙的第一个位置；remove(index)：把间隙移动到index，再把间隙后的第一个元素并入间隙
+ * 4.移动间隙只拷贝新旧位置之间的元素：在上一次编辑位置附近编辑时只移动几个元素，复杂度均摊O(1)；
+ *   MyArrayList每次都要移动index之后的全部元素；编辑位置随机跳跃时两者都是O(n)
+ * 5.间隙用完时1.5倍扩容，新增的空间全部并入间隙
+ * 6.间隙中不保留元素的引用，有利于GC：remove(index)删除的位置置为null；移动间隙时移出的旧位置置为null，
+ *   最多min(移动距离, 间隙长度)个
+ *
+ * @author hanchao
+ */
+public class MyGapBufferList<E> {
+    /**
+     * 默认容量
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * 数组最大长度，部分虚拟机会在数组中保留头信息
+     */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * 元素 + 间隙
+     */
+    private Object[] elementData;
+
+    /**
+     * 间隙开始位置(包括)
+     */
+    private int gapStart;
+
+    /**
+     * 间隙结束位置(不包括)
+     */
+    private int gapEnd;
+
+    /**
+     * 默认构造函数
+     */
+    public MyGapBufferList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * 容量构造函数
+     */
+    public MyGapBufferList(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("The capacity must bigger than 0 !");
+        }
+        this.elementData = new Object[capacity];
+        this.gapStart = 0;
+        this.gapEnd = capacity;
+    }
+
+    public int size() {
+        return elementData.length - (gapEnd - gapStart);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 当前容量 = elementData.length
+     */
+    public int capacity() {
+        return elementData.length;
+    }
+
+    /**
+     * 间隙当前位置，即最近一次编辑的位置
+     */
+    public int gapPosition() {
+        return gapStart;
+    }
+
+    /**
+     * 越界判断
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size()) {
+            throw new ArrayIndexOutOfBoundsException("index must small than " + size() + ", index = " + index);
+        }
+    }
+
+    /**
+     * 逻辑下标 -> 数组下标
+     */
+    private int position(int index) {
+        return index < gapStart ? index : index + (gapEnd - gapStart);
+    }
+
+    public E get(int index) {
+        checkIndex(index);
+        return (E) elementData[position(index)];
+    }
+
+    /**
+     * 覆盖指定位置的元素，返回旧元素
+     */
+    public E set(int index, E element) {
+        checkIndex(index);
+        int position = position(index);
+        E old = (E) elementData[position];
+        elementData[position] = element;
+        return old;
+    }
+
+    /**
+     * 末尾添加元素
+     */
+    public boolean add(E element) {
+        add(size(), element);
+        return true;
+    }
+
+    /**
+     * 指定位置添加元素
+     */
+    public void add(int index, E element) {
+        if (index < 0 || index > size()) {
+            throw new ArrayIndexOutOfBoundsException("index must not bigger than " + size() + ", index = " + index);
+        }
+        //1.间隙用完则扩容
+        if (gapStart == gapEnd) {
+            grow(elementData.length + 1);
+        }
+        //2.间隙移动到index
+        moveGap(index);
+        //3.写入间隙的第一个位置
+        elementData[gapStart++] = element;
+    }
+
+    /**
+     * 删除指定位置的元素并返回
+     */
+    public E remove(int index) {
+        checkIndex(index);
+        //1.间隙移动到index，index处的元素就是间隙后的第一个元素
+        moveGap(index);
+        //2.并入间隙
+        E old = (E) elementData[gapEnd];
+        elementData[gapEnd++] = null;
+        return old;
+    }
+
+    /**
+     * 把间隙移动到index：index在间隙左侧时，[index, gapStart)右移到间隙末尾；在右侧时，间隙后的元素左移到间隙开头。
+     * 移出后落在新间隙中的旧位置置为null，最多min(移动距离, 间隙长度)个
+     */
+    private void moveGap(int index) {
+        if (index < gapStart) {
+            int length = gapStart - index;
+            System.arraycopy(elementData, index, elementData, gapEnd - length, length);
+            Arrays.fill(elementData, index, Math.min(gapStart, gapEnd - length), null);
+            gapStart = index;
+            gapEnd -= length;
+        } else if (index > gapStart) {
+            int length = index - gapStart;
+            System.arraycopy(elementData, gapEnd, elementData, gapStart, length);
+            Arrays.fill(elementData, Math.max(index, gapEnd), gapEnd + length, null);
+            gapStart = index;
+            gapEnd += length;
+        }
+    }
+
+    /**
+     * 确保容量，容量足够时什么都不做
+     */
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity < 0) {
+            throw new OutOfMemoryError("Required array size too large");
+        }
+        if (minCapacity > elementData.length) {
+            grow(minCapacity);
+        }
+    }
+
+    /**
+     * 扩容：新容量 = 旧容量 * 1.5，间隙之后的元素搬到新数组末尾，新增的空间全部并入间隙
+     */
+    private void grow(int minCapacity) {
+        int oldCapacity = elementData.length;
+        int newCapacity = Math.max(DEFAULT_CAPACITY, oldCapacity + (oldCapacity >> 1));
+        if (newCapacity - minCapacity < 0) {
+            newCapacity = minCapacity;
+        }
+        if (newCapacity - MAX_ARRAY_SIZE > 0) {
+            newCapacity = minCapacity > MAX_ARRAY_SIZE ? Integer.MAX_VALUE : MAX_ARRAY_SIZE;
+        }
+        Object[] newData = new Object[newCapacity];
+        int tail = oldCapacity - gapEnd;
+        System.arraycopy(elementData, 0, newData, 0, gapStart);
+        System.arraycopy(elementData, gapEnd, newData, newCapacity - tail, tail);
+        elementData = newData;
+        gapEnd = newCapacity - tail;
+    }
+
+    /**
+     * 把容量收缩为size，去掉间隙
+     */
+    public void trimToSize() {
+        if (gapStart < gapEnd) {
+            elementData = toArray();
+            gapStart = gapEnd = elementData.length;
+        }
+    }
+
+    public int indexOf(Object o) {
+        int size = size();
+        for (int i = 0; i < size; i++) {
+            Object e = elementData[position(i)];
+            if (o == null ? e == null : o.equals(e)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * 清空，容量不变，整个数组都是间隙
+     */
+    public void clear() {
+        Arrays.fill(elementData, null);
+        gapStart = 0;
+        gapEnd = elementData.length;
+    }
+
+    public Object[] toArray() {
+        Object[] a = new Object[size()];
+        System.arraycopy(elementData, 0, a, 0, gapStart);
+        System.arraycopy(elementData, gapEnd, a, gapStart, elementData.length - gapEnd);
+        return a;
+    }
+
+    /**
+     * 按下标顺序遍历：先遍历间隙左侧，再遍历间隙右侧
+     */
+    public void forEach(Consumer<? super E> action) {
+        for (int i = 0; i < gapStart; i++) {
+            action.accept((E) elementData[i]);
+        }
+        for (int i = gapEnd; i < elementData.length; i++) {
+            action.accept((E) elementData[i]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    public static void main(String[] args) {
+        MyGapBufferList<Character> text = new MyGapBufferList<>(4);
+        for (char c : "hello world".toCharArray()) {
+            text.add(c);
+        }
+        System.out.println(text + " size = " + text.size() + " capacity = " + text.capacity());
+        //光标移到5，连续输入
+        int cursor = 5;
+        for (char c : ", gap buffer".toCharArray()) {
+            text.add(cursor++, c);
+        }
+        System.out.println(text + " gap at " + text.gapPosition());
+        //在光标处连续退格
+        for (int i = 0; i < 7; i++) {
+            text.remove(--cursor);
+        }
+        System.out.println(text + " gap at " + text.gapPosition() + " get(6) = " + text.get(6));
+    }
+}
@@ -1,6 +1,9 @@
 package pers.hanchao.datastructure.list;
 
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * <p>有链表实现List</P>
@@ -25,10 +28,23 @@ import java.util.*;
  * 19.push(e),pop(e):适用于栈；在头节点入栈出栈元素，相当于addFirst(e)和removeFirst(e)，不存在则抛出NoSuchElementException；复杂度O(1)；
  * 20.element()：获取头节点元素，不删除，不存在则抛出NoSuchElementException；复杂度O(1)；
  * 21.remove(): 删除头节点，不存在则抛出NoSuchElementException；复杂度O(1)；
+ * 22.实现Iterable：iterator()、forEach(action)沿next指针遍历；modCount记录结构修改次数，遍历过程中链表被修改则抛出ConcurrentModificationException
+ * 23.spliterator()：链表无法从中间切开，trySplit()从头部取出一批节点拷贝到数组，返回基于数组的Spliterator；
+ *   批大小从1024开始每次加1024，最大2^25，元素越多切出的任务越大；stream()、parallelStream()基于它创建
  *
  * @author hanchao
  */
-public class MyLinkedList<E> {
+public class MyLinkedList<E> implements Iterable<E> {
+
+    /**
+     * spliterator每次切分增加的批大小
+     */
+    private static final int BATCH_UNIT = 1 << 10;
+
+    /**
+     * spliterator最大批大小
+     */
+    private static final int MAX_BATCH = 1 << 25;
 
     /**
      * 列表节点
@@ -57,6 +73,10 @@ public class MyLinkedList<E> {
      * 节点个数
      */
     private int size = 0;
+    /**
+     * 结构修改(节点个数变化)的次数，迭代器据此快速失败
+     */
+    private int modCount = 0;
 
     public MyLinkedList() {
     }
@@ -136,6 +156,7 @@ public class MyLinkedList<E> {
         }
         //6.size--
         size--;
+        modCount++;
         return firstData;
     }
 
@@ -175,6 +196,7 @@ public class MyLinkedList<E> {
         }
         //6.size--
         size--;
+        modCount++;
         return data;
     }
 
@@ -197,6 +219,7 @@ public class MyLinkedList<E> {
             //4.size ++
             size++;
         }
+        modCount++;
     }
 
     /**
@@ -220,6 +243,7 @@ public class MyLinkedList<E> {
             //4.size++
             size++;
         }
+        modCount++;
     }
 
     /**
@@ -319,6 +343,7 @@ public class MyLinkedList<E> {
         }
 
         size--;
+        modCount++;
         return element;
     }
 
@@ -377,6 +402,7 @@ public class MyLinkedList<E> {
         }
         first = last = null;
         size = 0;
+        modCount++;
     }
 
     /**
@@ -468,6 +494,7 @@ public class MyLinkedList<E> {
         }
 
         size++;
+        modCount++;
     }
 
     /**
@@ -731,9 +758,157 @@ public class MyLinkedList<E> {
         Object[] array = new Object[size];
         Node<E> node = first;
         for (int i = 0; i < size; i++) {
-            array[i] = node;
+            array[i] = node.data;
             node = node.next;
         }
         return array;
     }
+
+    /**
+     * 从头节点开始沿next指针遍历的只读迭代器
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            Node<E> next = first;
+            int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public E next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                E data = next.data;
+                next = next.next;
+                return data;
+            }
+        };
+    }
+
+    /**
+     * 沿next指针遍历，结束后检查是否被修改
+     */
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = modCount;
+        for (Node<E> node = first; node != null && modCount == expectedModCount; node = node.next) {
+            action.accept(node.data);
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        return new LinkedListSpliterator();
+    }
+
+    public Stream<E> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    public Stream<E> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * 按批切分的Spliterator：从current开始还剩est个节点，第一次使用时才绑定first、size和modCount
+     */
+    private final class LinkedListSpliterator implements Spliterator<E> {
+        Node<E> current;
+        /**
+         * 剩余元素个数，-1表示还未绑定
+         */
+        int est = -1;
+        int expectedModCount;
+        /**
+         * 下一批的大小
+         */
+        int batch;
+
+        private int getEst() {
+            if (est < 0) {
+                expectedModCount = modCount;
+                current = first;
+                est = size;
+            }
+            return est;
+        }
+
+        /**
+         * 从头部取出一批元素拷贝到数组，交给数组的Spliterator继续二分切分
+         */
+        @Override
+        public Spliterator<E> trySplit() {
+            int s = getEst();
+            if (s <= 1 || current == null) {
+                return null;
+            }
+            //1.批大小逐次递增，不超过剩余元素个数和MAX_BATCH
+            int n = Math.min(Math.min(batch + BATCH_UNIT, s), MAX_BATCH);
+            //2.拷贝n个节点的元素
+            Object[] a = new Object[n];
+            Node<E> node = current;
+            int j = 0;
+            do {
+                a[j++] = node.data;
+            } while ((node = node.next) != null && j < n);
+            current = node;
+            batch = j;
+            est = s - j;
+            return Spliterators.spliterator(a, 0, j, ORDERED);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            Objects.requireNonNull(action);
+            if (getEst() <= 0 || current == null) {
+                return false;
+            }
+            E data = current.data;
+            current = current.next;
+            est--;
+            action.accept(data);
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action) {
+            Objects.requireNonNull(action);
+            int n = getEst();
+            Node<E> node = current;
+            current = null;
+            est = 0;
+            for (; node != null && n > 0; n--) {
+                action.accept(node.data);
+                node = node.next;
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return getEst();
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED;
+        }
+    }
 }
@@ -0,0 +1,538 @@
+package pers.hanchao.datastructure.list;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * <p>持久化向量：32叉前缀树 + 尾部数组(tail)，不可变，修改时返回新版本</P>
+ * 1.下标i每层取5位(0~31)，叶子节点存放32个元素；最后不足32个元素单独放在tail中，不进入树
+ * 2.get(i)：i >= tailOffset时直接读tail，否则从根按5位下标逐层向下；复杂度O(log32 N)，10亿个元素也只有6层
+ * 3.plus(e)：tail未满时只复制tail(最多32个元素)；tail满时把tail整体挂入树，只复制最右侧路径；复杂度均摊O(1)
+ * 4.with(i,e)：只复制从根到目标叶子路径上的节点，其余节点新旧版本共享(结构共享)；复杂度O(log32 N)
+ * 5.pop()：删除最后一个元素，tail只剩一个元素时从树中取出最右侧的叶子作为新的tail；复杂度均摊O(1)
+ * 6.快照：每个版本本身就是不可变的快照，读线程直接持有引用即可，不需要像MyArrayList一样toArray()整体复制
+ * 7.Transient：可变的批量构建模式，asTransient()创建，节点记录edit标记，本次创建的节点和tail原地修改，不复制路径；
+ *   persistent()之后转换为不可变版本，transient不能再使用；transient非线程安全
+ * 8.实现List接口的只读操作，List的add、set、remove等修改方法抛出UnsupportedOperationException
+ *
+ * @author hanchao
+ */
+public class MyPersistentVector<E> extends AbstractList<E> implements RandomAccess {
+
+    /**
+     * 每层的位数
+     */
+    private static final int BITS = 5;
+
+    /**
+     * 节点宽度 = 32
+     */
+    private static final int WIDTH = 1 << BITS;
+
+    private static final int MASK = WIDTH - 1;
+
+    /**
+     * 树节点：内部节点的array存放子节点，叶子节点的array存放元素
+     */
+    static final class Node {
+        /**
+         * 创建该节点的transient标记，null表示不可变节点
+         */
+        final Object edit;
+
+        final Object[] array;
+
+        Node(Object edit, Object[] array) {
+            this.edit = edit;
+            this.array = array;
+        }
+
+        Node(Object edit) {
+            this(edit, new Object[WIDTH]);
+        }
+    }
+
+    private static final Node EMPTY_NODE = new Node(null);
+
+    private static final MyPersistentVector<?> EMPTY = new MyPersistentVector<>(0, BITS, EMPTY_NODE, new Object[0]);
+
+    /**
+     * 元素个数
+     */
+    private final int size;
+
+    /**
+     * 根节点的层级位移 = 5 * (树高 - 1)
+     */
+    private final int shift;
+
+    private final Node root;
+
+    /**
+     * 最后不足32个(或刚好32个)元素，数组长度 = tail中的元素个数
+     */
+    private final Object[] tail;
+
+    private MyPersistentVector(int size, int shift, Node root, Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    /**
+     * 空向量
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> MyPersistentVector<E> empty() {
+        return (MyPersistentVector<E>) EMPTY;
+    }
+
+    /**
+     * 批量构建
+     */
+    public static <E> MyPersistentVector<E> of(Iterable<? extends E> elements) {
+        Transient<E> builder = MyPersistentVector.<E>empty().asTransient();
+        for (E e : elements) {
+            builder.add(e);
+        }
+        return builder.persistent();
+    }
+
+    /**
+     * 由MyArrayList批量构建
+     */
+    public static <E> MyPersistentVector<E> of(MyArrayList<? extends E> list) {
+        Transient<E> builder = MyPersistentVector.<E>empty().asTransient();
+        for (int i = 0; i < list.size(); i++) {
+            builder.add(list.get(i));
+        }
+        return builder.persistent();
+    }
+
+    /**
+     * 第一个在tail中的下标
+     */
+    private static int tailOffset(int size) {
+        return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+
+    /**
+     * 下标i所在的叶子数组(或tail)
+     */
+    private static Object[] arrayFor(int i, int size, int shift, Node root, Object[] tail) {
+        if (i >= tailOffset(size)) {
+            return tail;
+        }
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Node) node.array[(i >>> level) & MASK];
+        }
+        return node.array;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index must small than " + size + ", index = " + index);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        checkIndex(index);
+        return (E) arrayFor(index, size, shift, root, tail)[index & MASK];
+    }
+
+    /**
+     * 末尾添加元素，返回新版本
+     */
+    public MyPersistentVector<E> plus(E element) {
+        //1.tail未满：只复制tail
+        if (size - tailOffset(size) < WIDTH) {
+            Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+            newTail[tail.length] = element;
+            return new MyPersistentVector<>(size + 1, shift, root, newTail);
+        }
+        //2.tail已满：tail挂入树，新元素作为新的tail
+        Node tailNode = new Node(null, tail);
+        Node newRoot;
+        int newShift = shift;
+        if ((size >>> BITS) > (1 << shift)) {
+            //2.1.根节点已满：树高加1，旧根作为新根的第一个子节点
+            newRoot = new Node(null);
+            newRoot.array[0] = root;
+            newRoot.array[1] = newPath(null, shift, tailNode);
+            newShift += BITS;
+        } else {
+            //2.2.复制最右侧路径
+            newRoot = pushTail(size, shift, root, tailNode);
+        }
+        return new MyPersistentVector<>(size + 1, newShift, newRoot, new Object[]{element});
+    }
+
+    /**
+     * 把tail挂到树的最右侧，复制路径上的节点
+     */
+    private static Node pushTail(int size, int level, Node parent, Node tailNode) {
+        int i = ((size - 1) >>> level) & MASK;
+        Node node = new Node(null, parent.array.clone());
+        Node child;
+        if (level == BITS) {
+            child = tailNode;
+        } else {
+            Node old = (Node) parent.array[i];
+            child = old != null ? pushTail(size, level - BITS, old, tailNode) : newPath(null, level - BITS, tailNode);
+        }
+        node.array[i] = child;
+        return node;
+    }
+
+    /**
+     * 从level层向下创建一条只有最左侧子节点的路径，末端是node
+     */
+    private static Node newPath(Object edit, int level, Node node) {
+        if (level == 0) {
+            return node;
+        }
+        Node path = new Node(edit);
+        path.array[0] = newPath(edit, level - BITS, node);
+        return path;
+    }
+
+    /**
+     * 覆盖下标index的元素，返回新版本；index == size时等同于plus
+     */
+    public MyPersistentVector<E> with(int index, E element) {
+        if (index == size) {
+            return plus(element);
+        }
+        checkIndex(index);
+        //1.在tail中：只复制tail
+        if (index >= tailOffset(size)) {
+            Object[] newTail = tail.clone();
+            newTail[index & MASK] = element;
+            return new MyPersistentVector<>(size, shift, root, newTail);
+        }
+        //2.在树中：复制路径
+        return new MyPersistentVector<>(size, shift, doAssoc(shift, root, index, element), tail);
+    }
+
+    private static Node doAssoc(int level, Node node, int index, Object element) {
+        Node copy = new Node(null, node.array.clone());
+        if (level == 0) {
+            copy.array[index & MASK] = element;
+        } else {
+            int i = (index >>> level) & MASK;
+            copy.array[i] = doAssoc(level - BITS, (Node) node.array[i], index, element);
+        }
+        return copy;
+    }
+
+    /**
+     * 删除最后一个元素，返回新版本
+     */
+    public MyPersistentVector<E> pop() {
+        if (size == 0) {
+            throw new IllegalStateException("Can't pop empty vector");
+        }
+        if (size == 1) {
+            return empty();
+        }
+        //1.tail中不止一个元素：只复制tail
+        if (size - tailOffset(size) > 1) {
+            return new MyPersistentVector<>(size - 1, shift, root, Arrays.copyOf(tail, tail.length - 1));
+        }
+        //2.tail只剩一个元素：最右侧的叶子从树中取出，作为新的tail
+        Object[] newTail = arrayFor(size - 2, size, shift, root, tail);
+        Node newRoot = popTail(size, shift, root);
+        int newShift = shift;
+        if (newRoot == null) {
+            newRoot = EMPTY_NODE;
+        }
+        //3.根节点只剩一个子节点时，树高减1
+        if (shift > BITS && newRoot.array[1] == null) {
+            newRoot = (Node) newRoot.array[0];
+            newShift -= BITS;
+        }
+        return new MyPersistentVector<>(size - 1, newShift, newRoot, newTail);
+    }
+
+    /**
+     * 删除树最右侧的叶子，复制路径；节点变空时返回null
+     */
+    private static Node popTail(int size, int level, Node node) {
+        int i = ((size - 2) >>> level) & MASK;
+        if (level > BITS) {
+            Node child = popTail(size, level - BITS, (Node) node.array[i]);
+            if (child == null && i == 0) {
+                return null;
+            }
+            Node copy = new Node(null, node.array.clone());
+            copy.array[i] = child;
+            return copy;
+        } else if (i == 0) {
+            return null;
+        }
+        Node copy = new Node(null, node.array.clone());
+        copy.array[i] = null;
+        return copy;
+    }
+
+    /**
+     * 按叶子数组顺序遍历，每32个元素才下降一次树
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super E> action) {
+        for (int base = 0; base < size; base += WIDTH) {
+            Object[] array = arrayFor(base, size, shift, root, tail);
+            int length = Math.min(WIDTH, size - base);
+            for (int j = 0; j < length; j++) {
+                action.accept((E) array[j]);
+            }
+        }
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            int index;
+            Object[] array = size > 0 ? arrayFor(0, size, shift, root, tail) : null;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+                //进入下一个叶子
+                if (index > 0 && (index & MASK) == 0) {
+                    array = arrayFor(index, size, shift, root, tail);
+                }
+                return (E) array[index++ & MASK];
+            }
+        };
+    }
+
+    public Transient<E> asTransient() {
+        return new Transient<>(this);
+    }
+
+    /**
+     * 可变的批量构建模式
+     */
+    public static final class Transient<E> {
+        private Object edit = new Object();
+        private int size;
+        private int shift;
+        private Node root;
+        /**
+         * 固定长度32，元素个数 = size - tailOffset(size)
+         */
+        private Object[] tail;
+
+        private Transient(MyPersistentVector<E> vector) {
+            this.size = vector.size;
+            this.shift = vector.shift;
+            this.root = new Node(edit, vector.root.array.clone());
+            this.tail = Arrays.copyOf(vector.tail, WIDTH);
+        }
+
+        private void ensureEditable() {
+            if (edit == null) {
+                throw new IllegalStateException("Transient used after persistent() call");
+            }
+        }
+
+        /**
+         * 本次transient创建的节点原地修改，其他节点复制一份
+         */
+        private Node editable(Node node) {
+            return node.edit == edit ? node : new Node(edit, node.array.clone());
+        }
+
+        public int size() {
+            ensureEditable();
+            return size;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            ensureEditable();
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("index must small than " + size + ", index = " + index);
+            }
+            return (E) arrayFor(index, size, shift, root, tail)[index & MASK];
+        }
+
+        /**
+         * 末尾添加元素：tail未满时直接写入tail
+         */
+        public Transient<E> add(E element) {
+            ensureEditable();
+            if (size - tailOffset(size) < WIDTH) {
+                tail[size & MASK] = element;
+                size++;
+                return this;
+            }
+            //tail已满：挂入树，重新分配tail
+            Node tailNode = new Node(edit, tail);
+            tail = new Object[WIDTH];
+            tail[0] = element;
+            if ((size >>> BITS) > (1 << shift)) {
+                Node newRoot = new Node(edit);
+                newRoot.array[0] = root;
+                newRoot.array[1] = newPath(edit, shift, tailNode);
+                root = newRoot;
+                shift += BITS;
+            } else {
+                root = pushTail(shift, root, tailNode);
+            }
+            size++;
+            return this;
+        }
+
+        private Node pushTail(int level, Node parent, Node tailNode) {
+            Node node = editable(parent);
+            int i = ((size - 1) >>> level) & MASK;
+            Node child;
+            if (level == BITS) {
+                child = tailNode;
+            } else {
+                Node old = (Node) node.array[i];
+                child = old != null ? pushTail(level - BITS, old, tailNode) : newPath(edit, level - BITS, tailNode);
+            }
+            node.array[i] = child;
+            return node;
+        }
+
+        /**
+         * 覆盖下标index的元素，返回旧元素
+         */
+        @SuppressWarnings("unchecked")
+        public E set(int index, E element) {
+            ensureEditable();
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("index must small than " + size + ", index = " + index);
+            }
+            if (index >= tailOffset(size)) {
+                E old = (E) tail[index & MASK];
+                tail[index & MASK] = element;
+                return old;
+            }
+            //路径上的节点变为本次transient可修改的节点
+            root = editable(root);
+            Node node = root;
+            for (int level = shift; level > 0; level -= BITS) {
+                int i = (index >>> level) & MASK;
+                Node child = editable((Node) node.array[i]);
+                node.array[i] = child;
+                node = child;
+            }
+            E old = (E) node.array[index & MASK];
+            node.array[index & MASK] = element;
+            return old;
+        }
+
+        /**
+         * 转换为不可变版本，tail收缩到实际长度
+         */
+        public MyPersistentVector<E> persistent() {
+            ensureEditable();
+            edit = null;
+            if (size == 0) {
+                return empty();
+            }
+            return new MyPersistentVector<>(size, shift, root, Arrays.copyOf(tail, size - tailOffset(size)));
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        MyPersistentVector<String> v1 = MyPersistentVector.<String>empty().plus("a").plus("b").plus("c");
+        MyPersistentVector<String> v2 = v1.with(1, "B").plus("d");
+        MyPersistentVector<String> v3 = v2.pop().pop();
+        System.out.println("v1 = " + v1 + ", v2 = " + v2 + ", v3 = " + v3);
+
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Integer[] values = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = i;
+        }
+        for (int round = 0; round < 3; round++) {
+            //1.批量构建：transient与逐个plus对比
+            long begin = System.nanoTime();
+            MyPersistentVector<Integer> slow = empty();
+            for (Integer value : values) {
+                slow = slow.plus(value);
+            }
+            long middle = System.nanoTime();
+            Transient<Integer> builder = MyPersistentVector.<Integer>empty().asTransient();
+            for (Integer value : values) {
+                builder.add(value);
+            }
+            MyPersistentVector<Integer> fast = builder.persistent();
+            long end = System.nanoTime();
+
+            //2.快照：MyArrayList.toArray()整体复制，MyPersistentVector直接共享
+            MyArrayList<Integer> list = new MyArrayList<>(n);
+            for (Integer value : values) {
+                list.add(value);
+            }
+            long copyBegin = System.nanoTime();
+            Object[] copy = list.toArray();
+            long copyNanos = System.nanoTime() - copyBegin;
+
+            //3.修改：with(i)只复制一条路径
+            long updateBegin = System.nanoTime();
+            MyPersistentVector<Integer> updated = fast;
+            for (int i = 0; i < 100_000; i++) {
+                updated = updated.with((i * 7919) % n, -i);
+            }
+            long updateNanos = System.nanoTime() - updateBegin;
+            System.out.printf("n = %d: plus %.1fms, transient %.1fms, equal %b; MyArrayList.toArray %.2fms (%d); "
+                            + "with %.1f ns/op, original unchanged %b%n", n, (middle - begin) / 1e6,
+                    (end - middle) / 1e6, slow.equals(fast), copyNanos / 1e6, copy.length,
+                    (double) updateNanos / 100_000, fast.get(0) == 0);
+        }
+
+        //读线程遍历快照，写线程同时追加和修改，互不阻塞
+        AtomicReference<MyPersistentVector<Integer>> current = new AtomicReference<>(empty());
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 200_000; i++) {
+                MyPersistentVector<Integer> v = current.get().plus(i);
+                current.set(i % 3 == 0 ? v.with(i / 2, i / 2) : v);
+            }
+        });
+        writer.start();
+        int snapshots = 0;
+        while (writer.isAlive()) {
+            MyPersistentVector<Integer> snapshot = current.get();
+            int count = 0;
+            for (Integer ignored : snapshot) {
+                count++;
+            }
+            if (count != snapshot.size()) {
+                throw new IllegalStateException("inconsistent snapshot");
+            }
+            snapshots++;
+        }
+        writer.join();
+        System.out.println("iterated " + snapshots + " consistent snapshots, final size = " + current.get().size());
+    }
+}
@@ -0,0 +1,107 @@
+package pers.hanchao.datastructure.list;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * <p>MyArrayList、MyLinkedList的并行map-reduce：stream().mapToLong(mix).sum()</P>
+ * 1.参数：args[0] = MyArrayList元素数量，默认100000000；MyLinkedList每个元素多一个节点对象，最多测10000000个
+ * 2.先测串行stream()，再在并行度为1、2、4...直到CPU核数的ForkJoinPool中执行parallelStream()，输出耗时和相对串行的加速比；
+ *   MyArrayList按下标二分切分，加速比应接近并行度；MyLinkedList按批拷贝切分，切分本身是串行的，加速比低于MyArrayList
+ * 3.元素从1024个Integer中循环取，避免1亿个Integer对象占满内存；mix做几轮乘法和移位，让耗时主要在计算而不是内存带宽
+ * 4.1亿个引用约400MB，建议 java -Xmx2g StreamBenchmark；单核机器上只能看到并行度1的结果
+ *
+ * @author hanchao
+ */
+public class StreamBenchmark {
+
+    private static final int ROUNDS = 3;
+
+    private static final Integer[] VALUES = new Integer[1024];
+
+    static {
+        for (int i = 0; i < VALUES.length; i++) {
+            VALUES[i] = i * 31 + 7;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000_000;
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("available processors = " + cores);
+
+        MyArrayList<Integer> arrayList = new MyArrayList<>();
+        arrayList.ensureCapacity(n);
+        for (int i = 0; i < n; i++) {
+            arrayList.add(VALUES[i & (VALUES.length - 1)]);
+        }
+        run("MyArrayList", n, cores, arrayList::stream, arrayList::parallelStream);
+        arrayList = null;
+
+        int linkedSize = Math.min(n, 10_000_000);
+        MyLinkedList<Integer> linkedList = new MyLinkedList<>();
+        for (int i = 0; i < linkedSize; i++) {
+            linkedList.add(VALUES[i & (VALUES.length - 1)]);
+        }
+        run("MyLinkedList", linkedSize, cores, linkedList::stream, linkedList::parallelStream);
+    }
+
+    /**
+     * 串行一次，再按并行度1、2、4...cores各测一次，每次取ROUNDS轮中的最小耗时
+     */
+    private static void run(String name, int n, int cores, Supplier<Stream<Integer>> sequential,
+                            Supplier<Stream<Integer>> parallel) throws ExecutionException, InterruptedException {
+        System.gc();
+        System.out.println("======= " + name + ", n = " + String.format("%,d", n) + " =======");
+        long expected = 0;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            expected = mapReduce(sequential.get());
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        long sequentialNanos = best;
+        System.out.printf("%-14s %9.1f ms%n", "stream()", sequentialNanos / 1e6);
+
+        for (int parallelism = 1; ; parallelism = Math.min(parallelism * 2, cores)) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                best = Long.MAX_VALUE;
+                for (int round = 0; round < ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    //parallelStream在提交它的ForkJoinPool中执行
+                    long sum = pool.submit(() -> mapReduce(parallel.get())).get();
+                    best = Math.min(best, System.nanoTime() - start);
+                    if (sum != expected) {
+                        throw new IllegalStateException("sum " + sum + " != " + expected);
+                    }
+                }
+            } finally {
+                pool.shutdown();
+            }
+            System.out.printf("parallelism %2d %9.1f ms, speedup %5.2fx%n", parallelism, best / 1e6,
+                    (double) sequentialNanos / best);
+            if (parallelism == cores) {
+                break;
+            }
+        }
+    }
+
+    private static long mapReduce(Stream<Integer> stream) {
+        return stream.mapToLong(StreamBenchmark::mix).sum();
+    }
+
+    /**
+     * 几轮乘法、移位混合，模拟每个元素的计算量
+     */
+    private static long mix(Integer value) {
+        long h = value;
+        for (int i = 0; i < 4; i++) {
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+        }
+        return h ^ (h >>> 33);
+    }
+}
@@ -0,0 +1,547 @@
+package pers.hanchao.datastructure.map;
+
+import java.io.Closeable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>定长二进制key/value散列表的公共实现：开放地址法 + 线性探测 + 后移删除，存储由子类提供</P>
+ * 1.每个槽位 = 1字节状态(FREE/USED) + keyWidth字节key + valueWidth字节value
+ * 2.单个ByteBuffer最大2GB，所以数组按段存放：每段是2的幂次方个槽位且不超过1GB，槽位i在第i >>> segmentShift段
+ * 3.散列：key每8字节用HashUtil.mix(fmix64)混合一次，下标 = hash & (capacity - 1)，与MyOpenHashMap等散列表一致
+ * 4.get(key)、containsKey(key)：线性探测，遇到相同key命中，遇到FREE未命中；复杂度O(1)
+ * 5.put(key,value)：覆盖或插入，先写key和value，最后写状态字节，中途崩溃只会留下FREE槽位；超过阈值二倍扩容；复杂度O(1)
+ * 6.remove(key)：后移删除，不需要墓碑；复杂度O(1)
+ * 7.子类通过newSegments()分配存储、releaseSegments()释放存储，afterRehash()、beforeModify()处理持久化等额外工作
+ * 8.key和value都是定长byte[]，长度不符抛出IllegalArgumentException；关闭后访问抛出IllegalStateException；非线程安全
+ *
+ * @author hanchao
+ */
+public abstract class AbstractFixedWidthHashMap implements Closeable {
+
+    /**
+     * 默认负载因子
+     */
+    protected static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * 每段最大字节数
+     */
+    protected static final int MAX_SEGMENT_BYTES = 1 << 30;
+
+    /**
+     * 槽位状态
+     */
+    protected static final byte FREE = 0;
+    protected static final byte USED = 1;
+
+    protected final int keyWidth;
+
+    protected final int valueWidth;
+
+    /**
+     * 槽位字节数
+     */
+    protected final int slotSize;
+
+    protected final float loadFactor;
+
+    private ByteBuffer[] segments;
+
+    private int segmentShift;
+
+    private int segmentMask;
+
+    private int capacity;
+
+    private int mask;
+
+    private int threshold;
+
+    private int size;
+
+    /**
+     * 搬移槽位时的临时缓冲区
+     */
+    private final byte[] scratch;
+
+    protected AbstractFixedWidthHashMap(int keyWidth, int valueWidth, float loadFactor) {
+        if (keyWidth <= 0 || valueWidth < 0 || 1L + keyWidth + valueWidth > MAX_SEGMENT_BYTES) {
+            throw new IllegalArgumentException("Illegal width: key = " + keyWidth + ", value = " + valueWidth);
+        }
+        if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor)) {
+            throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+        }
+        this.keyWidth = keyWidth;
+        this.valueWidth = valueWidth;
+        this.slotSize = 1 + keyWidth + valueWidth;
+        this.loadFactor = loadFactor;
+        this.scratch = new byte[slotSize];
+    }
+
+    /**
+     * 每段的槽位数：2的幂次方，不超过capacity，且每段不超过MAX_SEGMENT_BYTES
+     */
+    protected static int slotsPerSegment(int capacity, int slotSize) {
+        return Math.min(capacity, Integer.highestOneBit(MAX_SEGMENT_BYTES / slotSize));
+    }
+
+    /**
+     * 分配capacity个槽位的存储，新存储必须全为0(全部槽位为FREE)
+     *
+     * @param segmentCount 段数
+     * @param segmentBytes 每段字节数
+     */
+    protected abstract ByteBuffer[] newSegments(int capacity, int segmentCount, int segmentBytes);
+
+    /**
+     * 释放存储
+     */
+    protected abstract void releaseSegments(ByteBuffer[] segments);
+
+    /**
+     * 扩容或重建完成后调用，默认释放旧存储
+     */
+    protected void afterRehash(ByteBuffer[] oldSegments) {
+        releaseSegments(oldSegments);
+    }
+
+    /**
+     * 每次修改(put、remove、clear)之前调用
+     */
+    protected void beforeModify() {
+    }
+
+    /**
+     * 分配新存储作为当前数组
+     */
+    protected final void allocate(int capacity) {
+        int slotsPerSegment = slotsPerSegment(capacity, slotSize);
+        ByteBuffer[] newSegments = newSegments(capacity, capacity / slotsPerSegment, slotsPerSegment * slotSize);
+        attach(newSegments, capacity, 0);
+    }
+
+    /**
+     * 使用已有的存储(例如重新打开的文件)，不做任何搬移
+     */
+    protected final void attach(ByteBuffer[] segments, int capacity, int size) {
+        int slotsPerSegment = slotsPerSegment(capacity, slotSize);
+        if (Integer.bitCount(capacity) != 1 || segments.length != capacity / slotsPerSegment) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity + ", segments: " + segments.length);
+        }
+        this.segments = segments;
+        this.segmentShift = Integer.numberOfTrailingZeros(slotsPerSegment);
+        this.segmentMask = slotsPerSegment - 1;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.threshold = Math.min(capacity - 1, (int) (capacity * loadFactor));
+        this.size = size;
+    }
+
+    protected final ByteBuffer[] segments() {
+        return segments;
+    }
+
+    private ByteBuffer buffer(int slot) {
+        return segments[slot >>> segmentShift];
+    }
+
+    private int offset(int slot) {
+        return (slot & segmentMask) * slotSize;
+    }
+
+    /**
+     * 对b[from, from + keyWidth)计算散列值：每8字节混合一次(fmix64)
+     */
+    private int hash(byte[] b, int from) {
+        long h = keyWidth;
+        int i = from;
+        int end = from + keyWidth;
+        for (; i + 8 <= end; i += 8) {
+            long chunk = 0;
+            for (int j = i; j < i + 8; j++) {
+                chunk = (chunk << 8) | (b[j] & 0xff);
+            }
+            h = HashUtil.mix(h ^ chunk);
+        }
+        if (i < end) {
+            long tail = 0;
+            for (; i < end; i++) {
+                tail = (tail << 8) | (b[i] & 0xff);
+            }
+            h = HashUtil.mix(h ^ tail);
+        }
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * 槽位中的key是否等于key[from, from + keyWidth)
+     */
+    private boolean keyEquals(ByteBuffer buffer, int offset, byte[] key, int from) {
+        for (int i = 0; i < keyWidth; i++) {
+            if (buffer.get(offset + 1 + i) != key[from + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 查找key所在槽位，不存在返回-1
+     */
+    private int indexOf(byte[] key) {
+        int i = hash(key, 0) & mask;
+        for (; ; ) {
+            ByteBuffer buffer = buffer(i);
+            int offset = offset(i);
+            if (buffer.get(offset) == FREE) {
+                return -1;
+            }
+            if (keyEquals(buffer, offset, key, 0)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int keyWidth() {
+        return keyWidth;
+    }
+
+    public int valueWidth() {
+        return valueWidth;
+    }
+
+    public boolean isOpen() {
+        return segments != null;
+    }
+
+    public boolean containsKey(byte[] key) {
+        ensureOpen();
+        checkWidth(key, keyWidth);
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * 把value复制到dst中，不存在返回false；调用方复用dst，不产生垃圾
+     */
+    public boolean get(byte[] key, byte[] dst) {
+        ensureOpen();
+        checkWidth(key, keyWidth);
+        checkWidth(dst, valueWidth);
+        int i = indexOf(key);
+        if (i < 0) {
+            return false;
+        }
+        read(buffer(i), offset(i) + 1 + keyWidth, dst, 0, valueWidth);
+        return true;
+    }
+
+    /**
+     * 获取value的副本，不存在返回null
+     */
+    public byte[] get(byte[] key) {
+        byte[] dst = new byte[valueWidth];
+        return get(key, dst) ? dst : null;
+    }
+
+    /**
+     * 覆盖或插入，插入新key返回true
+     */
+    public boolean put(byte[] key, byte[] value) {
+        ensureOpen();
+        checkWidth(key, keyWidth);
+        checkWidth(value, valueWidth);
+        beforeModify();
+        int i = hash(key, 0) & mask;
+        for (; ; ) {
+            ByteBuffer buffer = buffer(i);
+            int offset = offset(i);
+            if (buffer.get(offset) == FREE) {
+                write(buffer, offset + 1, key, 0, keyWidth);
+                write(buffer, offset + 1 + keyWidth, value, 0, valueWidth);
+                buffer.put(offset, USED);
+                if (++size >= threshold) {
+                    resize(capacity << 1);
+                }
+                return true;
+            }
+            if (keyEquals(buffer, offset, key, 0)) {
+                write(buffer, offset + 1 + keyWidth, value, 0, valueWidth);
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * 删除，存在返回true
+     */
+    public boolean remove(byte[] key) {
+        ensureOpen();
+        checkWidth(key, keyWidth);
+        int i = indexOf(key);
+        if (i < 0) {
+            return false;
+        }
+        beforeModify();
+        size--;
+        shiftKeys(i);
+        return true;
+    }
+
+    /**
+     * 后移删除：把后面探测链上的槽位前移补位，直到遇到FREE
+     */
+    private void shiftKeys(int pos) {
+        int last;
+        int slot;
+        for (; ; ) {
+            pos = ((last = pos) + 1) & mask;
+            for (; ; ) {
+                if (buffer(pos).get(offset(pos)) == FREE) {
+                    buffer(last).put(offset(last), FREE);
+                    return;
+                }
+                read(buffer(pos), offset(pos), scratch, 0, slotSize);
+                slot = hash(scratch, 1) & mask;
+                if (HashUtil.canShift(last, pos, slot)) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            write(buffer(last), offset(last), scratch, 0, slotSize);
+        }
+    }
+
+    /**
+     * 二倍扩容
+     */
+    private void resize(int newCapacity) {
+        if (capacity >= HashUtil.MAXIMUM_CAPACITY) {
+            if (size >= capacity - 1) {
+                throw new IllegalStateException(getClass().getSimpleName() + " is full !");
+            }
+            return;
+        }
+        rehash(newCapacity);
+    }
+
+    /**
+     * 按当前容量重建：重新计算每个元素的位置，相同key只保留一个，并重新统计size；用于崩溃恢复
+     */
+    protected final void rebuild() {
+        ensureOpen();
+        rehash(capacity);
+    }
+
+    /**
+     * 分配新存储并逐个槽位搬移
+     */
+    private void rehash(int newCapacity) {
+        ByteBuffer[] oldSegments = segments;
+        int oldCapacity = capacity;
+        int oldShift = segmentShift;
+        int oldMask = segmentMask;
+        allocate(newCapacity);
+        int count = 0;
+        for (int j = 0; j < oldCapacity; j++) {
+            ByteBuffer oldBuffer = oldSegments[j >>> oldShift];
+            int oldOffset = (j & oldMask) * slotSize;
+            if (oldBuffer.get(oldOffset) == FREE) {
+                continue;
+            }
+            read(oldBuffer, oldOffset, scratch, 0, slotSize);
+            int i = hash(scratch, 1) & mask;
+            for (; ; ) {
+                ByteBuffer buffer = buffer(i);
+                int offset = offset(i);
+                if (buffer.get(offset) == FREE) {
+                    count++;
+                    break;
+                }
+                if (keyEquals(buffer, offset, scratch, 1)) {
+                    break;
+                }
+                i = (i + 1) & mask;
+            }
+            write(buffer(i), offset(i), scratch, 0, slotSize);
+        }
+        size = count;
+        afterRehash(oldSegments);
+    }
+
+    /**
+     * 清空：只需把所有槽位的状态置为FREE；复杂度O(capacity)
+     */
+    public void clear() {
+        ensureOpen();
+        beforeModify();
+        for (int i = 0; i < capacity; i++) {
+            buffer(i).put(offset(i), FREE);
+        }
+        size = 0;
+    }
+
+    /**
+     * 占用的堆外内存字节数
+     */
+    public long offHeapBytes() {
+        return segments == null ? 0 : (long) capacity * slotSize;
+    }
+
+    /**
+     * 内存占用报告
+     */
+    public String memoryReport() {
+        long bytes = offHeapBytes();
+        return String.format("%s{size=%d, capacity=%d, slotSize=%dB, segments=%d, offHeap=%.2fMB, "
+                        + "load=%.3f, bytesPerEntry=%.1f}",
+                getClass().getSimpleName(), size, capacity, slotSize, segments == null ? 0 : segments.length,
+                bytes / 1024.0 / 1024.0, (double) size / capacity, size == 0 ? 0.0 : (double) bytes / size);
+    }
+
+    /**
+     * 释放存储，可重复调用
+     */
+    @Override
+    public void close() {
+        if (segments == null) {
+            return;
+        }
+        ByteBuffer[] oldSegments = segments;
+        segments = null;
+        size = 0;
+        releaseSegments(oldSegments);
+    }
+
+    protected final void ensureOpen() {
+        if (segments == null) {
+            throw new IllegalStateException(getClass().getSimpleName() + " is closed !");
+        }
+    }
+
+    private static void checkWidth(byte[] bytes, int width) {
+        if (bytes.length != width) {
+            throw new IllegalArgumentException("Expected " + width + " bytes, but was " + bytes.length);
+        }
+    }
+
+    private static void read(ByteBuffer buffer, int offset, byte[] dst, int from, int length) {
+        for (int i = 0; i < length; i++) {
+            dst[from + i] = buffer.get(offset + i);
+        }
+    }
+
+    private static void write(ByteBuffer buffer, int offset, byte[] src, int from, int length) {
+        for (int i = 0; i < length; i++) {
+            buffer.put(offset + i, src[from + i]);
+        }
+    }
+
+    /**
+     * 游标：按槽位顺序遍历，遍历期间不能修改散列表结构
+     */
+    public Cursor cursor() {
+        ensureOpen();
+        return new Cursor();
+    }
+
+    public final class Cursor {
+        private int index = -1;
+
+        /**
+         * 移动到下一个元素，没有则返回false
+         */
+        public boolean advance() {
+            while (++index < capacity) {
+                if (buffer(index).get(offset(index)) != FREE) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 把当前key复制到dst
+         */
+        public void key(byte[] dst) {
+            checkWidth(dst, keyWidth);
+            read(buffer(index), offset(index) + 1, dst, 0, keyWidth);
+        }
+
+        /**
+         * 把当前value复制到dst
+         */
+        public void value(byte[] dst) {
+            checkWidth(dst, valueWidth);
+            read(buffer(index), offset(index) + 1 + keyWidth, dst, 0, valueWidth);
+        }
+
+        /**
+         * 修改当前元素的value
+         */
+        public void setValue(byte[] value) {
+            checkWidth(value, valueWidth);
+            beforeModify();
+            write(buffer(index), offset(index) + 1 + keyWidth, value, 0, valueWidth);
+        }
+    }
+
+    /**
+     * 释放DirectByteBuffer或解除MappedByteBuffer的映射：JDK 9+使用Unsafe.invokeCleaner，
+     * JDK 8使用DirectBuffer.cleaner().clean()；都不可用时什么也不做，由GC回收
+     */
+    protected static void free(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } else {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+            //释放失败，交给GC
+        }
+    }
+
+    private static final Object UNSAFE;
+
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+}
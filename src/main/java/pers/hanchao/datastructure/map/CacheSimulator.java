@@ -0,0 +1,119 @@
+package pers.hanchao.datastructure.map;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <p>按key trace模拟缓存，对比MyLruCache和MyTinyLfuCache的命中率</P>
+ * 1.参数：args[0] = trace文件，每行一个key(只取第一个空白字符之前的部分，忽略空行和#开头的行)，
+ *   省略或为synthetic时生成模拟trace；args[1...] = 缓存大小，默认100、1000、10000
+ * 2.模拟trace：Zipf分布(s = 0.9)的热点访问中间穿插一次性顺序扫描，扫描的key不会再次出现
+ * 3.每个key访问一次：未命中则放入缓存；输出每个缓存大小下两种缓存的命中率
+ *
+ * @author hanchao
+ */
+public class CacheSimulator {
+
+    private static final int SYNTHETIC_KEYS = 100_000;
+
+    private static final int SYNTHETIC_LENGTH = 2_000_000;
+
+    public static void main(String[] args) throws IOException {
+        boolean synthetic = args.length == 0 || "synthetic".equals(args[0]);
+        Object[] trace = synthetic ? syntheticTrace(new Random(42)) : readTrace(args[0]);
+        int[] sizes = args.length > 1
+                ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray()
+                : new int[]{100, 1000, 10000};
+
+        System.out.println("trace = " + (synthetic ? "synthetic" : args[0]) + ", length = " + trace.length);
+        for (int size : sizes) {
+            double lru = simulateLru(trace, size);
+            double tinyLfu = simulateTinyLfu(trace, size);
+            System.out.printf("size %7d: LRU %6.2f%%, W-TinyLFU %6.2f%%%n", size, lru * 100, tinyLfu * 100);
+        }
+    }
+
+    static double simulateLru(Object[] trace, int size) {
+        MyLruCache<Object, Object> cache = new MyLruCache<>(size);
+        for (Object key : trace) {
+            if (cache.get(key) == null) {
+                cache.put(key, key);
+            }
+        }
+        return cache.hitRate();
+    }
+
+    static double simulateTinyLfu(Object[] trace, int size) {
+        MyTinyLfuCache<Object, Object> cache = new MyTinyLfuCache<>(size);
+        for (Object key : trace) {
+            cache.get(key, k -> k);
+        }
+        return cache.hitRate();
+    }
+
+    /**
+     * 读取trace文件，相同的key共用一个String实例
+     */
+    static Object[] readTrace(String file) throws IOException {
+        List<Object> trace = new ArrayList<>();
+        MyHashMap<String, String> canonical = new MyHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int end = 0;
+                while (end < line.length() && !Character.isWhitespace(line.charAt(end))) {
+                    end++;
+                }
+                String key = line.substring(0, end);
+                String existing = canonical.get(key);
+                if (existing == null) {
+                    canonical.put(key, key);
+                    existing = key;
+                }
+                trace.add(existing);
+            }
+        }
+        return trace.toArray();
+    }
+
+    /**
+     * Zipf热点访问 + 每100000次访问插入一次20000个新key的顺序扫描
+     */
+    static Object[] syntheticTrace(Random random) {
+        //Zipf累积分布
+        double[] cdf = new double[SYNTHETIC_KEYS];
+        double sum = 0;
+        for (int i = 0; i < SYNTHETIC_KEYS; i++) {
+            sum += 1 / Math.pow(i + 1, 0.9);
+            cdf[i] = sum;
+        }
+        Integer[] keys = new Integer[SYNTHETIC_KEYS];
+        for (int i = 0; i < SYNTHETIC_KEYS; i++) {
+            keys[i] = i;
+        }
+        Object[] trace = new Object[SYNTHETIC_LENGTH];
+        int scanKey = SYNTHETIC_KEYS;
+        for (int i = 0; i < SYNTHETIC_LENGTH; ) {
+            if (i % 100_000 == 50_000) {
+                for (int j = 0; j < 20_000 && i < SYNTHETIC_LENGTH; j++) {
+                    trace[i++] = scanKey++;
+                }
+                continue;
+            }
+            int index = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+            trace[i++] = keys[Math.min(index < 0 ? -index - 1 : index, SYNTHETIC_KEYS - 1)];
+        }
+        return trace;
+    }
+}
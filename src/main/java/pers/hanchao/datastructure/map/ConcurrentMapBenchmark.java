@@ -0,0 +1,129 @@
+package pers.hanchao.datastructure.map;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+
+/**
+ * <p>并发散列表吞吐量对比</P>
+ * 1.参数：args[0] = 每个线程的操作次数，默认1000000；args[1] = 最大线程数，默认CPU核数；args[2] = 轮数，默认3
+ * 2.线程数从1开始按2倍递增到最大线程数，每个线程执行90% get(预先写入的共享key) + 10% put(本线程独有的新key)
+ * 3.对比ConcurrentMyHashMap、ConcurrentHashMap、Collections.synchronizedMap(MyHashMap)，输出总吞吐量(Mops/s)
+ *
+ * @author hanchao
+ */
+public class ConcurrentMapBenchmark {
+
+    /**
+     * 预先写入的共享key数量
+     */
+    private static final int SHARED_KEYS = 100_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int ops = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        Random random = new Random(42);
+        Integer[] shared = new Integer[SHARED_KEYS];
+        for (int i = 0; i < SHARED_KEYS; i++) {
+            shared[i] = random.nextInt() & ~1;
+        }
+        //每个线程独有的新key，奇数，和共享key不重复
+        Integer[][] fresh = new Integer[maxThreads][ops / 10 + 1];
+        for (int t = 0; t < maxThreads; t++) {
+            for (int i = 0; i < fresh[t].length; i++) {
+                fresh[t][i] = ((t * fresh[t].length + i) << 1) | 1;
+            }
+        }
+
+        for (int round = 1; round <= rounds; round++) {
+            System.out.println("======= round " + round + ", ops/thread = " + ops + " =======");
+            for (int threads = 1; threads <= maxThreads; threads = nextThreads(threads, maxThreads)) {
+                benchmark("ConcurrentMyHashMap", ConcurrentMyHashMap::new, threads, ops, shared, fresh);
+                benchmark("ConcurrentHashMap", ConcurrentHashMap::new, threads, ops, shared, fresh);
+                benchmark("synchronized MyHashMap", () -> Collections.synchronizedMap(new MyHashMap<>()),
+                        threads, ops, shared, fresh);
+            }
+        }
+    }
+
+    /**
+     * 线程数按2倍递增，最后一次等于最大线程数
+     */
+    private static int nextThreads(int threads, int maxThreads) {
+        return threads == maxThreads ? maxThreads + 1 : Math.min(threads << 1, maxThreads);
+    }
+
+    /**
+     * 测试一种散列表在指定线程数下的吞吐量
+     */
+    static void benchmark(String name, Supplier<Map<Integer, Integer>> supplier, int threads, int ops,
+                          Integer[] shared, Integer[][] fresh) throws InterruptedException {
+        Map<Integer, Integer> map = supplier.get();
+        long[] checksums = new long[threads];
+
+        for (Integer key : shared) {
+            map.put(key, 1);
+        }
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            new Thread(() -> {
+                Integer[] own = fresh[id];
+                int next = 0;
+                long sum = 0;
+                //每个线程从不同位置开始读，避免所有线程同时访问相同的桶
+                int cursor = (id * 7919) % shared.length;
+                ready.countDown();
+                await(start);
+                try {
+                    for (int i = 0; i < ops; i++) {
+                        if (i % 10 == 0) {
+                            map.put(own[next++], i);
+                        } else {
+                            Integer value = map.get(shared[cursor]);
+                            if (value != null) {
+                                sum += value;
+                            }
+                            if (++cursor == shared.length) {
+                                cursor = 0;
+                            }
+                        }
+                    }
+                    checksums[id] = sum;
+                } finally {
+                    //异常退出时也要计数，否则main线程一直等待
+                    done.countDown();
+                }
+            }).start();
+        }
+        await(ready);
+        long begin = System.nanoTime();
+        start.countDown();
+        await(done);
+        long elapsed = System.nanoTime() - begin;
+
+        long checksum = 0;
+        for (long sum : checksums) {
+            checksum += sum;
+        }
+        double mops = (double) threads * ops / elapsed * 1000;
+        System.out.printf("%-24s threads %3d, %8.2f Mops/s, size %d, checksum %d%n",
+                name, threads, mops, map.size(), checksum);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
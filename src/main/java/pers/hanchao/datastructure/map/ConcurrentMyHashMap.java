@@ -0,0 +1,626 @@
+package pers.hanchao.datastructure.map;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>线程安全的散列表(数组 + 链地址法 + 按桶加锁)</P>
+ * 1.table是AtomicReferenceArray，桶的读取是volatile读；Node.value和Node.next是volatile，所以get全程不加锁
+ * 2.put(key,value)：空桶用CAS放入新节点；非空桶synchronized锁住桶的头节点，只影响同一个桶的写操作；复杂度O(1)
+ * 3.remove(key)：锁住桶的头节点后从链表摘除；复杂度O(1)
+ * 4.size：LongAdder计数，高并发下各线程累加到不同的cell，避免单个计数器成为热点
+ * 5.扩容(多线程协作)：
+ *   5.1 元素数量超过threshold时创建二倍大小的nextTable，旧数组按stride切分成若干段，线程通过CAS transferIndex领取一段迁移
+ *   5.2 迁移一个桶：锁住头节点，把链表复制拆分到nextTable的i和i + n两个桶，然后在旧桶放入ForwardingNode
+ *   5.3 其他线程读到ForwardingNode时：读操作直接去nextTable查找；写操作先帮忙迁移(helpTransfer)，再去nextTable写入
+ *   5.4 最后一个完成迁移的线程把table切换为nextTable
+ *   5.5 sizeCtl记录扩容状态：非负数是扩容阈值，-1表示正在扩容；发起扩容的线程CAS sizeCtl为-1，
+ *       其他写线程不加锁，看到-1时帮忙迁移或直接返回；数组达到最大容量后阈值为Integer.MAX_VALUE，不再检查计数
+ * 6.不支持null键和null值(null表示不存在)；迭代器是弱一致性的，不会抛出ConcurrentModificationException
+ *
+ * @author hanchao
+ */
+public class ConcurrentMyHashMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+    /**
+     * 默认容量
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * 负载因子
+     */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * ForwardingNode的hash，正常节点的hash都是非负数
+     */
+    private static final int MOVED = -1;
+
+    /**
+     * 每个线程每次至少领取的桶数
+     */
+    private static final int MIN_TRANSFER_STRIDE = 16;
+
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 链表节点
+     */
+    static class Node<K, V> {
+        final int hash;
+        final K key;
+        volatile V value;
+        volatile Node<K, V> next;
+
+        Node(int hash, K key, V value, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    /**
+     * 迁移完成的桶的占位节点，指向新数组
+     */
+    static final class ForwardingNode<K, V> extends Node<K, V> {
+        final AtomicReferenceArray<Node<K, V>> nextTable;
+
+        ForwardingNode(AtomicReferenceArray<Node<K, V>> nextTable) {
+            super(MOVED, null, null, null);
+            this.nextTable = nextTable;
+        }
+    }
+
+    /**
+     * 一次扩容的状态
+     */
+    private static final class Transfer<K, V> {
+        final AtomicReferenceArray<Node<K, V>> table;
+        final AtomicReferenceArray<Node<K, V>> nextTable;
+        final ForwardingNode<K, V> forwardingNode;
+        /**
+         * 下一段待领取的桶的上界(不含)，从table.length()向0递减
+         */
+        final AtomicInteger transferIndex;
+        /**
+         * 尚未迁移完成的桶数
+         */
+        final AtomicInteger remaining;
+        final int stride;
+
+        Transfer(AtomicReferenceArray<Node<K, V>> table) {
+            int n = table.length();
+            this.table = table;
+            this.nextTable = new AtomicReferenceArray<>(n << 1);
+            this.forwardingNode = new ForwardingNode<>(nextTable);
+            this.transferIndex = new AtomicInteger(n);
+            this.remaining = new AtomicInteger(n);
+            this.stride = Math.max(MIN_TRANSFER_STRIDE, n / (NCPU * 8));
+        }
+    }
+
+    private volatile AtomicReferenceArray<Node<K, V>> table;
+
+    /**
+     * 扩容状态：非负数为扩容阈值，-1表示正在扩容
+     */
+    private final AtomicInteger sizeCtl;
+
+    /**
+     * 正在进行的扩容，没有则为null；只有CAS sizeCtl成功的线程才会创建
+     */
+    private volatile Transfer<K, V> transfer;
+
+    /**
+     * 元素个数
+     */
+    private final LongAdder count = new LongAdder();
+
+    private Set<Entry<K, V>> entrySetView;
+
+    public ConcurrentMyHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * 预估元素数量构造函数
+     */
+    public ConcurrentMyHashMap(int expectedSize) {
+        int capacity = Math.max(2, HashUtil.capacityFor(expectedSize, LOAD_FACTOR));
+        table = new AtomicReferenceArray<>(capacity);
+        sizeCtl = new AtomicInteger(thresholdFor(capacity));
+    }
+
+    /**
+     * 扰动并去掉符号位，负数留给ForwardingNode
+     */
+    private static int spread(int hashCode) {
+        return HashUtil.mix(hashCode) & 0x7fffffff;
+    }
+
+    @Override
+    public int size() {
+        long n = count.sum();
+        return n < 0 ? 0 : n > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) n;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count.sum() <= 0;
+    }
+
+    @Override
+    public V get(Object key) {
+        int h = spread(key.hashCode());
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        for (; ; ) {
+            Node<K, V> e = tab.get(h & (tab.length() - 1));
+            if (e == null) {
+                return null;
+            }
+            //桶已迁移，去新数组查找
+            if (e.hash == MOVED) {
+                tab = ((ForwardingNode<K, V>) e).nextTable;
+                continue;
+            }
+            for (; e != null; e = e.next) {
+                if (e.hash == h && (e.key == key || key.equals(e.key))) {
+                    return e.value;
+                }
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        Objects.requireNonNull(value);
+        for (Entry<K, V> e : entrySet()) {
+            if (value.equals(e.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return putVal(key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return putVal(key, value, true);
+    }
+
+    private V putVal(K key, V value, boolean onlyIfAbsent) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        int h = spread(key.hashCode());
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        for (; ; ) {
+            int i = h & (tab.length() - 1);
+            Node<K, V> f = tab.get(i);
+            if (f == null) {
+                //1.空桶：CAS放入，失败说明有竞争，重试
+                if (tab.compareAndSet(i, null, new Node<>(h, key, value, null))) {
+                    break;
+                }
+            } else if (f.hash == MOVED) {
+                //2.正在迁移：先帮忙迁移，再去新数组写入
+                tab = helpTransfer(tab, (ForwardingNode<K, V>) f);
+            } else {
+                //3.锁住头节点，加锁后头节点变了(被删除或被迁移)则重试
+                boolean done = false;
+                V oldValue = null;
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        done = true;
+                        for (Node<K, V> e = f; ; ) {
+                            if (e.hash == h && (e.key == key || key.equals(e.key))) {
+                                oldValue = e.value;
+                                if (!onlyIfAbsent) {
+                                    e.value = value;
+                                }
+                                break;
+                            }
+                            Node<K, V> pred = e;
+                            if ((e = e.next) == null) {
+                                pred.next = new Node<>(h, key, value, null);
+                                break;
+                            }
+                        }
+                    }
+                }
+                if (done) {
+                    if (oldValue != null) {
+                        return oldValue;
+                    }
+                    break;
+                }
+            }
+        }
+        addCount(1);
+        return null;
+    }
+
+    @Override
+    public V remove(Object key) {
+        return replaceNode(key, null, null);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        return value != null && replaceNode(key, null, value) != null;
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (oldValue == null || newValue == null) {
+            throw new NullPointerException();
+        }
+        return replaceNode(key, newValue, oldValue) != null;
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        return replaceNode(key, value, null);
+    }
+
+    /**
+     * 删除或替换：value为null表示删除；expect不为null时，只有当前值等于expect才操作
+     */
+    private V replaceNode(Object key, V value, Object expect) {
+        int h = spread(key.hashCode());
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        for (; ; ) {
+            int i = h & (tab.length() - 1);
+            Node<K, V> f = tab.get(i);
+            if (f == null) {
+                return null;
+            }
+            if (f.hash == MOVED) {
+                tab = helpTransfer(tab, (ForwardingNode<K, V>) f);
+                continue;
+            }
+            boolean validated = false;
+            V oldValue = null;
+            synchronized (f) {
+                if (tab.get(i) == f) {
+                    validated = true;
+                    for (Node<K, V> e = f, pred = null; e != null; pred = e, e = e.next) {
+                        if (e.hash == h && (e.key == key || key.equals(e.key))) {
+                            V ev = e.value;
+                            if (expect == null || expect == ev || expect.equals(ev)) {
+                                oldValue = ev;
+                                if (value != null) {
+                                    e.value = value;
+                                } else if (pred != null) {
+                                    pred.next = e.next;
+                                } else {
+                                    tab.set(i, e.next);
+                                }
+                            }
+                            break;
+                        }
+                    }
+                }
+            }
+            if (validated) {
+                if (oldValue != null && value == null) {
+                    addCount(-1);
+                }
+                return oldValue;
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        for (int i = 0; i < tab.length(); ) {
+            Node<K, V> f = tab.get(i);
+            if (f == null) {
+                i++;
+            } else if (f.hash == MOVED) {
+                //正在迁移，帮忙迁移完成后从新数组重新开始
+                tab = helpTransfer(tab, (ForwardingNode<K, V>) f);
+                i = 0;
+            } else {
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        int removed = 0;
+                        for (Node<K, V> e = f; e != null; e = e.next) {
+                            removed++;
+                        }
+                        tab.set(i, null);
+                        addCount(-removed);
+                        i++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 扩容阈值，已经是最大容量时不再扩容
+     */
+    private static int thresholdFor(int capacity) {
+        return capacity >= HashUtil.MAXIMUM_CAPACITY ? Integer.MAX_VALUE : (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * 计数，增加时检查是否需要扩容
+     */
+    private void addCount(int delta) {
+        count.add(delta);
+        if (delta <= 0) {
+            return;
+        }
+        int sc = sizeCtl.get();
+        //1.已经是最大容量，不能再扩容
+        if (sc == Integer.MAX_VALUE) {
+            return;
+        }
+        //2.正在扩容：帮忙迁移，扩容对象还没创建或已经结束则直接返回
+        if (sc < 0) {
+            Transfer<K, V> t = transfer;
+            if (t != null) {
+                transfer(t);
+            }
+            return;
+        }
+        //3.超过阈值：CAS成功的线程发起扩容，失败说明其他线程已经发起或已经完成
+        if (count.sum() >= sc && sizeCtl.compareAndSet(sc, -1)) {
+            Transfer<K, V> t = new Transfer<>(table);
+            transfer = t;
+            transfer(t);
+        }
+    }
+
+    /**
+     * 读到ForwardingNode时帮忙迁移，返回新数组
+     */
+    private AtomicReferenceArray<Node<K, V>> helpTransfer(AtomicReferenceArray<Node<K, V>> tab,
+                                                         ForwardingNode<K, V> forwardingNode) {
+        Transfer<K, V> t = transfer;
+        if (t != null && t.table == tab) {
+            transfer(t);
+        }
+        return forwardingNode.nextTable;
+    }
+
+    /**
+     * 循环领取一段桶并迁移，直到没有可领取的段
+     */
+    private void transfer(Transfer<K, V> t) {
+        for (; ; ) {
+            int start = t.transferIndex.get();
+            if (start <= 0) {
+                return;
+            }
+            int end = Math.max(0, start - t.stride);
+            if (!t.transferIndex.compareAndSet(start, end)) {
+                continue;
+            }
+            for (int i = start - 1; i >= end; i--) {
+                transferBin(t, i);
+            }
+            //最后一个完成迁移的线程切换数组
+            if (t.remaining.addAndGet(end - start) == 0) {
+                table = t.nextTable;
+                transfer = null;
+                //最后更新sizeCtl，其他线程CAS成功时读到的一定是新数组
+                sizeCtl.set(thresholdFor(t.nextTable.length()));
+                return;
+            }
+        }
+    }
+
+    /**
+     * 迁移一个桶：复制链表拆分到新数组的i和i + n，旧链表保持不变，正在遍历旧链表的读线程不受影响
+     */
+    private void transferBin(Transfer<K, V> t, int i) {
+        AtomicReferenceArray<Node<K, V>> tab = t.table;
+        int n = tab.length();
+        for (; ; ) {
+            Node<K, V> f = tab.get(i);
+            if (f == null) {
+                if (tab.compareAndSet(i, null, t.forwardingNode)) {
+                    return;
+                }
+                continue;
+            }
+            synchronized (f) {
+                if (tab.get(i) != f) {
+                    continue;
+                }
+                Node<K, V> lo = null;
+                Node<K, V> hi = null;
+                for (Node<K, V> e = f; e != null; e = e.next) {
+                    if ((e.hash & n) == 0) {
+                        lo = new Node<>(e.hash, e.key, e.value, lo);
+                    } else {
+                        hi = new Node<>(e.hash, e.key, e.value, hi);
+                    }
+                }
+                t.nextTable.set(i, lo);
+                t.nextTable.set(i + n, hi);
+                tab.set(i, t.forwardingNode);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if (entrySetView == null) {
+            entrySetView = new EntrySet();
+        }
+        return entrySetView;
+    }
+
+    /**
+     * 弱一致性迭代器：遍历创建时的数组，遇到ForwardingNode则遍历新数组中对应的两个桶
+     */
+    private final class EntryIterator implements Iterator<Entry<K, V>> {
+        final AtomicReferenceArray<Node<K, V>> baseTable = table;
+        int baseIndex;
+        final Deque<Node<K, V>> pendingBins = new ArrayDeque<>();
+        Node<K, V> next;
+        Node<K, V> lastReturned;
+
+        EntryIterator() {
+            advance();
+        }
+
+        /**
+         * 待遍历的桶，已迁移的桶展开为新数组中的两个桶
+         */
+        private void pushBin(AtomicReferenceArray<Node<K, V>> tab, int i) {
+            Node<K, V> f = tab.get(i);
+            if (f instanceof ForwardingNode) {
+                AtomicReferenceArray<Node<K, V>> nextTable = ((ForwardingNode<K, V>) f).nextTable;
+                pushBin(nextTable, i + tab.length());
+                pushBin(nextTable, i);
+            } else if (f != null) {
+                pendingBins.push(f);
+            }
+        }
+
+        private void advance() {
+            Node<K, V> e = next == null ? null : next.next;
+            while (e == null) {
+                if (!pendingBins.isEmpty()) {
+                    e = pendingBins.pop();
+                } else if (baseIndex < baseTable.length()) {
+                    pushBin(baseTable, baseIndex++);
+                } else {
+                    break;
+                }
+            }
+            next = e;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = next;
+            advance();
+            return new MapEntry(lastReturned.key, lastReturned.value);
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            ConcurrentMyHashMap.this.remove(lastReturned.key);
+            lastReturned = null;
+        }
+    }
+
+    /**
+     * 迭代器返回的键值对，setValue写回散列表
+     */
+    private final class MapEntry extends SimpleEntry<K, V> {
+        MapEntry(K key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(V value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<K, V>> {
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return ConcurrentMyHashMap.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            Object v = e.getKey() == null ? null : get(e.getKey());
+            return v != null && v.equals(e.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            return e.getKey() != null && ConcurrentMyHashMap.this.remove(e.getKey(), e.getValue());
+        }
+
+        @Override
+        public void clear() {
+            ConcurrentMyHashMap.this.clear();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        ConcurrentMyHashMap<Integer, Integer> map = new ConcurrentMyHashMap<>();
+        int threads = Math.max(4, NCPU);
+        int perThread = 100_000;
+
+        //多个线程同时写入不同的key，期间会多次协作扩容
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int base = t * perThread;
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    map.put(base + i, i);
+                }
+                for (int i = 0; i < perThread; i += 2) {
+                    map.remove(base + i);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        System.out.println("size = " + map.size() + ", expected = " + threads * perThread / 2);
+        System.out.println("get(1) = " + map.get(1) + ", get(2) = " + map.get(2));
+        int iterated = 0;
+        for (Entry<Integer, Integer> ignored : map.entrySet()) {
+            iterated++;
+        }
+        System.out.println("iterated = " + iterated);
+    }
+}
@@ -0,0 +1,130 @@
+package pers.hanchao.datastructure.map;
+
+import java.util.Arrays;
+
+/**
+ * <p>4位Count-Min Sketch：估算key的访问频率，用于TinyLFU准入</P>
+ * 1.table = long[]，每个long存放16个4位计数器，计数器最大为15；计数器总数 = table.length * 16
+ * 2.每个key按4个种子散列到4个计数器(相当于4行)，increment()把4个计数器各加1，frequency()取4个计数器的最小值；复杂度O(1)
+ * 3.散列冲突只会让估算偏大，不会偏小；table.length = 大于等于最大元素个数的2的幂次方，每个元素平均16个计数器
+ * 4.衰减(aging)：increment次数达到sampleSize = 10 * 最大元素个数时，所有计数器减半，过去的热点逐渐被遗忘
+ *
+ * @author hanchao
+ */
+public class FrequencySketch {
+
+    /**
+     * 4行计数器的散列种子
+     */
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    /**
+     * 每个4位计数器减半后的掩码
+     */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+
+    /**
+     * 计数器总数 - 1
+     */
+    private final int counterMask;
+
+    /**
+     * 衰减周期
+     */
+    private final int sampleSize;
+
+    /**
+     * 距离上次衰减的increment次数
+     */
+    private int additions;
+
+    /**
+     * 衰减次数
+     */
+    private int resetCount;
+
+    /**
+     * @param maximumSize 缓存的最大元素个数
+     */
+    public FrequencySketch(int maximumSize) {
+        int size = HashUtil.tableSizeFor(Math.max(maximumSize, 8));
+        //计数器总数不超过int范围
+        size = Math.min(size, 1 << 26);
+        table = new long[size];
+        counterMask = (size << 4) - 1;
+        sampleSize = (int) Math.min(10L * Math.max(maximumSize, 1), Integer.MAX_VALUE);
+    }
+
+    /**
+     * 第i行计数器的下标
+     */
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int) h & counterMask;
+    }
+
+    /**
+     * 读取计数器
+     */
+    private int counter(int index) {
+        return (int) (table[index >>> 4] >>> ((index & 15) << 2)) & 0xf;
+    }
+
+    /**
+     * 访问频率估算值，0 ~ 15
+     */
+    public int frequency(Object key) {
+        int hash = HashUtil.mix(key.hashCode());
+        int frequency = 15;
+        for (int i = 0; i < SEEDS.length; i++) {
+            frequency = Math.min(frequency, counter(indexOf(hash, i)));
+        }
+        return frequency;
+    }
+
+    /**
+     * 记录一次访问：4个计数器各加1(已经是15的不再增加)，达到衰减周期时全部减半
+     */
+    public void increment(Object key) {
+        int hash = HashUtil.mix(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int index = indexOf(hash, i);
+            int shift = (index & 15) << 2;
+            if (((table[index >>> 4] >>> shift) & 0xf) != 0xf) {
+                table[index >>> 4] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * 衰减：所有计数器减半
+     */
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions >>>= 1;
+        resetCount++;
+    }
+
+    /**
+     * 清空所有计数器
+     */
+    public void clear() {
+        Arrays.fill(table, 0L);
+        additions = 0;
+    }
+
+    public int resetCount() {
+        return resetCount;
+    }
+}
@@ -0,0 +1,156 @@
+package pers.hanchao.datastructure.map;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * <p>扰动函数：把hashCode转换为散列表使用的hash，下标 = hash & (capacity - 1)</P>
+ * 1.只用低位做下标，hashCode的高位必须混入低位，否则只有高位不同的key全部落在同一个桶
+ * 2.identity()：不扰动，只适合hashCode本身就均匀的key，用于对比
+ * 3.murmur3()：murmur3的fmix32(HashUtil.mix)，两次乘法，雪崩效果好；MyHashMap默认使用
+ * 4.fxHash()：乘以黄金分割常量(rustc的FxHash)，再把高16位异或到低16位；一次乘法，最快，对特殊构造的key较弱
+ * 5.seeded()：先加上随机种子再fmix32；种子不公开时，攻击者无法离线构造出落在同一个桶的大量不同hashCode(哈希洪水)；
+ *   hashCode完全相同的key任何扰动函数都无法分开，由红黑树兜底
+ * 6.choose(keys, capacity, candidates)：用样本key统计每个扰动函数的平均查找长度，返回最好的一个；
+ *   候选按偏好(通常是由快到慢)排列，后面的候选至少好1%才替换前面的
+ *
+ * @author hanchao
+ */
+@FunctionalInterface
+public interface HashSpreader {
+
+    /**
+     * hashCode转换为hash
+     */
+    int spread(int hashCode);
+
+    /**
+     * 不扰动
+     */
+    static HashSpreader identity() {
+        return Spreaders.IDENTITY;
+    }
+
+    /**
+     * murmur3 fmix32
+     */
+    static HashSpreader murmur3() {
+        return Spreaders.MURMUR3;
+    }
+
+    /**
+     * FxHash：一次乘法 + 高位异或到低位
+     */
+    static HashSpreader fxHash() {
+        return Spreaders.FX_HASH;
+    }
+
+    /**
+     * 随机种子 + fmix32，每次调用使用新的种子
+     */
+    static HashSpreader seeded() {
+        return seeded(Spreaders.RANDOM.nextInt());
+    }
+
+    /**
+     * 指定种子 + fmix32
+     */
+    static HashSpreader seeded(int seed) {
+        return new Spreaders.Seeded(seed);
+    }
+
+    /**
+     * 按样本key选择扰动函数：假设数组容量为capacity，统计命中查找平均要比较的节点数 = Σ len * (len + 1) / 2 / n
+     */
+    static HashSpreader choose(Iterable<?> sampleKeys, int capacity, HashSpreader... candidates) {
+        if (candidates.length == 0) {
+            throw new IllegalArgumentException("No candidate spreaders !");
+        }
+        int mask = HashUtil.tableSizeFor(capacity) - 1;
+        int[] counts = new int[mask + 1];
+        HashSpreader best = null;
+        double bestProbes = Double.MAX_VALUE;
+        for (HashSpreader candidate : candidates) {
+            Arrays.fill(counts, 0);
+            long n = 0;
+            long probes = 0;
+            for (Object key : sampleKeys) {
+                //第c + 1个落入同一个桶的key，查找时要比较c + 1个节点
+                probes += ++counts[candidate.spread(key.hashCode()) & mask];
+                n++;
+            }
+            double mean = n == 0 ? 0 : (double) probes / n;
+            if (mean < bestProbes * 0.99) {
+                best = candidate;
+                bestProbes = mean;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 内置的扰动函数
+     */
+    final class Spreaders {
+
+        static final SecureRandom RANDOM = new SecureRandom();
+
+        static final HashSpreader IDENTITY = new HashSpreader() {
+            @Override
+            public int spread(int hashCode) {
+                return hashCode;
+            }
+
+            @Override
+            public String toString() {
+                return "identity";
+            }
+        };
+
+        static final HashSpreader MURMUR3 = new HashSpreader() {
+            @Override
+            public int spread(int hashCode) {
+                return HashUtil.mix(hashCode);
+            }
+
+            @Override
+            public String toString() {
+                return "murmur3";
+            }
+        };
+
+        static final HashSpreader FX_HASH = new HashSpreader() {
+            @Override
+            public int spread(int hashCode) {
+                int h = hashCode * 0x9e3779b9;
+                return h ^ (h >>> 16);
+            }
+
+            @Override
+            public String toString() {
+                return "fxHash";
+            }
+        };
+
+        static final class Seeded implements HashSpreader {
+            private final int seed;
+
+            Seeded(int seed) {
+                this.seed = seed;
+            }
+
+            @Override
+            public int spread(int hashCode) {
+                return HashUtil.mix(hashCode + seed);
+            }
+
+            @Override
+            public String toString() {
+                return "seeded";
+            }
+        }
+
+        private Spreaders() {
+        }
+    }
+}
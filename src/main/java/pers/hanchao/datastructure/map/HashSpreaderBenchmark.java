@@ -0,0 +1,104 @@
+package pers.hanchao.datastructure.map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+/**
+ * <p>不同扰动函数在不同key分布下的散列质量和查找耗时</P>
+ * 1.参数：args[0] = 元素数量，默认200000
+ * 2.key分布：随机Integer、低12位全是0的Integer、"key" + i字符串、小整数的Double(hashCode低位全是0)、
+ *   针对murmur3构造的4096个洪水key(把目标hash逆推为hashCode，全部落在同一个桶，只能靠红黑树兜底)
+ * 3.每种组合输出：负载、扩容次数、最长链表、空桶比例、命中查找平均比较的节点数(树化的桶也按链表计算，是上界)、get耗时；
+ *   最后输出HashSpreader.choose()按样本选出的扰动函数
+ *
+ * @author hanchao
+ */
+public class HashSpreaderBenchmark {
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        Random random = new Random(42);
+        int[] randoms = random.ints(n).toArray();
+
+        //预热
+        run("warm up", n, i -> randoms[i]);
+        run("random Integer", n, i -> randoms[i]);
+        run("Integer << 12", n, i -> i << 12);
+        run("String key + i", n, i -> "key" + i);
+        run("small Double", n, i -> (double) i);
+        //低20位为0的hash只有4096个
+        run("murmur3 flood", Math.min(n, 1 << 12), HashSpreaderBenchmark::murmur3Flood);
+    }
+
+    private static void run(String name, int n, IntFunction<Object> keyFactory) {
+        Object[] keys = new Object[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = keyFactory.apply(i);
+        }
+        List<Object> sample = Arrays.asList(keys).subList(0, Math.min(n, 10_000));
+        HashSpreader[] spreaders = {HashSpreader.identity(), HashSpreader.fxHash(), HashSpreader.murmur3(),
+                HashSpreader.seeded()};
+        System.out.println("======= " + name + ", n = " + n + " =======");
+        //先全部建表，再轮流测试get，取每个表最快的一轮
+        List<MyHashMap<Object, Object>> maps = new ArrayList<>();
+        for (HashSpreader spreader : spreaders) {
+            MyHashMap<Object, Object> map = new MyHashMap<>(spreader);
+            for (Object key : keys) {
+                map.put(key, key);
+            }
+            maps.add(map);
+        }
+        long[] best = new long[spreaders.length];
+        Arrays.fill(best, Long.MAX_VALUE);
+        for (int round = 0; round < 3; round++) {
+            for (int s = 0; s < spreaders.length; s++) {
+                MyHashMap<Object, Object> map = maps.get(s);
+                long start = System.nanoTime();
+                int found = 0;
+                for (Object key : keys) {
+                    if (map.get(key) != null) {
+                        found++;
+                    }
+                }
+                best[s] = Math.min(best[s], System.nanoTime() - start);
+                if (found != n) {
+                    throw new IllegalStateException("lost keys: " + (n - found));
+                }
+            }
+        }
+        for (int s = 0; s < spreaders.length; s++) {
+            MyHashMap<Object, Object> map = maps.get(s);
+            int[] histogram = map.chainLengthHistogram();
+            long buckets = 0;
+            long probes = 0;
+            for (int length = 0; length < histogram.length; length++) {
+                buckets += histogram[length];
+                probes += (long) histogram[length] * length * (length + 1) / 2;
+            }
+            System.out.printf("%-9s load %.2f, resizes %2d, max chain %6d, empty %5.1f%%, probes/hit %8.2f, "
+                            + "get %7.1f ns/op%n", spreaders[s], map.load(), map.resizeCount(), histogram.length - 1,
+                    100.0 * histogram[0] / buckets, (double) probes / n, (double) best[s] / n);
+        }
+        System.out.println("choose(sample) -> " + HashSpreader.choose(sample, HashUtil.tableSizeFor(n * 4 / 3),
+                spreaders));
+    }
+
+    /**
+     * 构造hashCode，使murmur3扰动后的hash低20位全为0：对目标hash逐步求fmix32的逆
+     */
+    static Integer murmur3Flood(int i) {
+        int h = i << 20;
+        //x ^= x >>> 16的逆是它本身
+        h ^= h >>> 16;
+        //乘法的逆：乘以模2^32的逆元
+        h *= 0x7ed1b41d;
+        //x ^= x >>> 13的逆
+        h ^= h >>> 13 ^ h >>> 26;
+        h *= 0xa5cb9243;
+        h ^= h >>> 16;
+        return h;
+    }
+}
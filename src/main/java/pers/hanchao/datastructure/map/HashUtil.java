@@ -0,0 +1,124 @@
+package pers.hanchao.datastructure.map;
+
+/**
+ * <p>散列表公用的工具方法</P>
+ * 1.容量统一为2的幂次方，下标 = mix(hashCode) & (capacity - 1)，用位与代替取模
+ * 2.mix(h)：murmur3的fmix32，把高位充分混入低位，避免只用低位时大量冲突
+ * 3.tableSizeFor(cap)：大于等于cap的最小2的幂次方
+ * 4.capacityFor(n, loadFactor)：放下n个元素且不触发扩容所需的最小容量
+ * 5.线性探测的开放寻址表(keys.length为2的幂次方，null为空槽位)共用：probe(keys, key)查找key或插入位置，
+ *   freeSlot(keys, key)扩容时找空槽位，shiftSource(keys, last)后移删除时找下一个可以前移到last的元素，
+ *   canShift(last, pos, slot)判断理想下标为slot、位于pos的元素能否前移到空出的last
+ *
+ * @author hanchao
+ */
+public class HashUtil {
+
+    /**
+     * 最大容量
+     */
+    public static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private HashUtil() {
+    }
+
+    /**
+     * 扰动函数(murmur3 fmix32)
+     */
+    public static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * 扰动函数(murmur3 fmix64)
+     */
+    public static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * 大于等于cap的最小2的幂次方
+     */
+    public static int tableSizeFor(int cap) {
+        if (cap <= 1) {
+            return 1;
+        }
+        if (cap >= MAXIMUM_CAPACITY) {
+            return MAXIMUM_CAPACITY;
+        }
+        return Integer.highestOneBit(cap - 1) << 1;
+    }
+
+    /**
+     * 放下expectedSize个元素且不触发扩容所需的最小容量
+     */
+    public static int capacityFor(int expectedSize, float loadFactor) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("The expected size must not be negative !");
+        }
+        if (loadFactor <= 0 || loadFactor >= 1) {
+            throw new IllegalArgumentException("The load factor must be in (0, 1) !");
+        }
+        return tableSizeFor((int) Math.min(MAXIMUM_CAPACITY, (long) Math.ceil(expectedSize / (double) loadFactor) + 1));
+    }
+
+    /**
+     * 线性探测：返回key所在下标；不存在时返回 -(第一个空槽位 + 1)
+     */
+    public static int probe(Object[] keys, Object key) {
+        int mask = keys.length - 1;
+        int i = mix(key.hashCode()) & mask;
+        Object k;
+        while ((k = keys[i]) != null) {
+            if (k == key || k.equals(key)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -i - 1;
+    }
+
+    /**
+     * 从key的理想下标开始的第一个空槽位，扩容重新放置时使用(key一定不存在)
+     */
+    public static int freeSlot(Object[] keys, Object key) {
+        int mask = keys.length - 1;
+        int i = mix(key.hashCode()) & mask;
+        while (keys[i] != null) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * 后移删除的一步：last已空出，从last向后扫描，返回第一个可以前移到last的元素下标；先遇到空槽位返回-1。
+     * 调用方把该元素搬到last，再把它原来的位置当作新的last继续，直到返回-1时清空last
+     */
+    public static int shiftSource(Object[] keys, int last) {
+        int mask = keys.length - 1;
+        Object k;
+        for (int pos = (last + 1) & mask; (k = keys[pos]) != null; pos = (pos + 1) & mask) {
+            if (canShift(last, pos, mix(k.hashCode()) & mask)) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 位于pos、理想下标为slot的元素能否前移到last：slot在循环区间(last, pos]之外时可以
+     */
+    public static boolean canShift(int last, int pos, int slot) {
+        return last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos;
+    }
+}
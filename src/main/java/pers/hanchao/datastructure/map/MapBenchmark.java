@@ -0,0 +1,132 @@
+package pers.hanchao.datastructure.map;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * <p>散列表性能对比</P>
+ * 1.参数：args[0] = 元素数量，默认200000；args[1] = 轮数，默认5，前几轮用于JIT预热
+ * 2.每轮分别测试：put n个元素、get n个命中key、get n个未命中key，输出每次操作的平均耗时(ns/op)
+ * 3.key和value提前装箱并复用同一个Integer实例，避免装箱开销混入结果
+ * 4.最后对比MyHashMap一次性扩容和渐进式扩容时，单次put的最大耗时(扩容停顿)；
+ *   GC停顿会混入结果，建议加大新生代避免测试期间发生GC，例如 java -Xms6g -Xmn5g MapBenchmark 2000000
+ * 5.批量加载：对比逐个put和putAll(一次性扩容，元素足够多且有多个CPU时并行加载)加载同一个HashMap的耗时
+ *
+ * @author hanchao
+ */
+public class MapBenchmark {
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Random random = new Random(42);
+        Integer[] hits = new Integer[n];
+        Integer[] misses = new Integer[n];
+        Integer[] values = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            hits[i] = random.nextInt() & ~1;
+            misses[i] = random.nextInt() | 1;
+            values[i] = i;
+        }
+
+        for (int round = 1; round <= rounds; round++) {
+            System.out.println("======= round " + round + ", n = " + n + " =======");
+            benchmark("MyHashMap", MyHashMap::new, hits, values, misses);
+            benchmark("MyOpenHashMap", MyOpenHashMap::new, hits, values, misses);
+            benchmark("MyRobinHoodHashMap", MyRobinHoodHashMap::new, hits, values, misses);
+            benchmark("MySwissHashMap", MySwissHashMap::new, hits, values, misses);
+        }
+
+        System.out.println("======= max put pause, n = " + n + " =======");
+        for (int round = 1; round <= rounds; round++) {
+            maxPause("MyHashMap", new MyHashMap<>(), hits, values);
+            maxPause("MyHashMap(incremental)", new MyHashMap<>(true), hits, values);
+        }
+
+        System.out.println("======= bulk load, n = " + n + ", parallelism = "
+                + ForkJoinPool.getCommonPoolParallelism() + " =======");
+        Map<Integer, Integer> source = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            source.put(hits[i], values[i]);
+        }
+        for (int round = 1; round <= rounds; round++) {
+            bulkLoad(source);
+        }
+    }
+
+    /**
+     * 逐个put和putAll分别加载source
+     */
+    static void bulkLoad(Map<Integer, Integer> source) {
+        MyHashMap<Integer, Integer> one = new MyHashMap<>();
+        MyHashMap<Integer, Integer> bulk = new MyHashMap<>();
+        System.gc();
+        long start = System.nanoTime();
+        source.forEach(one::put);
+        long putNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        bulk.putAll(source);
+        long putAllNanos = System.nanoTime() - start;
+        System.out.printf("put one by one %10.3f ms, putAll %10.3f ms, size %d/%d%n",
+                putNanos / 1_000_000.0, putAllNanos / 1_000_000.0, one.size(), bulk.size());
+    }
+
+    /**
+     * 逐个put并记录单次put的最大耗时
+     */
+    static void maxPause(String name, Map<Integer, Integer> map, Integer[] keys, Integer[] values) {
+        long max = 0;
+        System.gc();
+        for (int i = 0; i < keys.length; i++) {
+            long start = System.nanoTime();
+            map.put(keys[i], values[i]);
+            max = Math.max(max, System.nanoTime() - start);
+        }
+        System.out.printf("%-24s max put pause %10.3f ms%n", name, max / 1_000_000.0);
+    }
+
+    /**
+     * 测试一种散列表
+     */
+    static void benchmark(String name, Supplier<Map<Integer, Integer>> supplier, Integer[] hits, Integer[] values,
+                          Integer[] misses) {
+        Map<Integer, Integer> map = supplier.get();
+        int n = hits.length;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            map.put(hits[i], values[i]);
+        }
+        long putNanos = System.nanoTime() - start;
+
+        long sum = 0;
+        start = System.nanoTime();
+        for (Integer key : hits) {
+            Integer value = map.get(key);
+            if (value != null) {
+                sum += value;
+            }
+        }
+        long hitNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (Integer key : misses) {
+            if (map.get(key) != null) {
+                sum++;
+            }
+        }
+        long missNanos = System.nanoTime() - start;
+
+        System.out.printf("%-20s put %8.1f ns/op, get(hit) %8.1f ns/op, get(miss) %8.1f ns/op, checksum %d%n",
+                name, (double) putNanos / n, (double) hitNanos / n, (double) missNanos / n, sum);
+        if (map instanceof MyRobinHoodHashMap) {
+            MyRobinHoodHashMap<Integer, Integer> robinHood = (MyRobinHoodHashMap<Integer, Integer>) map;
+            System.out.printf("%-20s max probe %d, mean probe %.3f%n",
+                    "", robinHood.maxProbeDistance(), robinHood.meanProbeDistance());
+        }
+    }
+}
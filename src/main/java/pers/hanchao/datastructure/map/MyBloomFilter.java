@@ -0,0 +1,403 @@
+package pers.hanchao.datastructure.map;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * <p>分块布隆过滤器(Split Block Bloom Filter)：判断元素"一定不存在"或"可能存在"</P>
+ * 1.位数组按512位(8个long，一个缓存行)分块，一个元素只落在一个块内，在块内的8个long中各设置1位；
+ *   一次查询只访问一个缓存行，普通布隆过滤器需要访问k个随机位置
+ * 2.hash = mix(hashCode)：高32位选块(乘法取区间代替取模)，低32位分别乘以8个奇数常量(SALT)，乘积的高6位是该long内的位置；
+ *   8次乘法互不依赖，查询不提前返回(8个位在同一个缓存行，逐位判断的分支很难预测)，没有循环和数组下标计算
+ * 3.容量：k固定为8，每块元素个数服从泊松分布，按分块后的误判率逐步增加块数，直到不超过指定的fpp；
+ *   fpp为1%时约10.5位/元素，和标准布隆过滤器(9.6位/元素)接近；fpp很大时k=8偏多，位数会比标准公式多一些
+ * 4.put(e)：复杂度O(1)，返回是否有位从0变为1(返回true说明之前一定不存在)；mightContain(e)：复杂度O(1)
+ * 5.fpp()：创建时指定的误判率；fillRatio()：置1的位所占比例；expectedFpp()：按当前每块的填充情况计算的误判率
+ * 6.writeTo(out)、readFrom(in)：二进制格式 = 魔数、版本、块数、预计元素个数、fpp、插入次数、位数组(大端)
+ * 7.不支持删除；元素只按hashCode区分，hashCode相同的元素互相误判；非线程安全
+ * 8.MyHashMap(incrementalRehash, fpp)把它放在散列表前面，不存在的key不用访问数组和链表
+ *
+ * @author hanchao
+ */
+public class MyBloomFilter<T> {
+
+    private static final int MAGIC = 0x4D59424C;
+
+    private static final int VERSION = 1;
+
+    /**
+     * 每块的位数、long数；每个元素在每个long中设置1位，所以也是k
+     */
+    private static final int BLOCK_BITS = 512;
+    private static final int BLOCK_LONGS = BLOCK_BITS / Long.SIZE;
+
+    /**
+     * 计算块内位置的奇数常量，每个long一个
+     */
+    private static final int SALT0 = 0x47b6137b;
+    private static final int SALT1 = 0x44974d91;
+    private static final int SALT2 = 0x8824ad5b;
+    private static final int SALT3 = 0xa2b7289d;
+    private static final int SALT4 = 0x705495c7;
+    private static final int SALT5 = 0x2df1424b;
+    private static final int SALT6 = 0x9efc4947;
+    private static final int SALT7 = 0x5c6bfb31;
+
+    /**
+     * 乘积右移的位数，剩下高6位
+     */
+    private static final int SHIFT = Integer.SIZE - 6;
+
+    /**
+     * 最大块数：位数组不超过2^30个long
+     */
+    private static final int MAX_BLOCKS = 1 << 27;
+
+    private static final double LN2 = Math.log(2);
+
+    private final long[] bits;
+
+    private final int blocks;
+
+    private final long expectedInsertions;
+
+    private final double fpp;
+
+    /**
+     * put的调用次数
+     */
+    private long insertions;
+
+    /**
+     * @param expectedInsertions 预计元素个数
+     * @param fpp                期望的误判率，(0, 1)
+     */
+    public MyBloomFilter(long expectedInsertions, double fpp) {
+        if (expectedInsertions < 0) {
+            throw new IllegalArgumentException("The expected insertions must not be negative !");
+        }
+        if (!(fpp > 0 && fpp < 1)) {
+            throw new IllegalArgumentException("The fpp must be in (0, 1) !");
+        }
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+        //1.从标准公式的一半开始估算
+        double n = Math.max(1, expectedInsertions);
+        double bitsPerKey = -Math.log(fpp) / (LN2 * LN2);
+        long blockCount = Math.max(1, (long) Math.ceil(n * bitsPerKey / BLOCK_BITS / 2));
+        //2.分块后的误判率不满足要求时逐步增加块数
+        while (blockCount < MAX_BLOCKS && blockedFpp(blockCount, n) > fpp) {
+            blockCount += (blockCount >> 5) + 1;
+        }
+        this.blocks = (int) Math.min(blockCount, MAX_BLOCKS);
+        this.bits = new long[blocks * BLOCK_LONGS];
+    }
+
+    private MyBloomFilter(long[] bits, int blocks, long expectedInsertions, double fpp, long insertions) {
+        this.bits = bits;
+        this.blocks = blocks;
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+        this.insertions = insertions;
+    }
+
+    /**
+     * 分块后的误判率：每块的元素个数服从均值为n / blocks的泊松分布，
+     * 块内有i个元素时，每个long中某一位为1的概率是1 - (1 - 1/64)^i，8个long都命中的概率是它的8次方
+     */
+    static double blockedFpp(long blocks, double n) {
+        double lambda = n / blocks;
+        int max = (int) (lambda + 10 * Math.sqrt(lambda) + 10);
+        double logLambda = Math.log(lambda);
+        double logPoisson = -lambda;
+        double miss = Math.log1p(-1.0 / Long.SIZE);
+        double sum = 0;
+        for (int i = 0; i <= max; i++) {
+            if (i > 0) {
+                logPoisson += logLambda - Math.log(i);
+            }
+            sum += Math.exp(logPoisson) * Math.pow(-Math.expm1(miss * i), BLOCK_LONGS);
+        }
+        return sum;
+    }
+
+    /**
+     * 放入元素，返回是否有位从0变为1
+     */
+    public boolean put(T element) {
+        return putHash(element.hashCode());
+    }
+
+    /**
+     * 是否可能存在：返回false时一定不存在
+     */
+    public boolean mightContain(Object element) {
+        return mightContainHash(element.hashCode());
+    }
+
+    /**
+     * 按hashCode放入
+     */
+    boolean putHash(int hashCode) {
+        insertions++;
+        long h = HashUtil.mix((long) hashCode);
+        int base = block(h) * BLOCK_LONGS;
+        int low = (int) h;
+        boolean changed = set(base, 1L << (low * SALT0 >>> SHIFT));
+        changed |= set(base + 1, 1L << (low * SALT1 >>> SHIFT));
+        changed |= set(base + 2, 1L << (low * SALT2 >>> SHIFT));
+        changed |= set(base + 3, 1L << (low * SALT3 >>> SHIFT));
+        changed |= set(base + 4, 1L << (low * SALT4 >>> SHIFT));
+        changed |= set(base + 5, 1L << (low * SALT5 >>> SHIFT));
+        changed |= set(base + 6, 1L << (low * SALT6 >>> SHIFT));
+        changed |= set(base + 7, 1L << (low * SALT7 >>> SHIFT));
+        return changed;
+    }
+
+    /**
+     * 设置一位，返回该位原来是否为0
+     */
+    private boolean set(int index, long mask) {
+        long word = bits[index];
+        bits[index] = word | mask;
+        return (word & mask) == 0;
+    }
+
+    /**
+     * 按hashCode判断是否可能存在
+     */
+    boolean mightContainHash(int hashCode) {
+        long h = HashUtil.mix((long) hashCode);
+        int base = block(h) * BLOCK_LONGS;
+        int low = (int) h;
+        long found = bits[base] >>> (low * SALT0 >>> SHIFT)
+                & bits[base + 1] >>> (low * SALT1 >>> SHIFT)
+                & bits[base + 2] >>> (low * SALT2 >>> SHIFT)
+                & bits[base + 3] >>> (low * SALT3 >>> SHIFT)
+                & bits[base + 4] >>> (low * SALT4 >>> SHIFT)
+                & bits[base + 5] >>> (low * SALT5 >>> SHIFT)
+                & bits[base + 6] >>> (low * SALT6 >>> SHIFT)
+                & bits[base + 7] >>> (low * SALT7 >>> SHIFT);
+        return (found & 1) != 0;
+    }
+
+    /**
+     * 高32位乘以块数再取高32位，得到[0, blocks)
+     */
+    private int block(long h) {
+        return (int) (((h >>> 32) * blocks) >>> 32);
+    }
+
+    /**
+     * 清空
+     */
+    public void clear() {
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = 0;
+        }
+        insertions = 0;
+    }
+
+    /**
+     * 创建时指定的误判率
+     */
+    public double fpp() {
+        return fpp;
+    }
+
+    public long expectedInsertions() {
+        return expectedInsertions;
+    }
+
+    /**
+     * put的调用次数(包括重复元素)
+     */
+    public long insertions() {
+        return insertions;
+    }
+
+    /**
+     * 每个元素设置的位数
+     */
+    public int hashFunctions() {
+        return BLOCK_LONGS;
+    }
+
+    public long bitSize() {
+        return (long) bits.length * Long.SIZE;
+    }
+
+    /**
+     * 置1的位所占比例；复杂度O(m)
+     */
+    public double fillRatio() {
+        long count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return (double) count / bitSize();
+    }
+
+    /**
+     * 按当前填充率计算的误判率：每块的(置1位数 / 512)^8的平均值；复杂度O(m)
+     */
+    public double expectedFpp() {
+        double sum = 0;
+        for (int b = 0; b < blocks; b++) {
+            int count = 0;
+            for (int i = b * BLOCK_LONGS, end = i + BLOCK_LONGS; i < end; i++) {
+                count += Long.bitCount(bits[i]);
+            }
+            //近似：块内8个long的填充率相同
+            sum += Math.pow((double) count / BLOCK_BITS, BLOCK_LONGS);
+        }
+        return sum / blocks;
+    }
+
+    /**
+     * 写入输出流，不关闭输出流
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(blocks);
+        data.writeLong(expectedInsertions);
+        data.writeDouble(fpp);
+        data.writeLong(insertions);
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        for (long word : bits) {
+            if (!buffer.hasRemaining()) {
+                data.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+            buffer.putLong(word);
+        }
+        data.write(buffer.array(), 0, buffer.position());
+        data.flush();
+    }
+
+    /**
+     * 从输入流读取writeTo写入的内容，只读取过滤器本身的字节
+     */
+    public static <T> MyBloomFilter<T> readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a bloom filter !");
+        }
+        int version = data.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported bloom filter version " + version + " !");
+        }
+        int blocks = data.readInt();
+        long expectedInsertions = data.readLong();
+        double fpp = data.readDouble();
+        long insertions = data.readLong();
+        if (blocks < 1 || blocks > MAX_BLOCKS || !(fpp > 0 && fpp < 1)) {
+            throw new IOException("Corrupted bloom filter header: blocks = " + blocks + ", fpp = " + fpp);
+        }
+        long[] bits = new long[blocks * BLOCK_LONGS];
+        byte[] buffer = new byte[8192];
+        for (int i = 0; i < bits.length; ) {
+            int count = Math.min(buffer.length / Long.BYTES, bits.length - i);
+            data.readFully(buffer, 0, count * Long.BYTES);
+            ByteBuffer.wrap(buffer, 0, count * Long.BYTES).asLongBuffer().get(bits, i, count);
+            i += count;
+        }
+        return new MyBloomFilter<>(bits, blocks, expectedInsertions, fpp, insertions);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int n = 1_000_000;
+        Random random = new Random(42);
+        Integer[] keys = new Integer[n];
+        Integer[] others = new Integer[n];
+        //key和不存在的key都均匀分布，互不重复
+        HashSet<Integer> used = new HashSet<>(n * 4);
+        for (int i = 0; i < 2 * n; i++) {
+            Integer key;
+            do {
+                key = random.nextInt();
+            } while (!used.add(key));
+            if (i < n) {
+                keys[i] = key;
+            } else {
+                others[i - n] = key;
+            }
+        }
+
+        //1.实际误判率
+        for (double fpp : new double[]{0.1, 0.01, 0.001}) {
+            MyBloomFilter<Integer> filter = new MyBloomFilter<>(n, fpp);
+            for (Integer key : keys) {
+                filter.put(key);
+            }
+            int falsePositives = 0;
+            for (Integer other : others) {
+                if (filter.mightContain(other)) {
+                    falsePositives++;
+                }
+            }
+            System.out.printf("fpp %.3f: k = %d, bits/key = %.2f, fill %.3f, expectedFpp %.5f, measured %.5f%n",
+                    fpp, filter.hashFunctions(), (double) filter.bitSize() / n, filter.fillRatio(),
+                    filter.expectedFpp(), (double) falsePositives / n);
+        }
+
+        //2.序列化
+        MyBloomFilter<Integer> filter = new MyBloomFilter<>(n, 0.01);
+        for (Integer key : keys) {
+            filter.put(key);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        filter.writeTo(out);
+        MyBloomFilter<Integer> copy = MyBloomFilter.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        boolean same = true;
+        for (int i = 0; i < n; i++) {
+            same &= copy.mightContain(keys[i]) && copy.mightContain(others[i]) == filter.mightContain(others[i]);
+        }
+        System.out.println("serialized " + out.size() + " bytes, same answers after readFrom = " + same);
+
+        //3.放在MyHashMap前面：全部不存在、90%不存在两种查找
+        MyHashMap<Integer, Integer> plain = new MyHashMap<>();
+        MyHashMap<Integer, Integer> fronted = new MyHashMap<>(false, 0.01);
+        for (int i = 0; i < n; i++) {
+            plain.put(keys[i], i);
+            fronted.put(keys[i], i);
+        }
+        Integer[] mixed = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            mixed[i] = i % 10 == 0 ? keys[random.nextInt(n)] : others[i];
+        }
+        for (int round = 1; round <= 5; round++) {
+            System.out.printf("round %d: containsKey(100%% miss) without filter %6.1f ns/op, with filter %6.1f ns/op; "
+                            + "containsKey(90%% miss) without filter %6.1f ns/op, with filter %6.1f ns/op%n", round,
+                    containsNanos(plain, others), containsNanos(fronted, others),
+                    containsNanos(plain, mixed), containsNanos(fronted, mixed));
+        }
+        System.out.printf("map filter: fpp %.3f, fill %.3f, expectedFpp %.5f%n",
+                fronted.bloomFilter().fpp(), fronted.bloomFilter().fillRatio(), fronted.bloomFilter().expectedFpp());
+    }
+
+    private static double containsNanos(MyHashMap<Integer, Integer> map, Integer[] lookups) {
+        int found = 0;
+        long start = System.nanoTime();
+        for (Integer key : lookups) {
+            if (map.containsKey(key)) {
+                found++;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        if (found < 0) {
+            System.out.println("unreachable");
+        }
+        return (double) nanos / lookups.length;
+    }
+}
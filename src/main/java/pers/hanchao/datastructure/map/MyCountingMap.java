@@ -0,0 +1,345 @@
+package pers.hanchao.datastructure.map;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * <p>计数器散列表：key -> long计数，代替Map<K, Integer>，累加时不装箱</P>
+ * 1.与MyOpenHashMap相同的开放地址法：keys[]存放key，counts[]是long数组，下标 = mix(hashCode) & (capacity - 1)，
+ *   keys[i] == null表示空槽位，所以不支持null键；没有Node、Entry和Integer对象
+ * 2.count(key)：线性探测，不存在返回0；复杂度O(1)
+ * 3.increment(key,delta)：原地累加，不存在时视为0并插入，返回累加后的计数；复杂度O(1)。
+ *   Map<K, Integer>.merge(key, 1, Integer::sum)每次累加都会创建一个Integer(-128~127之外)
+ * 4.set(key,count)：覆盖或插入，返回旧计数；remove(key)：后移删除，返回旧计数；复杂度O(1)
+ * 5.计数累加到0时保留key，与MyIntIntHashMap.addTo一致，需要时调用remove(key)
+ * 6.total()：所有计数之和，增删改时同步维护；复杂度O(1)
+ * 7.遍历不创建对象：forEach(ObjLongConsumer)直接遍历数组；cursor()只创建一个游标，reset()后可以重复使用
+ *
+ * @author hanchao
+ */
+public class MyCountingMap<K> {
+
+    /**
+     * 默认容量
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * 默认负载因子
+     */
+    private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * 键数组，null表示空槽位
+     */
+    private Object[] keys;
+
+    /**
+     * 计数数组，与键数组下标一一对应
+     */
+    private long[] counts;
+
+    /**
+     * 负载因子
+     */
+    private final float loadFactor;
+
+    /**
+     * 扩容阈值
+     */
+    private int threshold;
+
+    /**
+     * 实际key个数
+     */
+    private int size;
+
+    /**
+     * 所有计数之和
+     */
+    private long total;
+
+    public MyCountingMap() {
+        this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 预估key数量构造函数
+     */
+    public MyCountingMap(int expectedSize) {
+        this(expectedSize, DEFAULT_LOAD_FACTOR);
+    }
+
+    public MyCountingMap(int expectedSize, float loadFactor) {
+        int capacity = HashUtil.capacityFor(expectedSize, loadFactor);
+        this.loadFactor = loadFactor;
+        allocate(Math.max(capacity, 2));
+    }
+
+    /**
+     * 分配数组，并计算阈值
+     */
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        counts = new long[capacity];
+        threshold = Math.min(capacity - 1, (int) (capacity * loadFactor));
+    }
+
+    /**
+     * 线性探测查找key所在下标，不存在返回-1
+     */
+    private int indexOf(Object key) {
+        if (key == null) {
+            return -1;
+        }
+        int i = HashUtil.probe(keys, key);
+        return i >= 0 ? i : -1;
+    }
+
+    /**
+     * 线性探测查找key所在下标，不存在则插入计数为0的key；插入后可能扩容，所以返回的是扩容后的下标
+     */
+    private int insertIndexOf(K key) {
+        Objects.requireNonNull(key, "MyCountingMap does not permit null keys !");
+        int i = HashUtil.probe(keys, key);
+        if (i >= 0) {
+            return i;
+        }
+        i = -i - 1;
+        keys[i] = key;
+        counts[i] = 0;
+        //超出阈值则二倍扩容，key换了位置需要重新查找
+        if (++size >= threshold && resize(keys.length << 1)) {
+            return indexOf(key);
+        }
+        return i;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * key的计数，不存在返回0
+     */
+    public long count(Object key) {
+        int i = indexOf(key);
+        return i < 0 ? 0 : counts[i];
+    }
+
+    /**
+     * 计数加1，返回累加后的计数
+     */
+    public long increment(K key) {
+        return increment(key, 1);
+    }
+
+    /**
+     * 原地累加，不存在时视为0，返回累加后的计数
+     */
+    public long increment(K key, long delta) {
+        int i = insertIndexOf(key);
+        total += delta;
+        return counts[i] += delta;
+    }
+
+    /**
+     * 覆盖计数，返回旧计数(不存在返回0)
+     */
+    public long set(K key, long count) {
+        int i = insertIndexOf(key);
+        long old = counts[i];
+        counts[i] = count;
+        total += count - old;
+        return old;
+    }
+
+    /**
+     * 删除key，返回旧计数(不存在返回0)
+     */
+    public long remove(Object key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return 0;
+        }
+        long old = counts[i];
+        total -= old;
+        size--;
+        shiftKeys(i);
+        return old;
+    }
+
+    /**
+     * 所有计数之和
+     */
+    public long total() {
+        return total;
+    }
+
+    /**
+     * 扩容：所有元素按新掩码重新放置；已经是最大容量时返回false
+     */
+    private boolean resize(int newCapacity) {
+        if (keys.length >= HashUtil.MAXIMUM_CAPACITY) {
+            if (size >= keys.length - 1) {
+                throw new IllegalStateException("MyCountingMap is full !");
+            }
+            return false;
+        }
+        Object[] oldKeys = keys;
+        long[] oldCounts = counts;
+        allocate(newCapacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            Object k = oldKeys[j];
+            if (k != null) {
+                int i = HashUtil.freeSlot(keys, k);
+                keys[i] = k;
+                counts[i] = oldCounts[j];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 后移删除：把后面探测链上可以前移的元素逐个前移补位，最后空出的槽位置空
+     */
+    private void shiftKeys(int pos) {
+        for (int next; (next = HashUtil.shiftSource(keys, pos)) >= 0; pos = next) {
+            keys[pos] = keys[next];
+            counts[pos] = counts[next];
+        }
+        keys[pos] = null;
+        counts[pos] = 0;
+    }
+
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, null);
+            Arrays.fill(counts, 0);
+            size = 0;
+            total = 0;
+        }
+    }
+
+    /**
+     * 遍历所有key和计数，不创建对象；遍历期间不能增删key
+     */
+    public void forEach(ObjLongConsumer<? super K> action) {
+        Object[] ks = keys;
+        long[] cs = counts;
+        for (int i = ks.length - 1; i >= 0; i--) {
+            if (ks[i] != null) {
+                action.accept((K) ks[i], cs[i]);
+            }
+        }
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * 游标：遍历期间可以setCount，不能增删key
+     */
+    public final class Cursor {
+        private int index = keys.length;
+
+        /**
+         * 移动到下一个元素，没有则返回false
+         */
+        public boolean advance() {
+            while (--index >= 0) {
+                if (keys[index] != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public K key() {
+            return (K) keys[index];
+        }
+
+        public long count() {
+            return counts[index];
+        }
+
+        /**
+         * 修改当前key的计数
+         */
+        public void setCount(long count) {
+            total += count - counts[index];
+            counts[index] = count;
+        }
+
+        /**
+         * 回到起点，重复使用同一个游标
+         */
+        public Cursor reset() {
+            index = keys.length;
+            return this;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        Cursor cursor = cursor();
+        while (cursor.advance()) {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(cursor.key()).append('=').append(cursor.count());
+        }
+        return sb.append('}').toString();
+    }
+
+    public static void main(String[] args) {
+        MyCountingMap<String> words = new MyCountingMap<>();
+        String text = "to be or not to be that is the question to be";
+        for (String word : text.split(" ")) {
+            words.increment(word);
+        }
+        System.out.println(words + " size = " + words.size() + " total = " + words.total());
+        System.out.println(words.count("to") + " " + words.count("be") + " " + words.count("java"));
+        System.out.println(words.increment("be", -3) + " " + words.containsKey("be"));
+        System.out.println(words.remove("to") + " " + words.containsKey("to") + " total = " + words.total());
+
+        //累加计数不创建Integer：与HashMap<Long, Integer>.merge对比
+        int n = 1 << 20;
+        Long[] keys = new Long[1 << 12];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (long) i * 1_000_003;
+        }
+        for (int round = 0; round < 3; round++) {
+            MyCountingMap<Long> counting = new MyCountingMap<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                counting.increment(keys[i & (keys.length - 1)], i & 1023);
+            }
+            long countingNanos = System.nanoTime() - start;
+
+            Map<Long, Integer> boxed = new HashMap<>();
+            start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                boxed.merge(keys[i & (keys.length - 1)], i & 1023, Integer::sum);
+            }
+            long boxedNanos = System.nanoTime() - start;
+            long[] sum = new long[1];
+            counting.forEach((key, count) -> sum[0] += count);
+            System.out.printf("round %d: MyCountingMap.increment %.1f ns/op, HashMap.merge %.1f ns/op, total %d = %d%n",
+                    round, (double) countingNanos / n, (double) boxedNanos / n, sum[0], counting.total());
+        }
+    }
+}
@@ -0,0 +1,970 @@
+package pers.hanchao.datastructure.map;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * <p>布谷鸟散列(cuckoo hashing)：分桶 + 两个散列函数，查找最坏情况O(1)</P>
+ * 1.数组分为capacity / 4个桶，每个桶4个槽位；hashes[]、keys[]、values[]三个平行数组，槽位下标 = 桶 * 4 + j
+ * 2.每个key有两个候选桶：b1 = hash & mask，b2 = (b1 ^ (mix(hash + 常量) | 1)) & mask，hash = mix(hashCode)；由一个桶和hash可以算出另一个桶
+ * 3.get(key)：只检查b1、b2两个桶的8个槽位(先比较hashes[]，一个桶的hashes占16字节，最多读两个缓存行)，stash不为空时再检查stash；最坏O(1)
+ * 4.put(key,value)：两个桶都满时，广度优先搜索一条"踢出路径"(最多搜索MAX_SEARCH个桶)，从路径末端的空槽位开始逐个向后挪动元素，
+ *   最后把新元素放入空出的槽位；搜索失败则放入stash(STASH_SIZE个)，stash满或者负载超过MAX_LOAD时二倍扩容；
+ *   负载低于一半时搜索仍然失败，说明大量key的hashCode相同，扩容没有用，这时stash加倍，查找退化为顺序查找stash
+ * 5.remove(key)：直接清空槽位，不需要墓碑和后移
+ * 6.并发模式(concurrent = true)：写操作由一把ReentrantLock串行化，每次修改槽位时持有所在桶对应条带的StampedLock写锁；
+ *   get先乐观读(版本号)，读取两个桶(stash不为空时还有stash)后校验版本号，校验失败重试，多次失败或者hash相同但key不同时改为加读锁；
+ *   挪动元素时先写入目标槽位再清空原槽位，并且两个桶同时加锁，读线程不会漏掉正在被挪动的key
+ * 7.keySet()、values()、entrySet()：视图；并发模式下遍历是弱一致的；不支持null键
+ *
+ * @author hanchao
+ */
+public class MyCuckooHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V> {
+
+    /**
+     * 每个桶的槽位数
+     */
+    private static final int SLOTS = 4;
+
+    /**
+     * stash容量
+     */
+    private static final int STASH_SIZE = 4;
+
+    /**
+     * 踢出路径最多搜索的桶数
+     */
+    private static final int MAX_SEARCH = 512;
+
+    /**
+     * 负载超过MAX_LOAD时扩容；4槽位的桶通常可以达到95%以上
+     */
+    private static final float MAX_LOAD = 0.9f;
+
+    /**
+     * 乐观读最多重试次数
+     */
+    private static final int MAX_OPTIMISTIC = 4;
+
+    /**
+     * 版本号条带数的上限
+     */
+    private static final int MAX_STRIPES = 1024;
+
+    /**
+     * 找不到时lookup的返回值
+     */
+    private static final Object NOT_FOUND = new Object();
+
+    /**
+     * 一次扩容的全部数组：读线程只读取一次table引用，扩容时整体替换
+     */
+    static final class Table {
+        final int[] hashes;
+        final Object[] keys;
+        final Object[] values;
+        /**
+         * 桶数 - 1
+         */
+        final int mask;
+        int[] stashHashes = new int[STASH_SIZE];
+        Object[] stashKeys = new Object[STASH_SIZE];
+        Object[] stashValues = new Object[STASH_SIZE];
+        int stashSize;
+        /**
+         * 并发模式下每个条带一个版本号(StampedLock)，非并发模式为null
+         */
+        final StampedLock[] stripes;
+        final StampedLock stashLock;
+
+        Table(int buckets, boolean concurrent) {
+            hashes = new int[buckets * SLOTS];
+            keys = new Object[buckets * SLOTS];
+            values = new Object[buckets * SLOTS];
+            mask = buckets - 1;
+            if (concurrent) {
+                stripes = new StampedLock[Math.min(buckets, MAX_STRIPES)];
+                for (int i = 0; i < stripes.length; i++) {
+                    stripes[i] = new StampedLock();
+                }
+                stashLock = new StampedLock();
+            } else {
+                stripes = null;
+                stashLock = null;
+            }
+        }
+
+        StampedLock stripe(int bucket) {
+            return stripes[bucket & (stripes.length - 1)];
+        }
+
+        /**
+         * 放入stash，已满时加倍
+         */
+        void addStash(int hash, Object key, Object value) {
+            int i = stashSize;
+            if (i == stashKeys.length) {
+                stashHashes = Arrays.copyOf(stashHashes, i << 1);
+                stashKeys = Arrays.copyOf(stashKeys, i << 1);
+                stashValues = Arrays.copyOf(stashValues, i << 1);
+            }
+            stashHashes[i] = hash;
+            stashKeys[i] = key;
+            stashValues[i] = value;
+            stashSize = i + 1;
+        }
+    }
+
+    /**
+     * 写线程修改的计数：放在单独的对象中，避免和读线程频繁读取的table字段落在同一个缓存行
+     */
+    static final class Counts {
+        volatile int size;
+        int modCount;
+        int resizeCount;
+    }
+
+    private volatile Table table;
+
+    private final Counts counts = new Counts();
+
+    private final boolean concurrent;
+
+    /**
+     * 并发模式下串行化写操作
+     */
+    private final ReentrantLock writeLock;
+
+    /**
+     * 踢出路径搜索用的队列：桶、父节点、从父节点桶中挪过来的槽位；只有写线程使用
+     */
+    private final int[] searchBucket = new int[MAX_SEARCH];
+    private final int[] searchParent = new int[MAX_SEARCH];
+    private final int[] searchVia = new int[MAX_SEARCH];
+
+    private Set<K> keySetView;
+
+    private Collection<V> valuesView;
+
+    private Set<Entry<K, V>> entrySetView;
+
+    public MyCuckooHashMap() {
+        this(16, false);
+    }
+
+    /**
+     * @param expectedSize 预估元素数量
+     * @param concurrent   是否启用并发模式
+     */
+    public MyCuckooHashMap(int expectedSize, boolean concurrent) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("The expected size must not be negative !");
+        }
+        this.concurrent = concurrent;
+        this.writeLock = concurrent ? new ReentrantLock() : null;
+        int buckets = HashUtil.tableSizeFor((int) Math.min(HashUtil.MAXIMUM_CAPACITY / SLOTS,
+                (long) Math.ceil(expectedSize / (double) (SLOTS * MAX_LOAD)) + 1));
+        table = new Table(Math.max(2, buckets), concurrent);
+    }
+
+    private static int hash(Object key) {
+        return HashUtil.mix(key.hashCode());
+    }
+
+    /**
+     * 另一个候选桶：异或一个奇数，保证和当前桶不同，并且对两个桶互为逆运算
+     */
+    private static int altBucket(int bucket, int hash, int mask) {
+        return (bucket ^ (HashUtil.mix(hash + 0x9e3779b9) | 1)) & mask;
+    }
+
+    /**
+     * 在两个候选桶和stash中查找key所在槽位：非负数为桶中的槽位，-1 - i为stash中的第i个，找不到返回Integer.MIN_VALUE
+     */
+    private static int find(Table t, Object key, int hash, int b1, int b2) {
+        int[] hashes = t.hashes;
+        Object[] keys = t.keys;
+        for (int i = b1 * SLOTS, end = i + SLOTS; i < end; i++) {
+            Object k;
+            if (hashes[i] == hash && (k = keys[i]) != null && (k == key || k.equals(key))) {
+                return i;
+            }
+        }
+        for (int i = b2 * SLOTS, end = i + SLOTS; i < end; i++) {
+            Object k;
+            if (hashes[i] == hash && (k = keys[i]) != null && (k == key || k.equals(key))) {
+                return i;
+            }
+        }
+        for (int i = 0; i < t.stashSize; i++) {
+            Object k = t.stashKeys[i];
+            if (t.stashHashes[i] == hash && k != null && (k == key || k.equals(key))) {
+                return -1 - i;
+            }
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    @Override
+    public int size() {
+        return counts.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return counts.size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && lookup(key, true) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        if (key == null) {
+            return null;
+        }
+        Object value = lookup(key, false);
+        return value == NOT_FOUND ? null : (V) value;
+    }
+
+    /**
+     * 查找：非并发模式直接查找；并发模式先乐观读，失败再加读锁
+     *
+     * @param presence 为true时只判断是否存在，找到返回非null，找不到返回null
+     */
+    private Object lookup(Object key, boolean presence) {
+        int hash = hash(key);
+        if (!concurrent) {
+            Table t = table;
+            int b1 = hash & t.mask;
+            int index = find(t, key, hash, b1, altBucket(b1, hash, t.mask));
+            if (index == Integer.MIN_VALUE) {
+                return presence ? null : NOT_FOUND;
+            }
+            return presence ? Boolean.TRUE : index >= 0 ? t.values[index] : t.stashValues[-1 - index];
+        }
+        for (int attempt = 0; attempt < MAX_OPTIMISTIC; attempt++) {
+            Table t = table;
+            int b1 = hash & t.mask;
+            int b2 = altBucket(b1, hash, t.mask);
+            StampedLock l1 = t.stripe(b1), l2 = t.stripe(b2);
+            long s1 = l1.tryOptimisticRead(), s2 = l2.tryOptimisticRead();
+            if (s1 == 0 || s2 == 0) {
+                Thread.yield();
+                continue;
+            }
+            //1.乐观读：只比较hash，读出第一个hash相同的槽位的key和value，不调用equals(数据可能不一致)
+            Object k = null, v = null;
+            boolean found = false;
+            int[] hashes = t.hashes;
+            for (int r = 0; r < 2 * SLOTS && !found; r++) {
+                int i = (r < SLOTS ? b1 : b2) * SLOTS + (r & (SLOTS - 1));
+                if (hashes[i] == hash) {
+                    k = t.keys[i];
+                    v = t.values[i];
+                    found = true;
+                }
+            }
+            //stash为空时不需要校验stash：并发写入stash的只可能是新增的key
+            long s3 = 0;
+            if (!found && t.stashSize > 0) {
+                if ((s3 = t.stashLock.tryOptimisticRead()) == 0) {
+                    continue;
+                }
+                int[] stashHashes = t.stashHashes;
+                Object[] stashKeys = t.stashKeys, stashValues = t.stashValues;
+                int stashSize = Math.min(t.stashSize, Math.min(stashHashes.length, Math.min(stashKeys.length, stashValues.length)));
+                for (int i = 0; i < stashSize && !found; i++) {
+                    if (stashHashes[i] == hash) {
+                        k = stashKeys[i];
+                        v = stashValues[i];
+                        found = true;
+                    }
+                }
+            }
+            //2.校验版本号，通过后读到的数据是一致的快照
+            if (!l1.validate(s1) || !l2.validate(s2) || (s3 != 0 && !t.stashLock.validate(s3)) || table != t) {
+                continue;
+            }
+            if (!found) {
+                return presence ? null : NOT_FOUND;
+            }
+            //3.比较key；hash相同但key不同(概率约为2^-32)时加读锁逐个比较
+            if (k != null && (k == key || k.equals(key))) {
+                return presence ? Boolean.TRUE : v;
+            }
+            break;
+        }
+        return lockedLookup(key, hash, presence);
+    }
+
+    /**
+     * 加读锁查找：按条带下标从小到大加锁，stash锁最后加，和写线程的顺序一致
+     */
+    private Object lockedLookup(Object key, int hash, boolean presence) {
+        for (; ; ) {
+            Table t = table;
+            int b1 = hash & t.mask;
+            int b2 = altBucket(b1, hash, t.mask);
+            int a = b1 & (t.stripes.length - 1), c = b2 & (t.stripes.length - 1);
+            StampedLock first = t.stripes[Math.min(a, c)];
+            StampedLock second = t.stripes[Math.max(a, c)];
+            long s1 = first.readLock();
+            long s2 = second != first ? second.readLock() : 0;
+            long s3 = t.stashLock.readLock();
+            try {
+                if (table != t) {
+                    continue;
+                }
+                int index = find(t, key, hash, b1, b2);
+                if (index == Integer.MIN_VALUE) {
+                    return presence ? null : NOT_FOUND;
+                }
+                return presence ? Boolean.TRUE : index >= 0 ? t.values[index] : t.stashValues[-1 - index];
+            } finally {
+                t.stashLock.unlockRead(s3);
+                if (second != first) {
+                    second.unlockRead(s2);
+                }
+                first.unlockRead(s1);
+            }
+        }
+    }
+
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(key, "MyCuckooHashMap does not permit null keys !");
+        lockWrite();
+        try {
+            int hash = hash(key);
+            Table t = table;
+            int b1 = hash & t.mask;
+            int b2 = altBucket(b1, hash, t.mask);
+            //1.已存在则覆盖
+            int index = find(t, key, hash, b1, b2);
+            if (index != Integer.MIN_VALUE) {
+                return writeValue(t, index, value);
+            }
+            //2.插入，超过负载则扩容
+            insert(key, value, hash);
+            counts.size++;
+            counts.modCount++;
+            if (counts.size > table.hashes.length * MAX_LOAD) {
+                resize(table.mask + 1 << 1);
+            }
+            return null;
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    /**
+     * key存在时覆盖value，不存在时什么都不做；不修改size、modCount
+     */
+    private void replaceIfPresent(Object key, V value) {
+        lockWrite();
+        try {
+            int hash = hash(key);
+            Table t = table;
+            int b1 = hash & t.mask;
+            int index = find(t, key, hash, b1, altBucket(b1, hash, t.mask));
+            if (index != Integer.MIN_VALUE) {
+                writeValue(t, index, value);
+            }
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    /**
+     * 插入新key：空槽位 -> 踢出路径 -> stash -> 扩容后重试；负载低于一半时stash加倍而不是扩容
+     */
+    private void insert(Object key, Object value, int hash) {
+        for (; ; ) {
+            Table t = table;
+            int b1 = hash & t.mask;
+            int b2 = altBucket(b1, hash, t.mask);
+            int slot = freeSlot(t, b1);
+            if (slot < 0) {
+                slot = freeSlot(t, b2);
+            }
+            if (slot < 0) {
+                slot = cuckoo(t, b1, b2);
+            }
+            if (slot >= 0) {
+                writeSlot(t, slot, hash, key, value);
+                return;
+            }
+            if (t.stashSize < t.stashKeys.length || counts.size < t.keys.length / 2) {
+                long stamp = lockStash(t);
+                try {
+                    t.addStash(hash, key, value);
+                } finally {
+                    unlockStash(t, stamp);
+                }
+                return;
+            }
+            resize(t.mask + 1 << 1);
+        }
+    }
+
+    /**
+     * 桶中的空槽位，没有返回-1
+     */
+    private static int freeSlot(Table t, int bucket) {
+        for (int i = bucket * SLOTS, end = i + SLOTS; i < end; i++) {
+            if (t.keys[i] == null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 广度优先搜索踢出路径，找到后从末端开始挪动元素，返回b1或b2中空出的槽位；搜索失败返回-1
+     */
+    private int cuckoo(Table t, int b1, int b2) {
+        int tail = 0;
+        searchBucket[tail] = b1;
+        searchParent[tail++] = -1;
+        searchBucket[tail] = b2;
+        searchParent[tail++] = -1;
+        for (int head = 0; head < tail; head++) {
+            int bucket = searchBucket[head];
+            for (int i = bucket * SLOTS, end = i + SLOTS; i < end; i++) {
+                if (tail == MAX_SEARCH) {
+                    return -1;
+                }
+                int alt = altBucket(bucket, t.hashes[i], t.mask);
+                //路径上不能出现重复的桶，否则挪动时槽位里已经不是原来的元素
+                if (onPath(head, alt)) {
+                    continue;
+                }
+                searchBucket[tail] = alt;
+                searchParent[tail] = head;
+                searchVia[tail] = i;
+                int free = freeSlot(t, alt);
+                if (free >= 0) {
+                    //从末端开始，把父节点桶中的元素挪到子节点桶的空槽位
+                    for (int node = tail; searchParent[node] >= 0; node = searchParent[node]) {
+                        int from = searchVia[node];
+                        moveSlot(t, from, free);
+                        free = from;
+                    }
+                    return free;
+                }
+                tail++;
+            }
+        }
+        return -1;
+    }
+
+    private boolean onPath(int node, int bucket) {
+        for (; node >= 0; node = searchParent[node]) {
+            if (searchBucket[node] == bucket) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 扩容：所有元素(包括stash)重新放入新数组；新数组发布之前读线程继续读旧数组
+     */
+    private void resize(int newBuckets) {
+        if (newBuckets > HashUtil.MAXIMUM_CAPACITY / SLOTS) {
+            throw new IllegalStateException("MyCuckooHashMap is full !");
+        }
+        Table old = table;
+        Table t = new Table(newBuckets, concurrent);
+        //新数组还没有发布，填充时不需要加锁
+        fill(t, old);
+        counts.resizeCount++;
+        table = t;
+    }
+
+    /**
+     * 把旧数组的元素放入新数组
+     */
+    private void fill(Table t, Table old) {
+        for (int i = 0; i < old.keys.length; i++) {
+            if (old.keys[i] != null) {
+                place(t, old.hashes[i], old.keys[i], old.values[i]);
+            }
+        }
+        for (int i = 0; i < old.stashSize; i++) {
+            place(t, old.stashHashes[i], old.stashKeys[i], old.stashValues[i]);
+        }
+    }
+
+    /**
+     * 向未发布的新数组放入元素，放不下时放入stash
+     */
+    private void place(Table t, int hash, Object key, Object value) {
+        int b1 = hash & t.mask;
+        int b2 = altBucket(b1, hash, t.mask);
+        int slot = freeSlot(t, b1);
+        if (slot < 0) {
+            slot = freeSlot(t, b2);
+        }
+        if (slot < 0) {
+            slot = cuckoo(t, b1, b2);
+        }
+        if (slot >= 0) {
+            t.hashes[slot] = hash;
+            t.keys[slot] = key;
+            t.values[slot] = value;
+        } else {
+            t.addStash(hash, key, value);
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        if (key == null) {
+            return null;
+        }
+        lockWrite();
+        try {
+            int hash = hash(key);
+            Table t = table;
+            int b1 = hash & t.mask;
+            int index = find(t, key, hash, b1, altBucket(b1, hash, t.mask));
+            if (index == Integer.MIN_VALUE) {
+                return null;
+            }
+            V old;
+            if (index >= 0) {
+                old = (V) t.values[index];
+                writeSlot(t, index, 0, null, null);
+            } else {
+                old = (V) removeStash(t, -1 - index);
+            }
+            counts.size--;
+            counts.modCount++;
+            return old;
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    /**
+     * 删除stash中的第i个元素，最后一个元素补位
+     */
+    private Object removeStash(Table t, int i) {
+        long stamp = lockStash(t);
+        try {
+            Object old = t.stashValues[i];
+            int last = --t.stashSize;
+            t.stashHashes[i] = t.stashHashes[last];
+            t.stashKeys[i] = t.stashKeys[last];
+            t.stashValues[i] = t.stashValues[last];
+            t.stashKeys[last] = null;
+            t.stashValues[last] = null;
+            return old;
+        } finally {
+            unlockStash(t, stamp);
+        }
+    }
+
+    @Override
+    public void clear() {
+        lockWrite();
+        try {
+            Table t = table;
+            table = new Table(t.mask + 1, concurrent);
+            counts.size = 0;
+            counts.modCount++;
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    private void lockWrite() {
+        if (concurrent) {
+            writeLock.lock();
+        }
+    }
+
+    private void unlockWrite() {
+        if (concurrent) {
+            writeLock.unlock();
+        }
+    }
+
+    private long lockStash(Table t) {
+        return t.stashLock == null || table != t ? 0 : t.stashLock.writeLock();
+    }
+
+    private void unlockStash(Table t, long stamp) {
+        if (stamp != 0) {
+            t.stashLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 写入槽位：并发模式下持有条带写锁，版本号变化使正在进行的乐观读失败
+     */
+    private void writeSlot(Table t, int slot, int hash, Object key, Object value) {
+        long stamp = t.stripes == null || table != t ? 0 : t.stripe(slot / SLOTS).writeLock();
+        try {
+            t.hashes[slot] = hash;
+            t.keys[slot] = key;
+            t.values[slot] = value;
+        } finally {
+            if (stamp != 0) {
+                t.stripe(slot / SLOTS).unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * 覆盖value，返回旧值
+     */
+    private V writeValue(Table t, int index, V value) {
+        if (index < 0) {
+            long stamp = lockStash(t);
+            try {
+                V old = (V) t.stashValues[-1 - index];
+                t.stashValues[-1 - index] = value;
+                return old;
+            } finally {
+                unlockStash(t, stamp);
+            }
+        }
+        V old = (V) t.values[index];
+        writeSlot(t, index, t.hashes[index], t.keys[index], value);
+        return old;
+    }
+
+    /**
+     * 把from槽位的元素挪到空槽位to：并发模式下两个桶的条带同时加写锁
+     */
+    private void moveSlot(Table t, int from, int to) {
+        StampedLock first = null, second = null;
+        long s1 = 0, s2 = 0;
+        if (t.stripes != null && table == t) {
+            int a = (from / SLOTS) & (t.stripes.length - 1), b = (to / SLOTS) & (t.stripes.length - 1);
+            first = t.stripes[Math.min(a, b)];
+            second = a == b ? null : t.stripes[Math.max(a, b)];
+            s1 = first.writeLock();
+            if (second != null) {
+                s2 = second.writeLock();
+            }
+        }
+        try {
+            t.hashes[to] = t.hashes[from];
+            t.keys[to] = t.keys[from];
+            t.values[to] = t.values[from];
+            t.keys[from] = null;
+            t.values[from] = null;
+            t.hashes[from] = 0;
+        } finally {
+            if (second != null) {
+                second.unlockWrite(s2);
+            }
+            if (first != null) {
+                first.unlockWrite(s1);
+            }
+        }
+    }
+
+    /**
+     * 实际负载 = size / 槽位数
+     */
+    public double load() {
+        return (double) counts.size / table.hashes.length;
+    }
+
+    /**
+     * stash中的元素个数
+     */
+    public int stashSize() {
+        return table.stashSize;
+    }
+
+    public int resizeCount() {
+        return counts.resizeCount;
+    }
+
+    @Override
+    public Set<K> keySet() {
+        if (keySetView == null) {
+            keySetView = new KeySet();
+        }
+        return keySetView;
+    }
+
+    @Override
+    public Collection<V> values() {
+        if (valuesView == null) {
+            valuesView = new Values();
+        }
+        return valuesView;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if (entrySetView == null) {
+            entrySetView = new EntrySet();
+        }
+        return entrySetView;
+    }
+
+    /**
+     * 遍历创建迭代器时的数组：先遍历槽位，再遍历stash(位置 = 槽位数 + i)；删除槽位不会移动其他元素
+     */
+    private abstract class HashIterator<T> implements Iterator<T> {
+        final Table t = table;
+        /**
+         * 下一个元素的位置，-1表示没有
+         */
+        int next;
+        int last = -1;
+        int expectedModCount = counts.modCount;
+
+        HashIterator() {
+            next = advance(0);
+        }
+
+        private int advance(int from) {
+            for (int i = from; i < t.keys.length; i++) {
+                if (t.keys[i] != null) {
+                    return i;
+                }
+            }
+            int stash = Math.max(from, t.keys.length) - t.keys.length;
+            return stash < t.stashSize ? t.keys.length + stash : -1;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next >= 0;
+        }
+
+        int nextIndex() {
+            if (!concurrent && counts.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next < 0) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = advance(next + 1);
+            return last;
+        }
+
+        K keyAt(int pos) {
+            return (K) (pos < t.keys.length ? t.keys[pos] : t.stashKeys[pos - t.keys.length]);
+        }
+
+        V valueAt(int pos) {
+            return (V) (pos < t.values.length ? t.values[pos] : t.stashValues[pos - t.values.length]);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            if (!concurrent && counts.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            K key = keyAt(last);
+            //stash中删除时最后一个元素补位到当前位置，需要重新检查这个位置
+            if (last >= t.keys.length && next >= 0) {
+                next = last;
+            }
+            MyCuckooHashMap.this.remove(key);
+            if (next >= t.keys.length && next - t.keys.length >= t.stashSize) {
+                next = -1;
+            }
+            expectedModCount = counts.modCount;
+            last = -1;
+        }
+    }
+
+    private final class KeyIterator extends HashIterator<K> {
+        @Override
+        public K next() {
+            return keyAt(nextIndex());
+        }
+    }
+
+    private final class ValueIterator extends HashIterator<V> {
+        @Override
+        public V next() {
+            return valueAt(nextIndex());
+        }
+    }
+
+    private final class EntryIterator extends HashIterator<Entry<K, V>> {
+        @Override
+        public Entry<K, V> next() {
+            int pos = nextIndex();
+            return new MapEntry(keyAt(pos), valueAt(pos));
+        }
+    }
+
+    /**
+     * 键值对，setValue时key还在map中则写回map，已被删除则只修改这个键值对，不会重新插入
+     */
+    private final class MapEntry extends SimpleEntry<K, V> {
+        MapEntry(K key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(V value) {
+            replaceIfPresent(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+
+    private final class KeySet extends AbstractSet<K> {
+        @Override
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+
+        @Override
+        public int size() {
+            return counts.size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!containsKey(o)) {
+                return false;
+            }
+            MyCuckooHashMap.this.remove(o);
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            MyCuckooHashMap.this.clear();
+        }
+    }
+
+    private final class Values extends AbstractCollection<V> {
+        @Override
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        @Override
+        public int size() {
+            return counts.size;
+        }
+
+        @Override
+        public void clear() {
+            MyCuckooHashMap.this.clear();
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<K, V>> {
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return counts.size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            Object key = e.getKey();
+            return key != null && containsKey(key) && Objects.equals(get(key), e.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!contains(o)) {
+                return false;
+            }
+            MyCuckooHashMap.this.remove(((Entry<?, ?>) o).getKey());
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            MyCuckooHashMap.this.clear();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        MyCuckooHashMap<String, String> map = new MyCuckooHashMap<>();
+        map.put("code", "1");
+        map.put("reason", "param is not right");
+        map.put("data", null);
+        System.out.println(map.get("reason") + " " + map.containsKey("data") + " " + map.get("java"));
+        System.out.println(map.remove("code") + " " + map.entrySet());
+
+        //高负载下查找仍然只检查两个桶
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Integer[] keys = new Integer[n];
+        Random random = new Random(42);
+        for (int i = 0; i < n; i++) {
+            keys[i] = random.nextInt();
+        }
+        MyCuckooHashMap<Integer, Integer> cuckoo = new MyCuckooHashMap<>(n, false);
+        MyOpenHashMap<Integer, Integer> open = new MyOpenHashMap<>(n);
+        for (Integer key : keys) {
+            cuckoo.put(key, key);
+            open.put(key, key);
+        }
+        System.out.printf("size %d, load %.3f, stash %d, resizes %d%n",
+                cuckoo.size(), cuckoo.load(), cuckoo.stashSize(), cuckoo.resizeCount());
+        for (int round = 0; round < 3; round++) {
+            System.out.printf("get: cuckoo %.1f ns/op, open %.1f ns/op%n", timeGets(cuckoo, keys), timeGets(open, keys));
+        }
+
+        //并发模式：一个写线程不断增删，读线程乐观读
+        MyCuckooHashMap<Integer, Integer> shared = new MyCuckooHashMap<>(n, true);
+        for (Integer key : keys) {
+            shared.put(key, key);
+        }
+        Thread writer = new Thread(() -> {
+            Random r = new Random(7);
+            while (!Thread.currentThread().isInterrupted()) {
+                Integer key = r.nextInt() | 1;
+                if (shared.put(key, key) == null) {
+                    shared.remove(key);
+                }
+            }
+        });
+        writer.start();
+        System.out.printf("concurrent get with a writer: %.1f ns/op%n", timeGets(shared, keys));
+        writer.interrupt();
+        writer.join();
+    }
+
+    private static double timeGets(Map<Integer, Integer> map, Integer[] keys) {
+        long sum = 0;
+        long begin = System.nanoTime();
+        for (Integer key : keys) {
+            sum += map.get(key);
+        }
+        long elapsed = System.nanoTime() - begin;
+        if (sum == 42) {
+            System.out.println();
+        }
+        return (double) elapsed / keys.length;
+    }
+}
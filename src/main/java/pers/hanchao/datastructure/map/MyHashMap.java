@@ -1,6 +1,11 @@
 package pers.hanchao.datastructure.map;
 
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
 
 /**
  * <p>用数组+链地址法(还有开放地址法)实现散列表</P>
@@ -11,18 +16,35 @@ import java.util.*;
  * 5.get(key):  先按hash()=下标查找数组，然后查找链表；复杂度O(1+m)，m为链表平均长度，约等于负载因子，O(1)
  * 6.put(key,value): 先按hash()=下标查找数组，然后查找链表末尾；复杂度O(1+m)，m为链表平均长度，约等于负载因子，O(1)
  * 7.remove(key): 先按hash()=下标查找数组，然后查找链表末尾；复杂度O(1+m)，m为链表平均长度，约等于负载因子，O(1)
- * 8.keySet()、valueSet()、entrySet()：在put和remove过程中顺便增删Set，所以这里只是获取；复杂度O(1)
+ * 8.keySet()、values()、entrySet()：直接遍历数组的视图，Node本身就是Map.Entry，遍历时不为每个元素创建对象；
+ *   按组号(hash & (旧数组长度 - 1))遍历，渐进式扩容过程中同时遍历新旧两个数组，不需要先完成扩容；
+ *   扩容过程中entrySet()返回按key写回的键值对；spliterator报告SIZED、DISTINCT(values()只报告SIZED)
+ * 9.渐进式扩容(incrementalRehash = true，参考Redis的dict)：扩容时新旧两个数组同时存在，之后每次操作顺带迁移REHASH_STEP个桶，
+ *   新元素只放入新数组，查找和删除先查旧数组再查新数组，迁移完成后丢弃旧数组；把一次O(N)的停顿分摊到后续操作中
+ * 10.树化：一个桶的链表长度达到TREEIFY_THRESHOLD时转换为红黑树(TreeBin)，删除后节点数降到UNTREEIFY_THRESHOLD时转换回链表；
+ *   树中先按hash排序，hash相同时按Comparable排序，不可比较时按类名和identityHashCode决胜；大量冲突时查找复杂度由O(m)降为O(log m)
+ * 11.key按equals比较，put已存在的key时覆盖value并返回旧值
+ * 12.扩展点：newNode、replacementNode等创建节点，afterNodeAccess、afterNodeInsertion、afterNodeRemoval在访问、新增、删除后回调；MyLruCache据此维护访问顺序
+ * 13.putAll(m)：批量加载，先按size + m.size()一次性扩容到位(只分配一次数组、只迁移一遍)，再逐个插入，不逐个检查扩容；
+ *   空map加载不少于PARALLEL_THRESHOLD个元素且有多个CPU时，按下标区间(即hash区间)把元素分给ForkJoinPool的多个任务，
+ *   各任务只写自己区间内的桶，互不加锁；复杂度O(N)
+ * 14.MyHashMap(incrementalRehash, bloomFpp)：在散列表前面放一个分块布隆过滤器(MyBloomFilter)，get、containsKey遇到一定不存在的key
+ *   直接返回，不访问数组和链表，适合绝大部分查找都不存在的场景(命中的查找要多查一次过滤器)；新增映射时放入过滤器，扩容时按新阈值重建(渐进式扩容时随桶迁移逐步建立)，
+ *   删除不能从过滤器中去掉，插入次数超过预计的1.5倍时按现有key重建
+ * 15.hash = HashSpreader.spread(hashCode)，下标 = hash & (capacity - 1)：默认murmur3，可以换成fxHash、seeded(随机种子，抵御哈希洪水)等；
+ *   load()、resizeCount()、chainLengthHistogram()报告负载、扩容次数和链表长度分布，据此用useHashSpreader(spreader)换用
+ *   更合适的扰动函数(全部节点按新hash重新分布)
  *
  * @author hanchao
  */
 public class MyHashMap<K, V> implements Map<K, V> {
 
     /**
-     * 数据节点(链地址法，其实就是增强版的链表节点)
+     * 数据节点(链地址法，其实就是增强版的链表节点)，同时作为entrySet()的元素
      */
-    class Node<K, V> {
+    class Node<K, V> implements Entry<K, V> {
         /**
-         * 散列结果
+         * 扰动后的散列值spreader.spread(key.hashCode())，扩容时直接用它计算新下标；useHashSpreader换用扰动函数时重新计算
          */
         int hash;
         K key;
@@ -36,19 +58,36 @@ public class MyHashMap<K, V> implements Map<K, V> {
             this.next = next;
         }
 
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            V oldValue = this.value;
+            this.value = value;
+            return oldValue;
+        }
+
+        /**
+         * 按Map.Entry的约定比较key和value
+         */
         @Override
         public boolean equals(Object o) {
             if (this == o) {
                 return true;
             }
-            if (!(o instanceof Node)) {
+            if (!(o instanceof Entry)) {
                 return false;
             }
-            Node<?, ?> node = (Node<?, ?>) o;
-            return hash == node.hash &&
-                    Objects.equals(key, node.key) &&
-                    Objects.equals(value, node.value) &&
-                    Objects.equals(next, node.next);
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            return Objects.equals(key, e.getKey()) && Objects.equals(value, e.getValue());
         }
 
         /**
@@ -56,17 +95,432 @@ public class MyHashMap<K, V> implements Map<K, V> {
          */
         @Override
         public int hashCode() {
-            return Objects.hash(hash, key, value, next);
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    /**
+     * 带访问顺序指针的节点：before、after由子类维护(例如MyLruCache)，MyHashMap自身只创建普通Node
+     */
+    class LinkedNode extends Node<K, V> {
+        LinkedNode before;
+        LinkedNode after;
+
+        LinkedNode(int hash, K key, V value, Node<K, V> next) {
+            super(hash, key, value, next);
+        }
+    }
+
+    /**
+     * 红黑树节点，同时通过prev、next组成双向链表，便于遍历和转换回链表；
+     * 继承LinkedNode，树化前后子类维护的访问顺序不受影响
+     */
+    final class TreeNode extends LinkedNode {
+        TreeNode parent;
+        TreeNode left;
+        TreeNode right;
+        TreeNode prev;
+        boolean red;
+
+        TreeNode(int hash, K key, V value) {
+            super(hash, key, value, null);
+        }
+    }
+
+    /**
+     * 树化后的桶：数组中存放TreeBin，TreeBin持有红黑树的根节点和链表的头节点
+     */
+    final class TreeBin extends Node<K, V> {
+        TreeNode root;
+        TreeNode first;
+        int count;
+
+        TreeBin() {
+            super(0, null, null, null);
+        }
+
+        /**
+         * 查找节点
+         */
+        TreeNode find(int hash, Object key) {
+            return root == null ? null : find(root, hash, key, null);
+        }
+
+        /**
+         * 从p开始查找：hash相同且不可比较时，两个子树都要查找
+         */
+        private TreeNode find(TreeNode p, int hash, Object key, Class<?> kc) {
+            do {
+                TreeNode pl = p.left, pr = p.right, q;
+                int dir;
+                if (p.hash > hash) {
+                    p = pl;
+                } else if (p.hash < hash) {
+                    p = pr;
+                } else if (p.key == key || key.equals(p.key)) {
+                    return p;
+                } else if (pl == null) {
+                    p = pr;
+                } else if (pr == null) {
+                    p = pl;
+                } else if ((kc != null || (kc = comparableClassFor(key)) != null)
+                        && (dir = compareComparables(kc, key, p.key)) != 0) {
+                    p = dir < 0 ? pl : pr;
+                } else if ((q = find(pr, hash, key, kc)) != null) {
+                    return q;
+                } else {
+                    p = pl;
+                }
+            } while (p != null);
+            return null;
+        }
+
+        /**
+         * 插入节点，key已存在则返回已存在的节点，否则返回null
+         *
+         * @param source 不为null时表示从链表节点复制而来(树化、迁移)，而不是新增映射
+         */
+        TreeNode putTreeVal(int hash, K key, V value, Node<K, V> source) {
+            Class<?> kc = null;
+            boolean searched = false;
+            TreeNode p = root;
+            TreeNode parent = null;
+            int dir = 0;
+            while (p != null) {
+                if (p.hash > hash) {
+                    dir = -1;
+                } else if (p.hash < hash) {
+                    dir = 1;
+                } else if (p.key == key || key.equals(p.key)) {
+                    return p;
+                } else if ((kc == null && (kc = comparableClassFor(key)) == null)
+                        || (dir = compareComparables(kc, key, p.key)) == 0) {
+                    //不可比较，先在两个子树中查找一次，找不到再决胜
+                    if (!searched) {
+                        TreeNode q;
+                        searched = true;
+                        if ((p.left != null && (q = find(p.left, hash, key, kc)) != null)
+                                || (p.right != null && (q = find(p.right, hash, key, kc)) != null)) {
+                            return q;
+                        }
+                    }
+                    dir = tieBreakOrder(key, p.key);
+                }
+                parent = p;
+                p = dir <= 0 ? p.left : p.right;
+            }
+            TreeNode x = source == null ? newTreeNode(hash, key, value) : replacementTreeNode(source);
+            x.parent = parent;
+            if (parent == null) {
+                root = x;
+            } else if (dir <= 0) {
+                parent.left = x;
+            } else {
+                parent.right = x;
+            }
+            //插入链表头部
+            x.next = first;
+            if (first != null) {
+                first.prev = x;
+            }
+            first = x;
+            count++;
+            fixAfterInsertion(x);
+            return null;
+        }
+
+        /**
+         * 删除节点：有两个子节点时先和后继节点交换位置(交换节点而不是交换key，外部持有的节点引用保持有效)
+         */
+        void removeTreeNode(TreeNode p) {
+            //1.从链表中摘除
+            TreeNode next = (TreeNode) p.next, prev = p.prev;
+            if (prev == null) {
+                first = next;
+            } else {
+                prev.next = next;
+            }
+            if (next != null) {
+                next.prev = prev;
+            }
+            count--;
+            //2.从树中摘除
+            if (p.left != null && p.right != null) {
+                swapWithSuccessor(p);
+            }
+            TreeNode replacement = p.left != null ? p.left : p.right;
+            if (replacement != null) {
+                replacement.parent = p.parent;
+                replaceChild(p, replacement);
+                p.left = p.right = p.parent = null;
+                if (!p.red) {
+                    fixAfterDeletion(replacement);
+                }
+            } else if (p.parent == null) {
+                root = null;
+            } else {
+                if (!p.red) {
+                    fixAfterDeletion(p);
+                }
+                replaceChild(p, null);
+                p.parent = null;
+            }
+        }
+
+        /**
+         * 交换p和它的后继节点s的位置和颜色，交换后p最多只有一个子节点
+         */
+        private void swapWithSuccessor(TreeNode p) {
+            TreeNode pl = p.left, pr = p.right, s = pr;
+            while (s.left != null) {
+                s = s.left;
+            }
+            boolean c = s.red;
+            s.red = p.red;
+            p.red = c;
+            TreeNode sr = s.right, pp = p.parent;
+            if (s == pr) {
+                p.parent = s;
+                s.right = p;
+            } else {
+                TreeNode sp = s.parent;
+                p.parent = sp;
+                if (s == sp.left) {
+                    sp.left = p;
+                } else {
+                    sp.right = p;
+                }
+                s.right = pr;
+                pr.parent = s;
+            }
+            p.left = null;
+            if ((p.right = sr) != null) {
+                sr.parent = p;
+            }
+            s.left = pl;
+            pl.parent = s;
+            s.parent = pp;
+            if (pp == null) {
+                root = s;
+            } else if (p == pp.left) {
+                pp.left = s;
+            } else {
+                pp.right = s;
+            }
+        }
+
+        /**
+         * 用x替换p在父节点中的位置
+         */
+        private void replaceChild(TreeNode p, TreeNode x) {
+            if (p.parent == null) {
+                root = x;
+            } else if (p == p.parent.left) {
+                p.parent.left = x;
+            } else {
+                p.parent.right = x;
+            }
+        }
+
+        private void rotateLeft(TreeNode p) {
+            TreeNode r = p.right;
+            p.right = r.left;
+            if (r.left != null) {
+                r.left.parent = p;
+            }
+            r.parent = p.parent;
+            replaceChild(p, r);
+            r.left = p;
+            p.parent = r;
+        }
+
+        private void rotateRight(TreeNode p) {
+            TreeNode l = p.left;
+            p.left = l.right;
+            if (l.right != null) {
+                l.right.parent = p;
+            }
+            l.parent = p.parent;
+            replaceChild(p, l);
+            l.right = p;
+            p.parent = l;
+        }
+
+        /**
+         * 插入后修复：新节点为红色，父节点也为红色时按叔叔节点的颜色变色或旋转
+         */
+        private void fixAfterInsertion(TreeNode x) {
+            x.red = true;
+            while (x != null && x != root && x.parent.red) {
+                TreeNode xp = x.parent, xpp = parentOf(xp);
+                if (xp == leftOf(xpp)) {
+                    TreeNode y = rightOf(xpp);
+                    if (colorOf(y)) {
+                        setColor(xp, false);
+                        setColor(y, false);
+                        setColor(xpp, true);
+                        x = xpp;
+                    } else {
+                        if (x == rightOf(xp)) {
+                            x = xp;
+                            rotateLeft(x);
+                        }
+                        setColor(parentOf(x), false);
+                        setColor(parentOf(parentOf(x)), true);
+                        rotateRight(parentOf(parentOf(x)));
+                    }
+                } else {
+                    TreeNode y = leftOf(xpp);
+                    if (colorOf(y)) {
+                        setColor(xp, false);
+                        setColor(y, false);
+                        setColor(xpp, true);
+                        x = xpp;
+                    } else {
+                        if (x == leftOf(xp)) {
+                            x = xp;
+                            rotateRight(x);
+                        }
+                        setColor(parentOf(x), false);
+                        setColor(parentOf(parentOf(x)), true);
+                        rotateLeft(parentOf(parentOf(x)));
+                    }
+                }
+            }
+            root.red = false;
+        }
+
+        /**
+         * 删除黑色节点后修复：x所在路径少了一个黑色节点，按兄弟节点的颜色变色或旋转
+         */
+        private void fixAfterDeletion(TreeNode x) {
+            while (x != root && !colorOf(x)) {
+                if (x == leftOf(parentOf(x))) {
+                    TreeNode sib = rightOf(parentOf(x));
+                    if (colorOf(sib)) {
+                        setColor(sib, false);
+                        setColor(parentOf(x), true);
+                        rotateLeft(parentOf(x));
+                        sib = rightOf(parentOf(x));
+                    }
+                    if (!colorOf(leftOf(sib)) && !colorOf(rightOf(sib))) {
+                        setColor(sib, true);
+                        x = parentOf(x);
+                    } else {
+                        if (!colorOf(rightOf(sib))) {
+                            setColor(leftOf(sib), false);
+                            setColor(sib, true);
+                            rotateRight(sib);
+                            sib = rightOf(parentOf(x));
+                        }
+                        setColor(sib, colorOf(parentOf(x)));
+                        setColor(parentOf(x), false);
+                        setColor(rightOf(sib), false);
+                        rotateLeft(parentOf(x));
+                        x = root;
+                    }
+                } else {
+                    TreeNode sib = leftOf(parentOf(x));
+                    if (colorOf(sib)) {
+                        setColor(sib, false);
+                        setColor(parentOf(x), true);
+                        rotateRight(parentOf(x));
+                        sib = leftOf(parentOf(x));
+                    }
+                    if (!colorOf(rightOf(sib)) && !colorOf(leftOf(sib))) {
+                        setColor(sib, true);
+                        x = parentOf(x);
+                    } else {
+                        if (!colorOf(leftOf(sib))) {
+                            setColor(rightOf(sib), false);
+                            setColor(sib, true);
+                            rotateLeft(sib);
+                            sib = leftOf(parentOf(x));
+                        }
+                        setColor(sib, colorOf(parentOf(x)));
+                        setColor(parentOf(x), false);
+                        setColor(leftOf(sib), false);
+                        rotateRight(parentOf(x));
+                        x = root;
+                    }
+                }
+            }
+            setColor(x, false);
+        }
+
+        /**
+         * 以下几个方法允许参数为null，null视为黑色叶子节点
+         */
+        private boolean colorOf(TreeNode p) {
+            return p != null && p.red;
+        }
+
+        private TreeNode parentOf(TreeNode p) {
+            return p == null ? null : p.parent;
+        }
+
+        private TreeNode leftOf(TreeNode p) {
+            return p == null ? null : p.left;
+        }
+
+        private TreeNode rightOf(TreeNode p) {
+            return p == null ? null : p.right;
+        }
+
+        private void setColor(TreeNode p, boolean red) {
+            if (p != null) {
+                p.red = red;
+            }
         }
     }
 
+    /**
+     * 链表长度达到该值时转换为红黑树
+     */
+    private static final int TREEIFY_THRESHOLD = 8;
+
+    /**
+     * 红黑树节点数降到该值时转换回链表
+     */
+    private static final int UNTREEIFY_THRESHOLD = 6;
+
+    /**
+     * 每次操作顺带迁移的桶数
+     */
+    private static final int REHASH_STEP = 4;
+
+    /**
+     * putAll并行加载的最小元素个数
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
     /**
      * 数组
      */
     private Node<K, V>[] nodeArrays;
 
     /**
-     * 数组容量,默认为16
+     * 渐进式扩容过程中的新数组，不在扩容过程中时为null
+     */
+    private Node<K, V>[] rehashArrays;
+
+    /**
+     * 旧数组中下一个待迁移的桶，不在扩容过程中时为-1
+     */
+    private int rehashIndex = -1;
+
+    /**
+     * 是否渐进式扩容
+     */
+    private final boolean incrementalRehash;
+
+    /**
+     * 数组容量(扩容过程中为新数组的容量),默认为16
      */
     private int capacity = 4;
 
@@ -85,44 +539,190 @@ public class MyHashMap<K, V> implements Map<K, V> {
      */
     private int size;
 
-    private Set<K> keySet = new HashSet<>();
+    /**
+     * 结构修改次数(增删元素)，迭代器据此快速失败
+     */
+    private int modCount;
+
+    private Set<K> keySetView;
+
+    private Collection<V> valuesView;
+
+    private Set<Entry<K, V>> entrySetView;
+
+    /**
+     * 布隆过滤器的误判率，0表示不使用
+     */
+    private final double bloomFpp;
+
+    /**
+     * 放在散列表前面的布隆过滤器，包含全部key；不使用时为null
+     */
+    private MyBloomFilter<Object> bloomFilter;
+
+    /**
+     * 渐进式扩容过程中为新数组建立的布隆过滤器，迁移完成后替换bloomFilter
+     */
+    private MyBloomFilter<Object> rehashBloomFilter;
 
-    private Set<V> valueSet = new HashSet<>();
+    /**
+     * 扰动函数
+     */
+    private HashSpreader spreader;
 
-    private Set<Entry<K,V>> entrySet = new HashSet<>();
+    /**
+     * 扩容次数
+     */
+    private int resizeCount;
 
     public MyHashMap() {
+        this(false);
+    }
+
+    /**
+     * @param spreader 扰动函数
+     */
+    public MyHashMap(HashSpreader spreader) {
+        this(false, 0, spreader);
+    }
+
+    /**
+     * @param incrementalRehash 是否渐进式扩容
+     */
+    public MyHashMap(boolean incrementalRehash) {
+        this(incrementalRehash, 0);
+    }
+
+    /**
+     * @param incrementalRehash 是否渐进式扩容
+     * @param bloomFpp          大于0时在散列表前面放一个误判率为bloomFpp的布隆过滤器，适合大部分查找都不存在的场景
+     */
+    public MyHashMap(boolean incrementalRehash, double bloomFpp) {
+        this(incrementalRehash, bloomFpp, HashSpreader.murmur3());
+    }
+
+    /**
+     * @param incrementalRehash 是否渐进式扩容
+     * @param bloomFpp          大于0时在散列表前面放一个误判率为bloomFpp的布隆过滤器
+     * @param spreader          扰动函数
+     */
+    public MyHashMap(boolean incrementalRehash, double bloomFpp, HashSpreader spreader) {
+        if (bloomFpp < 0 || bloomFpp >= 1) {
+            throw new IllegalArgumentException("The bloom filter fpp must be in [0, 1) !");
+        }
+        this.incrementalRehash = incrementalRehash;
+        this.bloomFpp = bloomFpp;
+        this.spreader = Objects.requireNonNull(spreader, "spreader");
         nodeArrays = new Node[capacity];
+        if (bloomFpp > 0) {
+            bloomFilter = new MyBloomFilter<>(threshold, bloomFpp);
+        }
     }
 
     /**
-     * 哈希函数
+     * 哈希函数：扰动后的hashCode
      */
-    private int hash(int hashCode) {
-        return Math.abs(hashCode) % capacity;
+    private int hash(Object key) {
+        return spreader.spread(key.hashCode());
     }
 
     /**
-     * 链表中是否包含指定元素
+     * 散列结果对应的数组下标：length是2的幂次方，用位与代替取模，hash为负数(包括Integer.MIN_VALUE)时也不会越界
      */
-    private boolean containsKey(Node<K, V> root, Object key) {
-        Node<K, V> node = root;
-        while (node != null) {
-            if (node.key == key) {
-                return true;
+    private static int indexFor(int hash, int length) {
+        return hash & (length - 1);
+    }
+
+    /**
+     * 是否正在渐进式扩容
+     */
+    public boolean isRehashing() {
+        return rehashArrays != null;
+    }
+
+    /**
+     * 新元素放入的数组：扩容过程中为新数组
+     */
+    private Node<K, V>[] insertArrays() {
+        return rehashArrays != null ? rehashArrays : nodeArrays;
+    }
+
+    /**
+     * key为Comparable<C>且C就是key自身的类型时返回该类型，否则返回null
+     */
+    static Class<?> comparableClassFor(Object key) {
+        if (key instanceof Comparable) {
+            Class<?> c = key.getClass();
+            if (c == String.class) {
+                return c;
+            }
+            for (Type type : c.getGenericInterfaces()) {
+                if (type instanceof ParameterizedType) {
+                    ParameterizedType p = (ParameterizedType) type;
+                    if (p.getRawType() == Comparable.class && p.getActualTypeArguments()[0] == c) {
+                        return c;
+                    }
+                }
             }
-            node = node.next;
         }
-        return false;
+        return null;
+    }
+
+    /**
+     * x的类型为kc时按compareTo比较，否则返回0
+     */
+    @SuppressWarnings("unchecked")
+    static int compareComparables(Class<?> kc, Object key, Object x) {
+        return x == null || x.getClass() != kc ? 0 : ((Comparable<Object>) key).compareTo(x);
+    }
+
+    /**
+     * hash相同且不可比较时的决胜规则：先比较类名，再比较identityHashCode，不返回0
+     */
+    static int tieBreakOrder(Object a, Object b) {
+        int d;
+        if (a == null || b == null || (d = a.getClass().getName().compareTo(b.getClass().getName())) == 0) {
+            d = System.identityHashCode(a) <= System.identityHashCode(b) ? -1 : 1;
+        }
+        return d;
+    }
+
+    /**
+     * 桶中链表的头节点：树化的桶返回TreeBin中链表的头节点
+     */
+    private Node<K, V> first(Node<K, V> bin) {
+        return bin instanceof MyHashMap.TreeBin ? ((TreeBin) bin).first : bin;
+    }
+
+    /**
+     * 链表转换为红黑树
+     */
+    private TreeBin treeify(Node<K, V> head) {
+        TreeBin bin = new TreeBin();
+        for (Node<K, V> node = head; node != null; node = node.next) {
+            bin.putTreeVal(node.hash, node.key, node.value, node);
+        }
+        return bin;
+    }
+
+    /**
+     * 红黑树转换回链表，节点数为0时返回null
+     */
+    private Node<K, V> untreeify(TreeBin bin) {
+        Node<K, V> head = null;
+        for (Node<K, V> node = bin.first; node != null; node = node.next) {
+            head = replacementNode(node, head);
+        }
+        return head;
     }
 
     /**
      * 链表中是否包含指定元素
      */
     private boolean containsValue(Node<K, V> root, Object value) {
-        Node<K, V> node = root;
+        Node<K, V> node = first(root);
         while (node != null) {
-            if (node.value == value) {
+            if (node.value == value || (value != null && value.equals(node.value))) {
                 return true;
             }
             node = node.next;
@@ -131,19 +731,84 @@ public class MyHashMap<K, V> implements Map<K, V> {
     }
 
     /**
-     * 链表中是否包含指定值
+     * 桶中查找指定元素所在节点：链表顺序查找，红黑树二分查找
      */
-    private V getValue(Node<K, V> root, Object key) {
+    private Node<K, V> getNode(Node<K, V> root, int hash, Object key) {
+        if (root instanceof MyHashMap.TreeBin) {
+            return ((TreeBin) root).find(hash, key);
+        }
         Node<K, V> node = root;
         while (node != null) {
-            if (node.key == key) {
-                return node.value;
+            if (node.hash == hash && (node.key == key || key.equals(node.key))) {
+                return node;
             }
             node = node.next;
         }
         return null;
     }
 
+    /**
+     * 查找节点，扩容过程中先查旧数组再查新数组
+     */
+    final Node<K, V> getNode(Object key) {
+        int hash = hash(key);
+        //布隆过滤器判断一定不存在
+        if (bloomFilter != null && !bloomFilter.mightContainHash(hash)) {
+            return null;
+        }
+        Node<K, V> node = getNode(nodeArrays[indexFor(hash, nodeArrays.length)], hash, key);
+        if (node == null && rehashArrays != null) {
+            node = getNode(rehashArrays[indexFor(hash, rehashArrays.length)], hash, key);
+        }
+        return node;
+    }
+
+    /**
+     * 创建新映射的链表节点，子类可以返回LinkedNode并维护自己的顺序
+     */
+    Node<K, V> newNode(int hash, K key, V value, Node<K, V> next) {
+        return new Node<>(hash, key, value, next);
+    }
+
+    /**
+     * 复制已有映射的链表节点(红黑树转换回链表、扩容拆分红黑树)
+     */
+    Node<K, V> replacementNode(Node<K, V> old, Node<K, V> next) {
+        return new Node<>(old.hash, old.key, old.value, next);
+    }
+
+    /**
+     * 创建新映射的红黑树节点
+     */
+    TreeNode newTreeNode(int hash, K key, V value) {
+        return new TreeNode(hash, key, value);
+    }
+
+    /**
+     * 复制已有映射的红黑树节点(链表树化、扩容迁移到已树化的桶)
+     */
+    TreeNode replacementTreeNode(Node<K, V> old) {
+        return new TreeNode(old.hash, old.key, old.value);
+    }
+
+    /**
+     * 回调：get命中或put覆盖已有key之后
+     */
+    void afterNodeAccess(Node<K, V> node) {
+    }
+
+    /**
+     * 回调：put新增映射之后(已完成扩容)
+     */
+    void afterNodeInsertion() {
+    }
+
+    /**
+     * 回调：节点从桶中删除之后
+     */
+    void afterNodeRemoval(Node<K, V> node) {
+    }
+
 
     /**
      * Returns the number of key-value mappings in this map.  If the
@@ -186,13 +851,9 @@ public class MyHashMap<K, V> implements Map<K, V> {
      */
     @Override
     public boolean containsKey(Object key) {
-        //获取根节点
-        Node<K, V> rootNode = nodeArrays[hash(key.hashCode())];
-        //查找链表
-        if (null != rootNode) {
-            return containsKey(rootNode, key);
-        }
-        return false;
+        //扩容过程中顺带迁移
+        rehashStep();
+        return getNode(key) != null;
     }
 
     /**
@@ -215,11 +876,17 @@ public class MyHashMap<K, V> implements Map<K, V> {
      */
     @Override
     public boolean containsValue(Object value) {
-        for (Node<K, V> nodeArray : nodeArrays) {
-            //遍历每个根节点
-            if (null != nodeArray) {
-                //查找链表
-                return containsValue(nodeArray, value);
+        return containsValue(nodeArrays, value) || (rehashArrays != null && containsValue(rehashArrays, value));
+    }
+
+    /**
+     * 数组中是否包含指定值
+     */
+    private boolean containsValue(Node<K, V>[] nodes, Object value) {
+        for (Node<K, V> nodeArray : nodes) {
+            //遍历每个根节点，查找链表
+            if (null != nodeArray && containsValue(nodeArray, value)) {
+                return true;
             }
         }
         return false;
@@ -252,13 +919,14 @@ public class MyHashMap<K, V> implements Map<K, V> {
      */
     @Override
     public V get(Object key) {
-        //获取根节点
-        Node<K, V> rootNode = nodeArrays[hash(key.hashCode())];
-        //查找链表
-        if (null != rootNode) {
-            return getValue(rootNode, key);
+        //扩容过程中顺带迁移
+        rehashStep();
+        Node<K, V> node = getNode(key);
+        if (node == null) {
+            return null;
         }
-        return null;
+        afterNodeAccess(node);
+        return node.value;
     }
 
     /**
@@ -287,76 +955,204 @@ public class MyHashMap<K, V> implements Map<K, V> {
      */
     @Override
     public V put(K key, V value) {
-        return put(nodeArrays, key, value);
+        //扩容过程中顺带迁移
+        rehashStep();
+        //扩容过程中key可能还在旧数组中，直接覆盖
+        if (rehashArrays != null) {
+            int hash = hash(key);
+            Node<K, V> node = getNode(nodeArrays[indexFor(hash, nodeArrays.length)], hash, key);
+            if (node != null) {
+                return replaceValue(node, value);
+            }
+        }
+        return put(insertArrays(), key, value);
     }
 
     private V put(Node<K, V>[] nodes, K key, V value) {
+        int hash = hash(key);
+        int index = indexFor(hash, nodes.length);
         //获取根节点
-        Node<K, V> rootNode = nodes[hash(key.hashCode())];
+        Node<K, V> rootNode = nodes[index];
         if (rootNode == null) {
             //数组无根节点则创建
-            nodes[hash(key.hashCode())] = new Node<>(hash(key.hashCode()), key, value, null);
+            nodes[index] = newNode(hash, key, value, null);
+        } else if (rootNode instanceof MyHashMap.TreeBin) {
+            //红黑树：插入或返回已存在的节点
+            Node<K, V> node = ((TreeBin) rootNode).putTreeVal(hash, key, value, null);
+            if (node != null) {
+                return replaceValue(node, value);
+            }
         } else {
-            //有根节点则追加
-            addNode(rootNode, new Node<>(hash(key.hashCode()), key, value, null));
+            //链表：key已存在则覆盖，否则追加到末尾，长度达到阈值则树化
+            int binCount = 1;
+            Node<K, V> node = rootNode;
+            for (; ; binCount++) {
+                if (node.hash == hash && (node.key == key || key.equals(node.key))) {
+                    return replaceValue(node, value);
+                }
+                if (node.next == null) {
+                    break;
+                }
+                node = node.next;
+            }
+            node.next = newNode(hash, key, value, null);
+            if (binCount + 1 >= TREEIFY_THRESHOLD) {
+                nodes[index] = treeify(rootNode);
+            }
         }
-        System.out.println("------put key = " + key + ",value = " + value);
-        keySet.add(key);
-        valueSet.add(value);
-        entrySet.add(new AbstractMap.SimpleEntry<>(key,value));
+        bloomPut(hash);
         size++;
+        modCount++;
         //如果元素数量超出阈值，则2倍扩容
         if (size >= threshold) {
             resize();
         }
-        return value;
+        afterNodeInsertion();
+        return null;
     }
 
     /**
-     * 二倍扩容,全部元素重新hash
-     * 可以优化，但是没必要纠结
-     */
-    private synchronized void resize() {
-        if (this.size >= this.threshold){
-            size = 0;
-            System.out.println("------resize------");
-            //二倍容量
-            capacity = Math.min(capacity << 1, Integer.MAX_VALUE);
-            //二倍阈值
-            threshold = (int) (capacity * loadFactor);
-            //全部重新hash
-            Node<K, V>[] newArrays = (Node<K, V>[]) new Node[capacity];
-            for (Node<K, V> root : nodeArrays) {
-                Node<K, V> node = root;
-                Node<K, V> current = node;
-                while (node != null) {
-                    //重新hash
-                    put(newArrays, node.key, node.value);
-                    //下一个节点
-                    node = node.next;
-                    //清除当前节点
-                    current.value = null;
-                    current.key = null;
-                    current.next = null;
+     * 覆盖已存在节点的value，返回旧值
+     */
+    private V replaceValue(Node<K, V> node, V value) {
+        V oldValue = node.value;
+        node.value = value;
+        afterNodeAccess(node);
+        return oldValue;
+    }
+
+    /**
+     * 二倍扩容
+     * 1.渐进式：只分配新数组，之后每次操作迁移REHASH_STEP个桶
+     * 2.一次性：分配新数组后立即迁移全部桶
+     * 迁移时直接把节点挂到新数组，不重新put
+     */
+    private void resize() {
+        //上一次渐进式扩容还没完成，先全部迁移
+        if (rehashArrays != null) {
+            finishRehash();
+        }
+        if (size < threshold || capacity >= HashUtil.MAXIMUM_CAPACITY) {
+            return;
+        }
+        resizeCount++;
+        //二倍容量
+        capacity = capacity << 1;
+        //二倍阈值
+        threshold = (int) (capacity * loadFactor);
+        rehashArrays = (Node<K, V>[]) new Node[capacity];
+        rehashIndex = 0;
+        if (bloomFilter != null) {
+            rehashBloomFilter = new MyBloomFilter<>(threshold, bloomFpp);
+        }
+        if (!incrementalRehash) {
+            finishRehash();
+        }
+    }
+
+    /**
+     * 迁移REHASH_STEP个非空桶；为了避免长时间扫描空桶，最多访问REHASH_STEP * 10个空桶
+     */
+    private void rehashStep() {
+        if (rehashArrays == null) {
+            return;
+        }
+        int buckets = REHASH_STEP;
+        int emptyVisits = REHASH_STEP * 10;
+        while (buckets > 0 && rehashIndex < nodeArrays.length) {
+            if (nodeArrays[rehashIndex] == null) {
+                rehashIndex++;
+                if (--emptyVisits == 0) {
+                    break;
                 }
+            } else {
+                moveBucket(rehashIndex++);
+                buckets--;
+            }
+        }
+        if (rehashIndex >= nodeArrays.length) {
+            //迁移完成，丢弃旧数组
+            nodeArrays = rehashArrays;
+            rehashArrays = null;
+            rehashIndex = -1;
+            if (rehashBloomFilter != null) {
+                bloomFilter = rehashBloomFilter;
+                rehashBloomFilter = null;
             }
-            //移除旧数组
-            nodeArrays = null;
-            nodeArrays = newArrays;
         }
     }
 
     /**
-     * 添加新节点（root非空)
+     * 迁移剩余的全部桶
      */
-    private void addNode(Node<K, V> root, Node<K, V> newNode) {
-        Node node = root;
-        Node parent = node;
-        while (node != null) {
-            parent = node;
-            node = node.next;
+    private void finishRehash() {
+        while (rehashArrays != null) {
+            rehashStep();
+        }
+    }
+
+    /**
+     * 把旧数组第i个桶的链表拆分到新数组：新容量是旧容量的二倍，所以节点只会落在i或i + 旧容量，
+     * 拆分时保持原有顺序，旧节点排在扩容期间新插入的节点前面；树化的桶拆分为链表后按长度重新决定是否树化
+     */
+    private void moveBucket(int i) {
+        int oldLength = nodeArrays.length;
+        boolean tree = nodeArrays[i] instanceof MyHashMap.TreeBin;
+        Node<K, V> loHead = null, loTail = null, hiHead = null, hiTail = null;
+        int loCount = 0, hiCount = 0;
+        for (Node<K, V> node = first(nodeArrays[i]), next; node != null; node = next) {
+            next = node.next;
+            //树节点复制为普通节点，不保留树的指针
+            if (tree) {
+                node = replacementNode(node, null);
+            }
+            node.next = null;
+            if (rehashBloomFilter != null) {
+                rehashBloomFilter.putHash(node.hash);
+            }
+            if (indexFor(node.hash, rehashArrays.length) == i) {
+                if (loTail == null) {
+                    loHead = node;
+                } else {
+                    loTail.next = node;
+                }
+                loTail = node;
+                loCount++;
+            } else {
+                if (hiTail == null) {
+                    hiHead = node;
+                } else {
+                    hiTail.next = node;
+                }
+                hiTail = node;
+                hiCount++;
+            }
+        }
+        nodeArrays[i] = null;
+        if (loTail != null) {
+            attach(rehashArrays, i, loHead, loTail, loCount);
+        }
+        if (hiTail != null) {
+            attach(rehashArrays, i + oldLength, hiHead, hiTail, hiCount);
+        }
+    }
+
+    /**
+     * 把迁移过来的链表挂到新数组的桶上：桶已树化则逐个插入红黑树，否则接在原链表前面，总长度达到阈值则树化
+     */
+    private void attach(Node<K, V>[] nodes, int index, Node<K, V> head, Node<K, V> tail, int count) {
+        Node<K, V> bin = nodes[index];
+        if (bin instanceof MyHashMap.TreeBin) {
+            for (Node<K, V> node = head; node != null; node = node.next) {
+                ((TreeBin) bin).putTreeVal(node.hash, node.key, node.value, node);
+            }
+            return;
         }
-        parent.next = newNode;
+        for (Node<K, V> node = bin; node != null; node = node.next) {
+            count++;
+        }
+        tail.next = bin;
+        nodes[index] = count >= TREEIFY_THRESHOLD ? treeify(head) : head;
     }
 
     /**
@@ -391,19 +1187,46 @@ public class MyHashMap<K, V> implements Map<K, V> {
      */
     @Override
     public V remove(Object key) {
-        return remove(nodeArrays,key);
+        //扩容过程中顺带迁移
+        rehashStep();
+        int oldSize = size;
+        V value = remove(nodeArrays, key);
+        //旧数组中没有找到，扩容过程中再查找新数组
+        if (size == oldSize && rehashArrays != null) {
+            value = remove(rehashArrays, key);
+        }
+        return value;
     }
 
     private V remove(Node<K,V>[] nodes,Object key) {
         boolean find = false;
         V value = null;
+        int hash = hash(key);
+        int index = indexFor(hash, nodes.length);
         Node<K, V> root, node, parent;
-        parent = node = root = nodes[hash(key.hashCode())];
+        parent = node = root = nodes[index];
+        //红黑树：删除节点，节点数降到阈值则转换回链表
+        if (root instanceof MyHashMap.TreeBin) {
+            TreeBin bin = (TreeBin) root;
+            TreeNode treeNode = bin.find(hash, key);
+            if (treeNode == null) {
+                return null;
+            }
+            bin.removeTreeNode(treeNode);
+            afterNodeRemoval(treeNode);
+            if (bin.count <= UNTREEIFY_THRESHOLD) {
+                nodes[index] = untreeify(bin);
+            }
+            value = treeNode.value;
+            size--;
+            modCount++;
+            return value;
+        }
         if (root != null) {
             //找到节点
             while (node != null) {
                 //找到节点
-                if (node.key == key) {
+                if (node.hash == hash && (node.key == key || key.equals(node.key))) {
                     value = node.value;
                     find = true;
                     break;
@@ -415,7 +1238,7 @@ public class MyHashMap<K, V> implements Map<K, V> {
             if (find) {
                 //1.如果目标节点为根节点，则：1.清除节点，2.数组元素置node.next
                 if (root == node) {
-                    nodes[hash(key.hashCode())] = node.next;
+                    nodes[index] = node.next;
                 } else if (node.next != null) {
                     //2.如果目标节点为非根非末节点，则：1.清除节点，2.parent.next=node.next
                     parent.next = node.next;
@@ -424,13 +1247,10 @@ public class MyHashMap<K, V> implements Map<K, V> {
                     parent.next = null;
 
                 }
-                node.key = null;
-                node.value = null;
                 node.next = null;
                 size -- ;
-                keySet.remove(key);
-                valueSet.remove(value);
-                entrySet.remove(new AbstractMap.SimpleEntry<>(key,value));
+                modCount++;
+                afterNodeRemoval(node);
             }
         }
 
@@ -460,7 +1280,309 @@ public class MyHashMap<K, V> implements Map<K, V> {
      */
     @Override
     public void putAll(Map<? extends K, ? extends V> m) {
-        m.forEach(this::put);
+        int count = m.size();
+        if (count == 0) {
+            return;
+        }
+        //1.一次性扩容到能容纳size + count个元素
+        presize(size + count);
+        //2.插入：子类的扩展点不是线程安全的，只有MyHashMap本身并行加载
+        if (size == 0 && count >= PARALLEL_THRESHOLD && getClass() == MyHashMap.class
+                && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            size = parallelLoad(m);
+            //并行任务没有写布隆过滤器
+            if (bloomFilter != null) {
+                rebuildBloomFilter();
+            }
+        } else {
+            int added = 0;
+            for (Entry<? extends K, ? extends V> entry : m.entrySet()) {
+                if (bulkPut(nodeArrays, entry.getKey(), entry.getValue())) {
+                    added++;
+                }
+            }
+            size += added;
+        }
+        modCount++;
+        //3.m.size()不准确(例如并发修改)时补一次扩容检查
+        if (size >= threshold) {
+            resize();
+        }
+        afterNodeInsertion();
+    }
+
+    /**
+     * 一次性扩容到能容纳expected个元素：容量直接翻到位，每个节点只迁移一次
+     * 新容量是旧容量的2^k倍，新数组的一个桶只接收旧数组一个桶中的节点，所以链表迁移后不会超过树化阈值
+     */
+    private void presize(int expected) {
+        finishRehash();
+        int newCapacity = capacity;
+        while (expected >= (int) (newCapacity * loadFactor) && newCapacity < HashUtil.MAXIMUM_CAPACITY) {
+            newCapacity <<= 1;
+        }
+        if (newCapacity == capacity) {
+            return;
+        }
+        resizeCount++;
+        Node<K, V>[] nodes = (Node<K, V>[]) new Node[newCapacity];
+        for (Node<K, V> bin : nodeArrays) {
+            boolean tree = bin instanceof MyHashMap.TreeBin;
+            for (Node<K, V> node = first(bin), next; node != null; node = next) {
+                next = node.next;
+                int index = indexFor(node.hash, newCapacity);
+                if (tree) {
+                    //树节点复制为普通节点，按目标桶的节点数重新决定是否树化
+                    node = replacementNode(node, null);
+                    attach(nodes, index, node, node, 1);
+                } else {
+                    node.next = nodes[index];
+                    nodes[index] = node;
+                }
+            }
+        }
+        nodeArrays = nodes;
+        capacity = newCapacity;
+        threshold = (int) (capacity * loadFactor);
+        if (bloomFilter != null) {
+            rebuildBloomFilter();
+        }
+    }
+
+    /**
+     * 新增映射后把hash放入布隆过滤器：渐进式扩容过程中同时放入新过滤器；插入次数超过预计的1.5倍时按现有key重建
+     */
+    private void bloomPut(int hash) {
+        if (bloomFilter == null) {
+            return;
+        }
+        bloomFilter.putHash(hash);
+        if (rehashBloomFilter != null) {
+            rehashBloomFilter.putHash(hash);
+        } else if (bloomFilter.insertions() > bloomFilter.expectedInsertions() * 3 / 2) {
+            rebuildBloomFilter();
+        }
+    }
+
+    /**
+     * 按现有key重建布隆过滤器，只在不处于渐进式扩容时调用；复杂度O(N)
+     */
+    private void rebuildBloomFilter() {
+        MyBloomFilter<Object> filter = new MyBloomFilter<>(Math.max(threshold, size), bloomFpp);
+        for (Node<K, V> bin : nodeArrays) {
+            for (Node<K, V> node = first(bin); node != null; node = node.next) {
+                filter.putHash(node.hash);
+            }
+        }
+        bloomFilter = filter;
+    }
+
+    /**
+     * 放在散列表前面的布隆过滤器，没有使用时返回null；只用于观察误判率和填充率，不要直接修改
+     */
+    public MyBloomFilter<Object> bloomFilter() {
+        return bloomFilter;
+    }
+
+    /**
+     * 实际负载：size / capacity
+     */
+    public double load() {
+        return (double) size / capacity;
+    }
+
+    /**
+     * 扩容次数(一次性扩容多倍也只算一次)
+     */
+    public int resizeCount() {
+        return resizeCount;
+    }
+
+    public HashSpreader hashSpreader() {
+        return spreader;
+    }
+
+    /**
+     * 链表长度分布：histogram[i] = 有i个节点的桶数，树化的桶按节点数统计；正在渐进式扩容时先完成扩容；复杂度O(N)
+     */
+    public int[] chainLengthHistogram() {
+        finishRehash();
+        int[] histogram = new int[TREEIFY_THRESHOLD + 1];
+        for (Node<K, V> bin : nodeArrays) {
+            int length = 0;
+            if (bin instanceof MyHashMap.TreeBin) {
+                length = ((TreeBin) bin).count;
+            } else {
+                for (Node<K, V> node = bin; node != null; node = node.next) {
+                    length++;
+                }
+            }
+            if (length >= histogram.length) {
+                histogram = Arrays.copyOf(histogram, length + 1);
+            }
+            histogram[length]++;
+        }
+        return histogram;
+    }
+
+    /**
+     * 换用扰动函数：按新hash重新分布全部节点，容量不变；复杂度O(N)
+     */
+    public void useHashSpreader(HashSpreader newSpreader) {
+        Objects.requireNonNull(newSpreader, "spreader");
+        finishRehash();
+        spreader = newSpreader;
+        Node<K, V>[] nodes = (Node<K, V>[]) new Node[capacity];
+        for (Node<K, V> bin : nodeArrays) {
+            boolean tree = bin instanceof MyHashMap.TreeBin;
+            for (Node<K, V> node = first(bin), next; node != null; node = next) {
+                next = node.next;
+                //树节点复制为普通节点；多个旧桶的节点可能落入同一个新桶，按节点数决定是否树化
+                if (tree) {
+                    node = replacementNode(node, null);
+                }
+                node.hash = hash(node.key);
+                node.next = null;
+                attach(nodes, indexFor(node.hash, capacity), node, node, 1);
+            }
+        }
+        nodeArrays = nodes;
+        modCount++;
+        if (bloomFilter != null) {
+            rebuildBloomFilter();
+        }
+    }
+
+    /**
+     * 批量插入一个元素：不修改size、modCount，不检查扩容；返回是否新增了映射
+     */
+    private boolean bulkPut(Node<K, V>[] nodes, K key, V value) {
+        int hash = hash(key);
+        if (bulkPut(nodes, hash, indexFor(hash, nodes.length), key, value)) {
+            bloomPut(hash);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean bulkPut(Node<K, V>[] nodes, int hash, int index, K key, V value) {
+        Node<K, V> rootNode = nodes[index];
+        if (rootNode == null) {
+            nodes[index] = newNode(hash, key, value, null);
+            return true;
+        }
+        if (rootNode instanceof MyHashMap.TreeBin) {
+            Node<K, V> node = ((TreeBin) rootNode).putTreeVal(hash, key, value, null);
+            if (node == null) {
+                return true;
+            }
+            node.value = value;
+            afterNodeAccess(node);
+            return false;
+        }
+        int binCount = 1;
+        Node<K, V> node = rootNode;
+        for (; ; binCount++) {
+            if (node.hash == hash && (node.key == key || key.equals(node.key))) {
+                node.value = value;
+                afterNodeAccess(node);
+                return false;
+            }
+            if (node.next == null) {
+                break;
+            }
+            node = node.next;
+        }
+        node.next = newNode(hash, key, value, null);
+        if (binCount + 1 >= TREEIFY_THRESHOLD) {
+            nodes[index] = treeify(rootNode);
+        }
+        return true;
+    }
+
+    /**
+     * 并行加载到空map，返回新增的映射数
+     * 1.取出全部key、value，并行计算hash
+     * 2.容量是2的幂次方，按下标的高位把数组分成若干个连续区间，计数排序把元素按区间分组
+     * 3.每个区间交给一个任务插入，区间之间没有共享的桶
+     */
+    private int parallelLoad(Map<? extends K, ? extends V> m) {
+        int n = m.size();
+        Object[] keys = new Object[n];
+        Object[] values = new Object[n];
+        int count = 0;
+        for (Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            if (count == n) {
+                //m.size()偏小，扩充数组
+                keys = Arrays.copyOf(keys, n = n + (n >> 1) + 1);
+                values = Arrays.copyOf(values, n);
+            }
+            keys[count] = entry.getKey();
+            values[count++] = entry.getValue();
+        }
+        Object[] keyArray = keys;
+        int[] hashes = new int[count];
+        Arrays.parallelSetAll(hashes, i -> hash(keyArray[i]));
+
+        //按区间计数排序，partitions为2的幂次方且不超过容量
+        int partitions = Math.min(capacity, HashUtil.tableSizeFor(ForkJoinPool.getCommonPoolParallelism() * 4));
+        int shift = Integer.numberOfTrailingZeros(capacity / partitions);
+        int[] starts = new int[partitions + 1];
+        int[] indexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = indexFor(hashes[i], capacity);
+            starts[(indexes[i] >>> shift) + 1]++;
+        }
+        for (int p = 0; p < partitions; p++) {
+            starts[p + 1] += starts[p];
+        }
+        int[] order = new int[count];
+        int[] next = Arrays.copyOf(starts, partitions);
+        for (int i = 0; i < count; i++) {
+            order[next[indexes[i] >>> shift]++] = i;
+        }
+        return ForkJoinPool.commonPool().invoke(
+                new LoadTask(0, partitions, starts, order, hashes, indexes, keys, values));
+    }
+
+    /**
+     * 并行加载任务：负责[lo, hi)区间分组中的元素，区间多于一个时一分为二
+     */
+    private final class LoadTask extends RecursiveTask<Integer> {
+        private final int lo, hi;
+        private final int[] starts, order, hashes, indexes;
+        private final Object[] keys, values;
+
+        LoadTask(int lo, int hi, int[] starts, int[] order, int[] hashes, int[] indexes, Object[] keys,
+                 Object[] values) {
+            this.lo = lo;
+            this.hi = hi;
+            this.starts = starts;
+            this.order = order;
+            this.hashes = hashes;
+            this.indexes = indexes;
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                LoadTask right = new LoadTask(mid, hi, starts, order, hashes, indexes, keys, values);
+                right.fork();
+                int left = new LoadTask(lo, mid, starts, order, hashes, indexes, keys, values).compute();
+                return left + right.join();
+            }
+            int added = 0;
+            for (int k = starts[lo]; k < starts[hi]; k++) {
+                int i = order[k];
+                if (bulkPut(nodeArrays, hashes[i], indexes[i], (K) keys[i], (V) values[i])) {
+                    added++;
+                }
+            }
+            return added;
+        }
     }
 
     /**
@@ -473,9 +1595,23 @@ public class MyHashMap<K, V> implements Map<K, V> {
     @Override
     public void clear() {
         size = 0;
+        modCount++;
+        //扩容过程中直接使用新数组
+        if (rehashArrays != null) {
+            nodeArrays = rehashArrays;
+            rehashArrays = null;
+            rehashIndex = -1;
+        }
         for (int i = 0; i < nodeArrays.length; i++) {
             nodeArrays[i] = null;
         }
+        if (bloomFilter != null) {
+            if (rehashBloomFilter != null) {
+                bloomFilter = rehashBloomFilter;
+                rehashBloomFilter = null;
+            }
+            bloomFilter.clear();
+        }
     }
 
     /**
@@ -495,7 +1631,10 @@ public class MyHashMap<K, V> implements Map<K, V> {
      */
     @Override
     public Set<K> keySet() {
-        return keySet;
+        if (keySetView == null) {
+            keySetView = new KeySet();
+        }
+        return keySetView;
     }
 
     /**
@@ -515,7 +1654,10 @@ public class MyHashMap<K, V> implements Map<K, V> {
      */
     @Override
     public Collection<V> values() {
-        return valueSet;
+        if (valuesView == null) {
+            valuesView = new Values();
+        }
+        return valuesView;
     }
 
     /**
@@ -536,7 +1678,428 @@ public class MyHashMap<K, V> implements Map<K, V> {
      */
     @Override
     public Set<Entry<K, V>> entrySet() {
-        return entrySet;
+        if (entrySetView == null) {
+            entrySetView = new EntrySet();
+        }
+        return entrySetView;
+    }
+
+    /**
+     * 按组遍历的游标：组号g的节点 = hash & (groupLength - 1) == g的节点，groupLength是开始遍历时旧数组的长度，
+     * 分布在旧数组的g桶和新数组的g、g + groupLength桶中(不在扩容过程中时就是数组的g桶，扩容完成后是g、g + groupLength桶)。
+     * 渐进式扩容的迁移只在组内移动节点，所以进入一个组时先取出它的全部节点，遍历过程中查找顺带迁移也不会重复或遗漏；
+     * 不需要在创建迭代器时先完成扩容
+     */
+    private final class GroupCursor {
+        final int groupLength;
+        Node<K, V>[] buffer = (Node<K, V>[]) new Node[4];
+        int count;
+        int position;
+
+        GroupCursor(int groupLength) {
+            this.groupLength = groupLength;
+        }
+
+        /**
+         * 取出第group组的全部节点：先旧数组，再新数组
+         */
+        void load(int group) {
+            count = 0;
+            position = 0;
+            collect(nodeArrays, group);
+            if (rehashArrays != null) {
+                collect(rehashArrays, group);
+            }
+        }
+
+        private void collect(Node<K, V>[] nodes, int group) {
+            for (int i = group; i < nodes.length; i += groupLength) {
+                for (Node<K, V> node = first(nodes[i]); node != null; node = node.next) {
+                    if (count == buffer.length) {
+                        buffer = Arrays.copyOf(buffer, count << 1);
+                    }
+                    buffer[count++] = node;
+                }
+            }
+        }
+
+        /**
+         * 把还没返回的节点换成map中当前的节点：删除可能把树化的桶转换回链表、迁移可能复制树化桶的节点
+         */
+        void relink() {
+            for (int i = position; i < count; i++) {
+                buffer[i] = getNode(buffer[i].key);
+            }
+        }
+
+        boolean hasNext() {
+            return position < count;
+        }
+
+        Node<K, V> next() {
+            Node<K, V> node = buffer[position];
+            buffer[position++] = null;
+            return node;
+        }
+    }
+
+    /**
+     * entrySet()返回的元素：不在扩容过程中直接返回节点；扩容过程中树化的桶迁移时会复制节点，
+     * 返回按key写回的键值对，setValue始终修改map中当前的节点
+     */
+    private Entry<K, V> entry(Node<K, V> node) {
+        return rehashArrays == null ? node : new RehashEntry(node);
+    }
+
+    private final class RehashEntry extends AbstractMap.SimpleEntry<K, V> {
+        RehashEntry(Node<K, V> node) {
+            super(node.key, node.value);
+        }
+
+        @Override
+        public V setValue(V value) {
+            Node<K, V> node = getNode(getKey());
+            if (node != null) {
+                node.value = value;
+            }
+            return super.setValue(value);
+        }
+    }
+
+    /**
+     * 迭代器：按组号遍历，渐进式扩容过程中同时遍历新旧两个数组
+     */
+    private abstract class HashIterator<T> implements Iterator<T> {
+        final GroupCursor cursor = new GroupCursor(nodeArrays.length);
+        Node<K, V> current;
+        /**
+         * 下一个要取出的组号
+         */
+        int group;
+        int expectedModCount;
+
+        HashIterator() {
+            expectedModCount = modCount;
+            advance();
+        }
+
+        /**
+         * 当前组遍历完时取出下一个非空的组
+         */
+        private void advance() {
+            while (!cursor.hasNext() && group < cursor.groupLength) {
+                cursor.load(group++);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor.hasNext();
+        }
+
+        Node<K, V> nextNode() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!cursor.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            current = cursor.next();
+            advance();
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            MyHashMap.this.remove(current.key);
+            cursor.relink();
+            current = null;
+            expectedModCount = modCount;
+        }
+    }
+
+    private final class KeyIterator extends HashIterator<K> {
+        @Override
+        public K next() {
+            return nextNode().key;
+        }
+    }
+
+    private final class ValueIterator extends HashIterator<V> {
+        @Override
+        public V next() {
+            return nextNode().value;
+        }
+    }
+
+    private final class EntryIterator extends HashIterator<Entry<K, V>> {
+        @Override
+        public Entry<K, V> next() {
+            return entry(nextNode());
+        }
+    }
+
+    /**
+     * 按组号范围切分的Spliterator，第一次使用时才绑定组数和元素个数；渐进式扩容过程中同时遍历新旧两个数组
+     */
+    private abstract class HashSpliterator<T> implements Spliterator<T> {
+        int index;
+        /**
+         * 组号上界(不含)，-1表示还未绑定
+         */
+        int fence;
+        int est;
+        int expectedModCount;
+        /**
+         * 绑定时创建
+         */
+        GroupCursor cursor;
+
+        HashSpliterator(int origin, int fence, int est, int expectedModCount, int groupLength) {
+            this.index = origin;
+            this.fence = fence;
+            this.est = est;
+            this.expectedModCount = expectedModCount;
+            if (fence >= 0) {
+                cursor = new GroupCursor(groupLength);
+            }
+        }
+
+        abstract T element(Node<K, V> node);
+
+        abstract HashSpliterator<T> split(int origin, int fence, int est, int expectedModCount, int groupLength);
+
+        final int getFence() {
+            if (fence < 0) {
+                est = size;
+                expectedModCount = modCount;
+                fence = nodeArrays.length;
+                cursor = new GroupCursor(fence);
+            }
+            return fence;
+        }
+
+        @Override
+        public HashSpliterator<T> trySplit() {
+            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+            if (lo >= mid || cursor.hasNext()) {
+                return null;
+            }
+            return split(lo, index = mid, est >>>= 1, expectedModCount, cursor.groupLength);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            int hi = getFence();
+            while (!cursor.hasNext() && index < hi) {
+                cursor.load(index++);
+            }
+            if (!cursor.hasNext()) {
+                return false;
+            }
+            action.accept(element(cursor.next()));
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            int hi = getFence();
+            for (; ; ) {
+                while (cursor.hasNext()) {
+                    action.accept(element(cursor.next()));
+                }
+                if (index >= hi) {
+                    break;
+                }
+                cursor.load(index++);
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            getFence();
+            return est;
+        }
+
+        /**
+         * 未切分时元素个数是精确的
+         */
+        @Override
+        public int characteristics() {
+            return (fence < 0 || est == size ? SIZED : 0) | DISTINCT;
+        }
+    }
+
+    private final class KeySpliterator extends HashSpliterator<K> {
+        KeySpliterator(int origin, int fence, int est, int expectedModCount, int groupLength) {
+            super(origin, fence, est, expectedModCount, groupLength);
+        }
+
+        @Override
+        K element(Node<K, V> node) {
+            return node.key;
+        }
+
+        @Override
+        HashSpliterator<K> split(int origin, int fence, int est, int expectedModCount, int groupLength) {
+            return new KeySpliterator(origin, fence, est, expectedModCount, groupLength);
+        }
+    }
+
+    private final class ValueSpliterator extends HashSpliterator<V> {
+        ValueSpliterator(int origin, int fence, int est, int expectedModCount, int groupLength) {
+            super(origin, fence, est, expectedModCount, groupLength);
+        }
+
+        @Override
+        V element(Node<K, V> node) {
+            return node.value;
+        }
+
+        @Override
+        HashSpliterator<V> split(int origin, int fence, int est, int expectedModCount, int groupLength) {
+            return new ValueSpliterator(origin, fence, est, expectedModCount, groupLength);
+        }
+
+        /**
+         * value可能重复，不报告DISTINCT
+         */
+        @Override
+        public int characteristics() {
+            return fence < 0 || est == size ? SIZED : 0;
+        }
+    }
+
+    private final class EntrySpliterator extends HashSpliterator<Entry<K, V>> {
+        EntrySpliterator(int origin, int fence, int est, int expectedModCount, int groupLength) {
+            super(origin, fence, est, expectedModCount, groupLength);
+        }
+
+        @Override
+        Entry<K, V> element(Node<K, V> node) {
+            return entry(node);
+        }
+
+        @Override
+        HashSpliterator<Entry<K, V>> split(int origin, int fence, int est, int expectedModCount, int groupLength) {
+            return new EntrySpliterator(origin, fence, est, expectedModCount, groupLength);
+        }
+    }
+
+    private final class KeySet extends AbstractSet<K> {
+        @Override
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+
+        @Override
+        public Spliterator<K> spliterator() {
+            return new KeySpliterator(0, -1, 0, 0, 0);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            int oldSize = size;
+            MyHashMap.this.remove(o);
+            return size != oldSize;
+        }
+
+        @Override
+        public void clear() {
+            MyHashMap.this.clear();
+        }
+    }
+
+    private final class Values extends AbstractCollection<V> {
+        @Override
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        @Override
+        public Spliterator<V> spliterator() {
+            return new ValueSpliterator(0, -1, 0, 0, 0);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsValue(o);
+        }
+
+        @Override
+        public void clear() {
+            MyHashMap.this.clear();
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<K, V>> {
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public Spliterator<Entry<K, V>> spliterator() {
+            return new EntrySpliterator(0, -1, 0, 0, 0);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            Node<K, V> node = e.getKey() == null ? null : getNode(e.getKey());
+            return node != null && Objects.equals(node.value, e.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!contains(o)) {
+                return false;
+            }
+            MyHashMap.this.remove(((Entry<?, ?>) o).getKey());
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            MyHashMap.this.clear();
+        }
     }
 
     public static void main(String[] args) {
@@ -562,5 +2125,16 @@ public class MyHashMap<K, V> implements Map<K, V> {
         System.out.println(map.keySet());
         System.out.println(map.values());
         System.out.println(map.entrySet());
+
+        //"Aa"和"BB"的hashCode相同，由它们拼接的字符串全部冲突到同一个桶，超过阈值后树化
+        MyHashMap<String, Integer> collisions = new MyHashMap<>();
+        for (int i = 0; i < 16; i++) {
+            StringBuilder key = new StringBuilder();
+            for (int bit = 0; bit < 4; bit++) {
+                key.append((i >> bit & 1) == 0 ? "Aa" : "BB");
+            }
+            collisions.put(key.toString(), i);
+        }
+        System.out.println(collisions.get("AaBBAaBB") + " " + collisions.get("BBBBBBBB") + " " + collisions.size());
     }
 }
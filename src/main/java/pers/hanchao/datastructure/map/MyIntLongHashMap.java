@@ -0,0 +1,344 @@
+package pers.hanchao.datastructure.map;
+
+import java.util.Arrays;
+
+/**
+ * <p>int -> long 的散列表(开放地址法 + 线性探测)，不装箱</P>
+ * 1.keys[]、values[]两个数组，get/put/addTo全程不装箱，不创建Node和Entry对象
+ * 2.空槽位用key = 0表示(哨兵)，所以key = 0单独存放在hasZeroKey和zeroValue中
+ * 3.get(key)、containsKey(key)：线性探测，遇到相同key命中，遇到0未命中；不存在时get返回0；复杂度O(1)
+ * 4.put(key,value)：覆盖或插入，返回旧值(不存在返回0)；复杂度O(1)
+ * 5.addTo(key,delta)：原地累加，不存在时视为0，返回累加后的值，适合计数器；复杂度O(1)
+ * 6.remove(key)：后移删除；复杂度O(1)
+ * 7.cursor()：游标遍历，整个遍历只创建一个游标对象，通过key()、value()读取当前元素
+ *
+ * @author hanchao
+ */
+public class MyIntLongHashMap {
+
+    /**
+     * 默认容量
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * 默认负载因子
+     */
+    private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * 空槽位哨兵
+     */
+    private static final int FREE = 0;
+
+    private int[] keys;
+
+    private long[] values;
+
+    /**
+     * 是否包含key = 0
+     */
+    private boolean hasZeroKey;
+
+    private long zeroValue;
+
+    private int mask;
+
+    private final float loadFactor;
+
+    private int threshold;
+
+    /**
+     * 实际元素个数，包含key = 0
+     */
+    private int size;
+
+    public MyIntLongHashMap() {
+        this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 预估元素数量构造函数
+     */
+    public MyIntLongHashMap(int expectedSize) {
+        this(expectedSize, DEFAULT_LOAD_FACTOR);
+    }
+
+    public MyIntLongHashMap(int expectedSize, float loadFactor) {
+        this.loadFactor = loadFactor;
+        allocate(Math.max(2, HashUtil.capacityFor(expectedSize, loadFactor)));
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+        threshold = Math.min(capacity - 1, (int) (capacity * loadFactor));
+    }
+
+    /**
+     * 理想下标
+     */
+    private int slot(int key) {
+        return HashUtil.mix(key) & mask;
+    }
+
+    /**
+     * 查找key所在下标，不存在返回-1(key != 0)
+     */
+    private int indexOf(int key) {
+        int i = slot(key);
+        int k;
+        while ((k = keys[i]) != FREE) {
+            if (k == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(int key) {
+        if (key == FREE) {
+            return hasZeroKey;
+        }
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * 获取value，不存在返回0
+     */
+    public long get(int key) {
+        return getOrDefault(key, 0);
+    }
+
+    /**
+     * 获取value，不存在返回defaultValue
+     */
+    public long getOrDefault(int key, long defaultValue) {
+        if (key == FREE) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        int i = indexOf(key);
+        return i < 0 ? defaultValue : values[i];
+    }
+
+    /**
+     * 覆盖或插入，返回旧值，不存在返回0
+     */
+    public long put(int key, long value) {
+        if (key == FREE) {
+            long old = zeroValue;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return old;
+        }
+        int i = slot(key);
+        int k;
+        while ((k = keys[i]) != FREE) {
+            if (k == key) {
+                long old = values[i];
+                values[i] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        insertAt(i, key, value);
+        return 0;
+    }
+
+    /**
+     * 原地累加，不存在视为0，返回累加后的值
+     */
+    public long addTo(int key, long delta) {
+        if (key == FREE) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            return zeroValue += delta;
+        }
+        int i = slot(key);
+        int k;
+        while ((k = keys[i]) != FREE) {
+            if (k == key) {
+                return values[i] += delta;
+            }
+            i = (i + 1) & mask;
+        }
+        insertAt(i, key, delta);
+        return delta;
+    }
+
+    /**
+     * 在空槽位i插入，超出阈值则二倍扩容
+     */
+    private void insertAt(int i, int key, long value) {
+        keys[i] = key;
+        values[i] = value;
+        if (++size >= threshold) {
+            resize(keys.length << 1);
+        }
+    }
+
+    private void resize(int newCapacity) {
+        if (keys.length >= HashUtil.MAXIMUM_CAPACITY) {
+            if (size >= keys.length - 1) {
+                throw new IllegalStateException("MyIntLongHashMap is full !");
+            }
+            return;
+        }
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(newCapacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            int k = oldKeys[j];
+            if (k != FREE) {
+                int i = slot(k);
+                while (keys[i] != FREE) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = k;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * 删除，返回旧值，不存在返回0
+     */
+    public long remove(int key) {
+        if (key == FREE) {
+            if (!hasZeroKey) {
+                return 0;
+            }
+            long old = zeroValue;
+            hasZeroKey = false;
+            zeroValue = 0;
+            size--;
+            return old;
+        }
+        int i = indexOf(key);
+        if (i < 0) {
+            return 0;
+        }
+        long old = values[i];
+        size--;
+        shiftKeys(i);
+        return old;
+    }
+
+    /**
+     * 后移删除
+     */
+    private void shiftKeys(int pos) {
+        int last;
+        int slot;
+        int curr;
+        for (; ; ) {
+            pos = ((last = pos) + 1) & mask;
+            for (; ; ) {
+                if ((curr = keys[pos]) == FREE) {
+                    keys[last] = FREE;
+                    return;
+                }
+                slot = slot(curr);
+                if (HashUtil.canShift(last, pos, slot)) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = curr;
+            values[last] = values[pos];
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        hasZeroKey = false;
+        zeroValue = 0;
+        size = 0;
+    }
+
+    /**
+     * 游标：先访问key = 0，再从后向前遍历数组；遍历期间不能修改散列表结构
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    public final class Cursor {
+        private int index = keys.length + 1;
+
+        /**
+         * 移动到下一个元素，没有则返回false
+         */
+        public boolean advance() {
+            if (index == keys.length + 1) {
+                index--;
+                if (hasZeroKey) {
+                    return true;
+                }
+            }
+            while (--index >= 0) {
+                if (keys[index] != FREE) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int key() {
+            return index == keys.length ? FREE : keys[index];
+        }
+
+        public long value() {
+            return index == keys.length ? zeroValue : values[index];
+        }
+
+        /**
+         * 修改当前元素的value
+         */
+        public void setValue(long value) {
+            if (index == keys.length) {
+                zeroValue = value;
+            } else {
+                values[index] = value;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        Cursor cursor = cursor();
+        while (cursor.advance()) {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(cursor.key()).append('=').append(cursor.value());
+        }
+        return sb.append('}').toString();
+    }
+
+    public static void main(String[] args) {
+        MyIntLongHashMap bytesById = new MyIntLongHashMap();
+        for (int i = 0; i < 10; i++) {
+            bytesById.addTo(i % 3, 1L << 40);
+        }
+        System.out.println(bytesById + " size = " + bytesById.size());
+        System.out.println(bytesById.get(0) + " " + bytesById.get(5) + " " + bytesById.getOrDefault(5, -1L));
+        System.out.println(bytesById.remove(1) + " " + bytesById.containsKey(1));
+    }
+}
@@ -0,0 +1,322 @@
+package pers.hanchao.datastructure.map;
+
+import java.util.Arrays;
+
+/**
+ * <p>long -> Object 的散列表(开放地址法 + 线性探测)，不装箱</P>
+ * 1.keys[]、values[]两个数组，key全程不装箱，不创建Node和Entry对象
+ * 2.空槽位用key = 0表示(哨兵)，所以key = 0单独存放在hasZeroKey和zeroValue中
+ * 3.get(key)、containsKey(key)：线性探测，遇到相同key命中，遇到0未命中；不存在时get返回null；复杂度O(1)
+ * 4.put(key,value)：覆盖或插入，返回旧值(不存在返回null)；复杂度O(1)
+ * 5.remove(key)：后移删除；复杂度O(1)
+ * 6.cursor()：游标遍历，整个遍历只创建一个游标对象，通过key()、value()读取当前元素
+ *
+ * @author hanchao
+ */
+public class MyLongObjectHashMap<V> {
+
+    /**
+     * 默认容量
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * 默认负载因子
+     */
+    private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * 空槽位哨兵
+     */
+    private static final long FREE = 0;
+
+    private long[] keys;
+
+    private Object[] values;
+
+    /**
+     * 是否包含key = 0
+     */
+    private boolean hasZeroKey;
+
+    private V zeroValue;
+
+    private int mask;
+
+    private final float loadFactor;
+
+    private int threshold;
+
+    /**
+     * 实际元素个数，包含key = 0
+     */
+    private int size;
+
+    public MyLongObjectHashMap() {
+        this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 预估元素数量构造函数
+     */
+    public MyLongObjectHashMap(int expectedSize) {
+        this(expectedSize, DEFAULT_LOAD_FACTOR);
+    }
+
+    public MyLongObjectHashMap(int expectedSize, float loadFactor) {
+        this.loadFactor = loadFactor;
+        allocate(Math.max(2, HashUtil.capacityFor(expectedSize, loadFactor)));
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        threshold = Math.min(capacity - 1, (int) (capacity * loadFactor));
+    }
+
+    /**
+     * 理想下标
+     */
+    private int slot(long key) {
+        return (int) HashUtil.mix(key) & mask;
+    }
+
+    /**
+     * 查找key所在下标，不存在返回-1(key != 0)
+     */
+    private int indexOf(long key) {
+        int i = slot(key);
+        long k;
+        while ((k = keys[i]) != FREE) {
+            if (k == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        if (key == FREE) {
+            return hasZeroKey;
+        }
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * 获取value，不存在返回null
+     */
+    public V get(long key) {
+        return getOrDefault(key, null);
+    }
+
+    /**
+     * 获取value，不存在返回defaultValue
+     */
+    public V getOrDefault(long key, V defaultValue) {
+        if (key == FREE) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        int i = indexOf(key);
+        return i < 0 ? defaultValue : (V) values[i];
+    }
+
+    /**
+     * 覆盖或插入，返回旧值，不存在返回null
+     */
+    public V put(long key, V value) {
+        if (key == FREE) {
+            V old = zeroValue;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return old;
+        }
+        int i = slot(key);
+        long k;
+        while ((k = keys[i]) != FREE) {
+            if (k == key) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        insertAt(i, key, value);
+        return null;
+    }
+
+    /**
+     * 在空槽位i插入，超出阈值则二倍扩容
+     */
+    private void insertAt(int i, long key, V value) {
+        keys[i] = key;
+        values[i] = value;
+        if (++size >= threshold) {
+            resize(keys.length << 1);
+        }
+    }
+
+    private void resize(int newCapacity) {
+        if (keys.length >= HashUtil.MAXIMUM_CAPACITY) {
+            if (size >= keys.length - 1) {
+                throw new IllegalStateException("MyLongObjectHashMap is full !");
+            }
+            return;
+        }
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            long k = oldKeys[j];
+            if (k != FREE) {
+                int i = slot(k);
+                while (keys[i] != FREE) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = k;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * 删除，返回旧值，不存在返回null
+     */
+    public V remove(long key) {
+        if (key == FREE) {
+            if (!hasZeroKey) {
+                return null;
+            }
+            V old = zeroValue;
+            hasZeroKey = false;
+            zeroValue = null;
+            size--;
+            return old;
+        }
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        V old = (V) values[i];
+        size--;
+        shiftKeys(i);
+        return old;
+    }
+
+    /**
+     * 后移删除
+     */
+    private void shiftKeys(int pos) {
+        int last;
+        int slot;
+        long curr;
+        for (; ; ) {
+            pos = ((last = pos) + 1) & mask;
+            for (; ; ) {
+                if ((curr = keys[pos]) == FREE) {
+                    keys[last] = FREE;
+                    values[last] = null;
+                    return;
+                }
+                slot = slot(curr);
+                if (HashUtil.canShift(last, pos, slot)) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = curr;
+            values[last] = values[pos];
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        Arrays.fill(values, null);
+        hasZeroKey = false;
+        zeroValue = null;
+        size = 0;
+    }
+
+    /**
+     * 游标：先访问key = 0，再从后向前遍历数组；遍历期间不能修改散列表结构
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    public final class Cursor {
+        private int index = keys.length + 1;
+
+        /**
+         * 移动到下一个元素，没有则返回false
+         */
+        public boolean advance() {
+            if (index == keys.length + 1) {
+                index--;
+                if (hasZeroKey) {
+                    return true;
+                }
+            }
+            while (--index >= 0) {
+                if (keys[index] != FREE) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public long key() {
+            return index == keys.length ? FREE : keys[index];
+        }
+
+        public V value() {
+            return index == keys.length ? zeroValue : (V) values[index];
+        }
+
+        /**
+         * 修改当前元素的value
+         */
+        public void setValue(V value) {
+            if (index == keys.length) {
+                zeroValue = value;
+            } else {
+                values[index] = value;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        Cursor cursor = cursor();
+        while (cursor.advance()) {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(cursor.key()).append('=').append(cursor.value());
+        }
+        return sb.append('}').toString();
+    }
+
+    public static void main(String[] args) {
+        MyLongObjectHashMap<String> users = new MyLongObjectHashMap<>();
+        users.put(0L, "root");
+        users.put(10_000_000_000L, "hanchao");
+        users.put(-1L, "nobody");
+        System.out.println(users + " size = " + users.size());
+        System.out.println(users.get(10_000_000_000L) + " " + users.get(42L) + " " + users.getOrDefault(42L, "guest"));
+        System.out.println(users.remove(0L) + " " + users.containsKey(0L));
+    }
+}
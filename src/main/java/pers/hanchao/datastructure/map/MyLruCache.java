@@ -0,0 +1,266 @@
+package pers.hanchao.datastructure.map;
+
+import java.util.Map;
+
+/**
+ * <p>基于MyHashMap实现有界LRU缓存</P>
+ * 1.散列表的节点(LinkedNode)再通过before、after组成双向链表，head是最久未访问的节点，tail是最近访问的节点；和MyLinkedList的first、last相同
+ * 2.get(key)：命中则把节点移到链表尾部，只修改指针，不创建对象；复杂度O(1)
+ * 3.put(key,value)：新增的节点接在链表尾部，覆盖已有key视为一次访问；元素个数超过maxSize时淘汰链表头部节点；复杂度O(1)
+ * 4.remove(key)：从散列表删除后同时从链表摘除；复杂度O(1)
+ * 5.树化、红黑树转换回链表、扩容拆分红黑树时节点会被复制，复制的节点继承原节点在链表中的位置
+ * 6.EvictionListener：每淘汰一个元素回调一次；remove(key)、clear()不算淘汰
+ * 7.hitCount()、missCount()、evictionCount()、hitRate()：统计信息；containsKey(key)不影响访问顺序和统计
+ * 8.keySet()、values()、entrySet()按桶的顺序遍历，不是访问顺序；非线程安全
+ *
+ * @author hanchao
+ */
+public class MyLruCache<K, V> extends MyHashMap<K, V> {
+
+    /**
+     * 淘汰回调
+     */
+    public interface EvictionListener<K, V> {
+        void onEviction(K key, V value);
+    }
+
+    /**
+     * 最大元素个数
+     */
+    private final int maxSize;
+
+    private final EvictionListener<K, V> listener;
+
+    /**
+     * 最久未访问的节点
+     */
+    private LinkedNode head;
+
+    /**
+     * 最近访问的节点
+     */
+    private LinkedNode tail;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    public MyLruCache(int maxSize) {
+        this(maxSize, null);
+    }
+
+    public MyLruCache(int maxSize, EvictionListener<K, V> listener) {
+        //渐进式扩容会在get时迁移桶，这里使用一次性扩容，保证get不做额外工作
+        super(false);
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.listener = listener;
+    }
+
+    /**
+     * 查找并记录命中、未命中，命中则移到链表尾部
+     */
+    @Override
+    public V get(Object key) {
+        Node<K, V> node = getNode(key);
+        if (node == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        moveToLast((LinkedNode) node);
+        return node.value;
+    }
+
+    /**
+     * 逐个put：每次新增后都要检查淘汰，也不按m.size()一次性扩容到远超maxSize的容量
+     */
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        m.forEach(this::put);
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        head = tail = null;
+    }
+
+    @Override
+    Node<K, V> newNode(int hash, K key, V value, Node<K, V> next) {
+        LinkedNode node = new LinkedNode(hash, key, value, next);
+        linkLast(node);
+        return node;
+    }
+
+    @Override
+    Node<K, V> replacementNode(Node<K, V> old, Node<K, V> next) {
+        LinkedNode node = new LinkedNode(old.hash, old.key, old.value, next);
+        transferLinks((LinkedNode) old, node);
+        return node;
+    }
+
+    @Override
+    TreeNode newTreeNode(int hash, K key, V value) {
+        TreeNode node = new TreeNode(hash, key, value);
+        linkLast(node);
+        return node;
+    }
+
+    @Override
+    TreeNode replacementTreeNode(Node<K, V> old) {
+        TreeNode node = new TreeNode(old.hash, old.key, old.value);
+        transferLinks((LinkedNode) old, node);
+        return node;
+    }
+
+    @Override
+    void afterNodeAccess(Node<K, V> node) {
+        moveToLast((LinkedNode) node);
+    }
+
+    /**
+     * 超过最大元素个数时淘汰最久未访问的节点
+     */
+    @Override
+    void afterNodeInsertion() {
+        while (size() > maxSize) {
+            LinkedNode eldest = head;
+            remove(eldest.key);
+            evictions++;
+            if (listener != null) {
+                listener.onEviction(eldest.key, eldest.value);
+            }
+        }
+    }
+
+    @Override
+    void afterNodeRemoval(Node<K, V> node) {
+        unlink((LinkedNode) node);
+    }
+
+    /**
+     * 接在链表尾部
+     */
+    private void linkLast(LinkedNode node) {
+        LinkedNode last = tail;
+        node.before = last;
+        node.after = null;
+        tail = node;
+        if (last == null) {
+            head = node;
+        } else {
+            last.after = node;
+        }
+    }
+
+    /**
+     * 从链表摘除，前提：节点在链表中
+     */
+    private void unlink(LinkedNode node) {
+        LinkedNode before = node.before, after = node.after;
+        if (before == null) {
+            head = after;
+        } else {
+            before.after = after;
+        }
+        if (after == null) {
+            tail = before;
+        } else {
+            after.before = before;
+        }
+        node.before = node.after = null;
+    }
+
+    /**
+     * 移到链表尾部，已经是尾部则不做任何修改
+     */
+    private void moveToLast(LinkedNode node) {
+        if (node != tail) {
+            unlink(node);
+            linkLast(node);
+        }
+    }
+
+    /**
+     * 复制节点时，新节点替换旧节点在链表中的位置
+     */
+    private void transferLinks(LinkedNode old, LinkedNode node) {
+        LinkedNode before = node.before = old.before;
+        LinkedNode after = node.after = old.after;
+        if (before == null) {
+            head = node;
+        } else {
+            before.after = node;
+        }
+        if (after == null) {
+            tail = node;
+        } else {
+            after.before = node;
+        }
+        old.before = old.after = null;
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    public long hitCount() {
+        return hits;
+    }
+
+    public long missCount() {
+        return misses;
+    }
+
+    public long evictionCount() {
+        return evictions;
+    }
+
+    /**
+     * 命中率，没有访问过时返回0
+     */
+    public double hitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * 最久未访问的key，缓存为空时返回null
+     */
+    public K eldestKey() {
+        return head == null ? null : head.key;
+    }
+
+    public static void main(String[] args) {
+        MyLruCache<String, Integer> cache = new MyLruCache<>(3,
+                (key, value) -> System.out.println("------evict key = " + key + ",value = " + value));
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        //访问a，b成为最久未访问的key
+        System.out.println("get(a) = " + cache.get("a") + ", eldestKey = " + cache.eldestKey());
+        cache.put("d", 4);
+        System.out.println("get(b) = " + cache.get("b") + ", size = " + cache.size());
+        //覆盖c也算一次访问，淘汰a
+        cache.put("c", 30);
+        cache.put("e", 5);
+        System.out.println("keys = " + cache.keySet());
+        System.out.printf("hits %d, misses %d, evictions %d, hitRate %.2f%n",
+                cache.hitCount(), cache.missCount(), cache.evictionCount(), cache.hitRate());
+
+        //hash冲突的key(Aa、BB组合)：超过8个节点后桶会树化，淘汰顺序不受影响
+        MyLruCache<String, Integer> collide = new MyLruCache<>(10);
+        String[] parts = {"Aa", "BB"};
+        for (int i = 0; i < 16; i++) {
+            String key = parts[i >> 3 & 1] + parts[i >> 2 & 1] + parts[i >> 1 & 1] + parts[i & 1];
+            collide.put(key, i);
+        }
+        System.out.println("collide size = " + collide.size() + ", eldestKey = " + collide.eldestKey()
+                + ", evictions = " + collide.evictionCount());
+    }
+}
@@ -0,0 +1,370 @@
+package pers.hanchao.datastructure.map;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * <p>持久化散列表：槽位数组直接存放在内存映射文件(MappedByteBuffer)中，重新打开时不需要重建</P>
+ * 1.槽位布局、散列、探测、后移删除与MyOffHeapHashMap相同(AbstractFixedWidthHashMap)，只是存储换成文件映射
+ * 2.文件 = 64字节文件头 + capacity个槽位；文件头：魔数、版本、keyWidth、valueWidth、capacity、size、loadFactor、
+ *   状态(CLEAN/DIRTY)、数据区CRC32、文件头CRC32
+ * 3.open(path)：校验魔数和文件头CRC，状态为CLEAN时直接映射数据区，复杂度O(1)；
+ *   状态为DIRTY说明上次没有正常关闭(进程崩溃、断电)，按当前容量重建一遍：去掉后移删除中途留下的重复元素并重新统计size
+ * 4.第一次修改前把状态置为DIRTY并刷盘；flush()计算数据区CRC，写入size、CRC，状态置为CLEAN并刷盘；close()会先flush()
+ * 5.verify()：重新计算数据区CRC并与文件头比较，用于检查文件是否被意外改写；复杂度O(N)
+ * 6.扩容：先写入临时文件 path.resize，完成后原子重命名覆盖原文件；扩容中途崩溃不影响原文件
+ *
+ * @author hanchao
+ */
+public class MyMappedHashMap extends AbstractFixedWidthHashMap {
+
+    /**
+     * 默认容量
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private static final int MAGIC = 0x4D59484D;
+
+    private static final int VERSION = 1;
+
+    /**
+     * 文件头字节数
+     */
+    private static final int HEADER_BYTES = 64;
+
+    /**
+     * 文件头各字段的偏移量
+     */
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int KEY_WIDTH_OFFSET = 8;
+    private static final int VALUE_WIDTH_OFFSET = 12;
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int SIZE_OFFSET = 20;
+    private static final int LOAD_FACTOR_OFFSET = 24;
+    private static final int STATE_OFFSET = 28;
+    private static final int DATA_CRC_OFFSET = 32;
+    private static final int HEADER_CRC_OFFSET = 40;
+
+    /**
+     * 文件状态
+     */
+    private static final int CLEAN = 0;
+    private static final int DIRTY = 1;
+
+    private final Path path;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer header;
+
+    /**
+     * 扩容过程中的临时文件
+     */
+    private FileChannel resizeChannel;
+
+    private MappedByteBuffer resizeHeader;
+
+    /**
+     * 文件头状态是否为DIRTY
+     */
+    private boolean dirty;
+
+    /**
+     * 打开时是否做过崩溃恢复
+     */
+    private boolean recovered;
+
+    private MyMappedHashMap(Path path, int keyWidth, int valueWidth, float loadFactor) {
+        super(keyWidth, valueWidth, loadFactor);
+        this.path = path;
+    }
+
+    /**
+     * 创建新文件，已存在则覆盖
+     */
+    public static MyMappedHashMap create(Path path, int keyWidth, int valueWidth) throws IOException {
+        return create(path, keyWidth, valueWidth, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * 创建新文件，已存在则覆盖；expectedSize为预估元素数量
+     */
+    public static MyMappedHashMap create(Path path, int keyWidth, int valueWidth, int expectedSize) throws IOException {
+        MyMappedHashMap map = new MyMappedHashMap(path, keyWidth, valueWidth, DEFAULT_LOAD_FACTOR);
+        try {
+            map.allocate(Math.max(2, HashUtil.capacityFor(expectedSize, DEFAULT_LOAD_FACTOR)));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        map.flush();
+        return map;
+    }
+
+    /**
+     * 打开已有文件：正常关闭的文件直接映射，O(1)；未正常关闭的文件重建一遍
+     */
+    public static MyMappedHashMap open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer header = null;
+        try {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not a MyMappedHashMap file: " + path);
+            }
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            if (header.getInt(MAGIC_OFFSET) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IOException("Not a MyMappedHashMap file: " + path);
+            }
+            if (header.getLong(HEADER_CRC_OFFSET) != headerCrc(header)) {
+                throw new IOException("Corrupted header: " + path);
+            }
+            int keyWidth = header.getInt(KEY_WIDTH_OFFSET);
+            int valueWidth = header.getInt(VALUE_WIDTH_OFFSET);
+            int capacity = header.getInt(CAPACITY_OFFSET);
+            MyMappedHashMap map = new MyMappedHashMap(path, keyWidth, valueWidth,
+                    header.getFloat(LOAD_FACTOR_OFFSET));
+            if (channel.size() < HEADER_BYTES + (long) capacity * map.slotSize) {
+                throw new IOException("Truncated file: " + path);
+            }
+            map.channel = channel;
+            map.header = header;
+            map.attach(map.mapSegments(channel, capacity), capacity, header.getInt(SIZE_OFFSET));
+            if (header.getInt(STATE_OFFSET) != CLEAN) {
+                //上次没有正常关闭，重建后写回CLEAN
+                map.dirty = true;
+                map.recovered = true;
+                map.rebuild();
+                map.flush();
+            }
+            return map;
+        } catch (IOException | RuntimeException e) {
+            free(header);
+            channel.close();
+            if (e instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e).getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 打开时是否做过崩溃恢复
+     */
+    public boolean wasRecovered() {
+        return recovered;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * 映射数据区，每段一个MappedByteBuffer；映射超出文件长度时文件自动扩展，新增部分全为0
+     */
+    private ByteBuffer[] mapSegments(FileChannel channel, int capacity) throws IOException {
+        int slotsPerSegment = slotsPerSegment(capacity, slotSize);
+        int segmentBytes = slotsPerSegment * slotSize;
+        ByteBuffer[] segments = new ByteBuffer[capacity / slotsPerSegment];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + (long) i * segmentBytes,
+                    segmentBytes);
+        }
+        return segments;
+    }
+
+    /**
+     * 创建文件时映射到path，扩容或重建时映射到临时文件
+     */
+    @Override
+    protected ByteBuffer[] newSegments(int capacity, int segmentCount, int segmentBytes) {
+        Path target = channel == null ? path : resizePath();
+        try {
+            FileChannel newChannel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            MappedByteBuffer newHeader = newChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            writeHeader(newHeader, capacity, 0, DIRTY, 0);
+            if (channel == null) {
+                channel = newChannel;
+                header = newHeader;
+                dirty = true;
+            } else {
+                resizeChannel = newChannel;
+                resizeHeader = newHeader;
+            }
+            return mapSegments(newChannel, capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 临时文件写完后刷盘，原子重命名覆盖原文件；已映射的内存在重命名后仍然有效
+     */
+    @Override
+    protected void afterRehash(ByteBuffer[] oldSegments) {
+        try {
+            writeHeader(resizeHeader, capacity(), size(), DIRTY, 0);
+            force(segments());
+            resizeHeader.force();
+            releaseSegments(oldSegments);
+            free(header);
+            channel.close();
+            Files.move(resizePath(), path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = resizeChannel;
+            header = resizeHeader;
+            resizeChannel = null;
+            resizeHeader = null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 解除映射
+     */
+    @Override
+    protected void releaseSegments(ByteBuffer[] segments) {
+        for (ByteBuffer segment : segments) {
+            free(segment);
+        }
+    }
+
+    /**
+     * 第一次修改前把文件头状态置为DIRTY并刷盘
+     */
+    @Override
+    protected void beforeModify() {
+        if (!dirty) {
+            dirty = true;
+            writeHeader(header, capacity(), size(), DIRTY, header.getLong(DATA_CRC_OFFSET));
+            header.force();
+        }
+    }
+
+    /**
+     * 数据区和文件头刷盘，文件头状态置为CLEAN
+     */
+    public void flush() {
+        ensureOpen();
+        force(segments());
+        writeHeader(header, capacity(), size(), CLEAN, dataCrc());
+        header.force();
+        dirty = false;
+    }
+
+    /**
+     * 数据区CRC是否与最近一次flush()记录的一致；flush()之后又有修改时返回false
+     */
+    public boolean verify() {
+        ensureOpen();
+        return !dirty && header.getLong(DATA_CRC_OFFSET) == dataCrc();
+    }
+
+    /**
+     * 占用的映射内存字节数(含文件头)
+     */
+    @Override
+    public long offHeapBytes() {
+        return isOpen() ? HEADER_BYTES + super.offHeapBytes() : 0;
+    }
+
+    /**
+     * flush()后解除映射并关闭文件，可重复调用
+     */
+    @Override
+    public void close() {
+        if (!isOpen()) {
+            return;
+        }
+        flush();
+        super.close();
+        free(header);
+        header = null;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path resizePath() {
+        return path.resolveSibling(path.getFileName() + ".resize");
+    }
+
+    private long dataCrc() {
+        CRC32 crc = new CRC32();
+        for (ByteBuffer segment : segments()) {
+            crc.update(segment.duplicate());
+        }
+        return crc.getValue();
+    }
+
+    private void writeHeader(MappedByteBuffer header, int capacity, int size, int state, long dataCrc) {
+        header.putInt(MAGIC_OFFSET, MAGIC);
+        header.putInt(VERSION_OFFSET, VERSION);
+        header.putInt(KEY_WIDTH_OFFSET, keyWidth);
+        header.putInt(VALUE_WIDTH_OFFSET, valueWidth);
+        header.putInt(CAPACITY_OFFSET, capacity);
+        header.putInt(SIZE_OFFSET, size);
+        header.putFloat(LOAD_FACTOR_OFFSET, loadFactor);
+        header.putInt(STATE_OFFSET, state);
+        header.putLong(DATA_CRC_OFFSET, dataCrc);
+        header.putLong(HEADER_CRC_OFFSET, headerCrc(header));
+    }
+
+    /**
+     * 文件头CRC：覆盖HEADER_CRC_OFFSET之前的全部字段
+     */
+    private static long headerCrc(ByteBuffer header) {
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < HEADER_CRC_OFFSET; i++) {
+            crc.update(header.get(i));
+        }
+        return crc.getValue();
+    }
+
+    private static void force(ByteBuffer[] segments) {
+        for (ByteBuffer segment : segments) {
+            ((MappedByteBuffer) segment).force();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path path = args.length > 0 ? Paths.get(args[0]) : Files.createTempFile("my-mapped-hash-map", ".db");
+        int n = 1_000_000;
+        ByteBuffer key = ByteBuffer.allocate(8);
+        ByteBuffer value = ByteBuffer.allocate(8);
+
+        //1.创建并写入
+        long start = System.nanoTime();
+        try (MyMappedHashMap map = MyMappedHashMap.create(path, 8, 8)) {
+            for (long i = 0; i < n; i++) {
+                key.putLong(0, i);
+                value.putLong(0, i * i);
+                map.put(key.array(), value.array());
+            }
+            System.out.println(map.memoryReport());
+        }
+        System.out.printf("build %.1f ms, file %d bytes%n", (System.nanoTime() - start) / 1e6, Files.size(path));
+
+        //2.重新打开：不需要重建
+        start = System.nanoTime();
+        try (MyMappedHashMap map = MyMappedHashMap.open(path)) {
+            System.out.printf("reopen %.3f ms, size = %d, recovered = %s, verify = %s%n",
+                    (System.nanoTime() - start) / 1e6, map.size(), map.wasRecovered(), map.verify());
+            key.putLong(0, 1000);
+            byte[] dst = new byte[8];
+            System.out.println("get(1000) = " + (map.get(key.array(), dst) ? ByteBuffer.wrap(dst).getLong() : null));
+        }
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,531 @@
+package pers.hanchao.datastructure.map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * <p>一对多散列表：key -> 多个value，代替Map<K, List<V>></P>
+ * 1.与MyOpenHashMap相同的开放地址法：keys[]、values[]、counts[]三个平行数组，下标 = mix(hashCode) & (capacity - 1)，
+ *   keys[i] == null表示空槽位，所以不支持null键；value可以为null，同一个key下可以重复
+ * 2.value内联存放：counts[i] == 1时values[i]就是唯一的value，不创建数组；counts[i] >= 2时values[i]是该key独占的Object[]，
+ *   只存放value本身，没有List对象和Node对象；是否为数组只看counts，不看value的类型
+ * 3.put(key,value)：追加到该key的数组末尾，数组满时1.5倍扩容(从2开始)；复杂度均摊O(1)
+ * 4.valueCount(key)、get(key,index)：线性探测找到key后直接读数组；复杂度O(1)
+ * 5.remove(key,value)：删除第一个相等的value，后面的value前移保持顺序，只剩一个时退回内联；
+ *   最后一个value删除后key也被后移删除；复杂度O(1) + O(该key的value数)
+ * 6.removeAll(key)：删除key和它的全部value，返回删除的value数；复杂度O(1)
+ * 7.size()是value总数，keyCount()是key个数；trimToSize()把每个key的数组收缩到刚好容纳
+ * 8.遍历不创建对象：forEach(BiConsumer)、forEachValue(key,Consumer)直接遍历数组；
+ *   cursor()按(key,value)逐对遍历，只创建一个游标，reset()后可以重复使用；get(key)返回的是复制出来的List
+ *
+ * @author hanchao
+ */
+public class MyMultimap<K, V> {
+
+    /**
+     * 默认容量
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * 默认负载因子
+     */
+    private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * key第二个value到来时，数组的初始长度
+     */
+    private static final int INITIAL_VALUE_CAPACITY = 2;
+
+    /**
+     * 键数组，null表示空槽位
+     */
+    private Object[] keys;
+
+    /**
+     * 值数组：counts[i] == 1时是value本身，counts[i] >= 2时是Object[]
+     */
+    private Object[] values;
+
+    /**
+     * 每个key的value个数
+     */
+    private int[] counts;
+
+    /**
+     * 负载因子
+     */
+    private final float loadFactor;
+
+    /**
+     * 扩容阈值
+     */
+    private int threshold;
+
+    /**
+     * key个数
+     */
+    private int keyCount;
+
+    /**
+     * value总数
+     */
+    private int size;
+
+    public MyMultimap() {
+        this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 预估key数量构造函数
+     */
+    public MyMultimap(int expectedKeys) {
+        this(expectedKeys, DEFAULT_LOAD_FACTOR);
+    }
+
+    public MyMultimap(int expectedKeys, float loadFactor) {
+        int capacity = HashUtil.capacityFor(expectedKeys, loadFactor);
+        this.loadFactor = loadFactor;
+        allocate(Math.max(capacity, 2));
+    }
+
+    /**
+     * 分配数组，并计算阈值
+     */
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        counts = new int[capacity];
+        threshold = Math.min(capacity - 1, (int) (capacity * loadFactor));
+    }
+
+    /**
+     * 线性探测查找key所在下标，不存在返回-1
+     */
+    private int indexOf(Object key) {
+        if (key == null) {
+            return -1;
+        }
+        int i = HashUtil.probe(keys, key);
+        return i >= 0 ? i : -1;
+    }
+
+    /**
+     * 槽位i上第index个value
+     */
+    private V valueAt(int i, int index) {
+        return counts[i] == 1 ? (V) values[i] : (V) ((Object[]) values[i])[index];
+    }
+
+    /**
+     * 槽位i上第一个与value相等的下标，不存在返回-1
+     */
+    private int valueIndexOf(int i, Object value) {
+        if (counts[i] == 1) {
+            return Objects.equals(values[i], value) ? 0 : -1;
+        }
+        Object[] array = (Object[]) values[i];
+        for (int j = 0; j < counts[i]; j++) {
+            if (Objects.equals(array[j], value)) {
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * value总数
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * key个数
+     */
+    public int keyCount() {
+        return keyCount;
+    }
+
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    public boolean containsEntry(Object key, Object value) {
+        int i = indexOf(key);
+        return i >= 0 && valueIndexOf(i, value) >= 0;
+    }
+
+    /**
+     * key的value个数，不存在返回0
+     */
+    public int valueCount(Object key) {
+        int i = indexOf(key);
+        return i < 0 ? 0 : counts[i];
+    }
+
+    /**
+     * key的第index个value(按put顺序)
+     */
+    public V get(Object key, int index) {
+        int i = indexOf(key);
+        int count = i < 0 ? 0 : counts[i];
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+        return valueAt(i, index);
+    }
+
+    /**
+     * key的全部value，复制为新的List；不存在返回空List
+     */
+    public List<V> get(Object key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return Collections.emptyList();
+        }
+        List<V> list = new ArrayList<>(counts[i]);
+        for (int j = 0; j < counts[i]; j++) {
+            list.add(valueAt(i, j));
+        }
+        return list;
+    }
+
+    /**
+     * 追加一个value
+     */
+    public void put(K key, V value) {
+        Objects.requireNonNull(key, "MyMultimap does not permit null keys !");
+        //1.线性探测
+        int i = HashUtil.probe(keys, key);
+        //2.相同key则追加到数组末尾
+        if (i >= 0) {
+            append(i, value);
+            size++;
+            return;
+        }
+        //3.空槽位则插入，第一个value内联存放
+        i = -i - 1;
+        keys[i] = key;
+        values[i] = value;
+        counts[i] = 1;
+        size++;
+        //4.超出阈值则二倍扩容
+        if (++keyCount >= threshold) {
+            resize(keys.length << 1);
+        }
+    }
+
+    /**
+     * 追加到槽位i：第二个value到来时把内联的value移入数组；数组满时1.5倍扩容
+     */
+    private void append(int i, V value) {
+        int count = counts[i];
+        Object[] array;
+        if (count == 1) {
+            array = new Object[INITIAL_VALUE_CAPACITY];
+            array[0] = values[i];
+            values[i] = array;
+        } else {
+            array = (Object[]) values[i];
+            if (count == array.length) {
+                if (count == Integer.MAX_VALUE - 8) {
+                    throw new OutOfMemoryError("Too many values for one key !");
+                }
+                int newLength = (int) Math.min(Integer.MAX_VALUE - 8L, count + (long) (count >> 1));
+                values[i] = array = Arrays.copyOf(array, newLength);
+            }
+        }
+        array[count] = value;
+        counts[i] = count + 1;
+    }
+
+    /**
+     * 删除key下第一个与value相等的元素
+     */
+    public boolean remove(Object key, Object value) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return false;
+        }
+        int j = valueIndexOf(i, value);
+        if (j < 0) {
+            return false;
+        }
+        int count = counts[i];
+        size--;
+        //1.最后一个value，删除key
+        if (count == 1) {
+            removeAt(i);
+            return true;
+        }
+        //2.后面的value前移
+        Object[] array = (Object[]) values[i];
+        System.arraycopy(array, j + 1, array, j, count - j - 1);
+        array[--count] = null;
+        counts[i] = count;
+        //3.只剩一个时退回内联
+        if (count == 1) {
+            values[i] = array[0];
+        }
+        return true;
+    }
+
+    /**
+     * 删除key和它的全部value，返回删除的value数
+     */
+    public int removeAll(Object key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return 0;
+        }
+        int count = counts[i];
+        size -= count;
+        removeAt(i);
+        return count;
+    }
+
+    /**
+     * 删除指定下标的key
+     */
+    private void removeAt(int pos) {
+        keyCount--;
+        shiftKeys(pos);
+    }
+
+    /**
+     * 扩容：所有key按新掩码重新放置，value数组随key一起搬移，不复制
+     */
+    private void resize(int newCapacity) {
+        if (keys.length >= HashUtil.MAXIMUM_CAPACITY) {
+            if (keyCount >= keys.length - 1) {
+                throw new IllegalStateException("MyMultimap is full !");
+            }
+            return;
+        }
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        int[] oldCounts = counts;
+        allocate(newCapacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            Object k = oldKeys[j];
+            if (k != null) {
+                int i = HashUtil.freeSlot(keys, k);
+                keys[i] = k;
+                values[i] = oldValues[j];
+                counts[i] = oldCounts[j];
+            }
+        }
+    }
+
+    /**
+     * 后移删除：把后面探测链上可以前移的元素逐个前移补位，最后空出的槽位置空
+     */
+    private void shiftKeys(int pos) {
+        for (int next; (next = HashUtil.shiftSource(keys, pos)) >= 0; pos = next) {
+            keys[pos] = keys[next];
+            values[pos] = values[next];
+            counts[pos] = counts[next];
+        }
+        keys[pos] = null;
+        values[pos] = null;
+        counts[pos] = 0;
+    }
+
+    /**
+     * 把每个key的value数组收缩到刚好容纳
+     */
+    public void trimToSize() {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null && counts[i] > 1 && ((Object[]) values[i]).length > counts[i]) {
+                values[i] = Arrays.copyOf((Object[]) values[i], counts[i]);
+            }
+        }
+    }
+
+    public void clear() {
+        if (keyCount > 0) {
+            Arrays.fill(keys, null);
+            Arrays.fill(values, null);
+            Arrays.fill(counts, 0);
+            keyCount = 0;
+            size = 0;
+        }
+    }
+
+    /**
+     * 遍历所有(key,value)，不创建对象；遍历期间不能增删
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        for (int i = keys.length - 1; i >= 0; i--) {
+            K key = (K) keys[i];
+            if (key == null) {
+                continue;
+            }
+            if (counts[i] == 1) {
+                action.accept(key, (V) values[i]);
+            } else {
+                Object[] array = (Object[]) values[i];
+                for (int j = 0; j < counts[i]; j++) {
+                    action.accept(key, (V) array[j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按put顺序遍历key的全部value，不创建对象
+     */
+    public void forEachValue(Object key, Consumer<? super V> action) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return;
+        }
+        if (counts[i] == 1) {
+            action.accept((V) values[i]);
+        } else {
+            Object[] array = (Object[]) values[i];
+            for (int j = 0; j < counts[i]; j++) {
+                action.accept((V) array[j]);
+            }
+        }
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * 游标：按(key,value)逐对遍历，同一个key的value按put顺序连续出现；遍历期间不能增删
+     */
+    public final class Cursor {
+        private int index = keys.length;
+        /**
+         * 当前value在该key数组中的下标
+         */
+        private int valueIndex;
+
+        /**
+         * 移动到下一对(key,value)，没有则返回false
+         */
+        public boolean advance() {
+            if (index >= 0 && index < keys.length && ++valueIndex < counts[index]) {
+                return true;
+            }
+            valueIndex = 0;
+            while (--index >= 0) {
+                if (keys[index] != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public K key() {
+            return (K) keys[index];
+        }
+
+        public V value() {
+            return valueAt(index, valueIndex);
+        }
+
+        /**
+         * 修改当前value
+         */
+        public void setValue(V value) {
+            if (counts[index] == 1) {
+                values[index] = value;
+            } else {
+                ((Object[]) values[index])[valueIndex] = value;
+            }
+        }
+
+        /**
+         * 回到起点，重复使用同一个游标
+         */
+        public Cursor reset() {
+            index = keys.length;
+            valueIndex = 0;
+            return this;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = keys.length - 1; i >= 0; i--) {
+            if (keys[i] == null) {
+                continue;
+            }
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(keys[i]).append("=[");
+            for (int j = 0; j < counts[i]; j++) {
+                if (j > 0) {
+                    sb.append(", ");
+                }
+                sb.append(valueAt(i, j));
+            }
+            sb.append(']');
+        }
+        return sb.append('}').toString();
+    }
+
+    public static void main(String[] args) {
+        MyMultimap<String, String> teams = new MyMultimap<>();
+        teams.put("java", "alice");
+        teams.put("java", "bob");
+        teams.put("go", "carol");
+        teams.put("java", "dave");
+        teams.put("rust", null);
+        System.out.println(teams + " keyCount = " + teams.keyCount() + " size = " + teams.size());
+        System.out.println(teams.valueCount("java") + " " + teams.get("java", 2) + " " + teams.get("go"));
+        System.out.println(teams.containsEntry("java", "bob") + " " + teams.containsEntry("rust", null));
+
+        System.out.println(teams.remove("java", "bob") + " " + teams.get("java"));
+        System.out.println(teams.remove("go", "carol") + " " + teams.containsKey("go"));
+        System.out.println(teams.removeAll("java") + " " + teams + " size = " + teams.size());
+
+        //按key分组：与HashMap<Integer, List<Integer>>.computeIfAbsent对比，多数key只有一两个value
+        int n = 1 << 20;
+        Integer[] boxed = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            boxed[i] = i;
+        }
+        for (int round = 0; round < 3; round++) {
+            MyMultimap<Integer, Integer> multimap = new MyMultimap<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                multimap.put(boxed[(i * 31) & (n / 2 - 1)], boxed[i]);
+            }
+            long multimapNanos = System.nanoTime() - start;
+
+            Map<Integer, List<Integer>> lists = new HashMap<>();
+            start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                lists.computeIfAbsent(boxed[(i * 31) & (n / 2 - 1)], key -> new ArrayList<>()).add(boxed[i]);
+            }
+            long listsNanos = System.nanoTime() - start;
+
+            long sum = 0;
+            MyMultimap<Integer, Integer>.Cursor cursor = multimap.cursor();
+            while (cursor.advance()) {
+                sum += cursor.value();
+            }
+            System.out.printf("round %d: MyMultimap.put %.1f ns/op, HashMap<K, List<V>> %.1f ns/op, keys %d, sum %d%n",
+                    round, (double) multimapNanos / n, (double) listsNanos / n, multimap.keyCount(), sum);
+        }
+    }
+}
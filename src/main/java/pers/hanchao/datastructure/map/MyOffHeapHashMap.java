@@ -0,0 +1,95 @@
+package pers.hanchao.datastructure.map;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>堆外散列表：定长二进制key和value存放在直接内存(DirectByteBuffer)中，开放地址法 + 线性探测</P>
+ * 1.槽位布局、散列、探测、后移删除见AbstractFixedWidthHashMap；整个数组不在Java堆中，不产生Node对象，不参与GC
+ * 2.单个ByteBuffer最大2GB，所以数组按段存放：每段是2的幂次方个槽位且不超过1GB
+ * 3.扩容时分配新的直接内存，搬移完成后立即释放旧内存；大量数据时应该预估容量，避免扩容时新旧两份直接内存同时存在
+ * 4.close()：显式释放直接内存，不必等待GC回收DirectByteBuffer；关闭后再访问抛出IllegalStateException
+ * 5.offHeapBytes()、memoryReport()：报告直接内存占用；直接内存总量受-XX:MaxDirectMemorySize限制
+ *
+ * @author hanchao
+ */
+public class MyOffHeapHashMap extends AbstractFixedWidthHashMap {
+
+    /**
+     * 默认容量
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    public MyOffHeapHashMap(int keyWidth, int valueWidth) {
+        this(keyWidth, valueWidth, DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 预估元素数量构造函数
+     */
+    public MyOffHeapHashMap(int keyWidth, int valueWidth, int expectedSize) {
+        this(keyWidth, valueWidth, expectedSize, DEFAULT_LOAD_FACTOR);
+    }
+
+    public MyOffHeapHashMap(int keyWidth, int valueWidth, int expectedSize, float loadFactor) {
+        super(keyWidth, valueWidth, loadFactor);
+        allocate(Math.max(2, HashUtil.capacityFor(expectedSize, loadFactor)));
+    }
+
+    /**
+     * 分配直接内存，直接内存初始全为0，即全部槽位为FREE
+     */
+    @Override
+    protected ByteBuffer[] newSegments(int capacity, int segmentCount, int segmentBytes) {
+        ByteBuffer[] segments = new ByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = ByteBuffer.allocateDirect(segmentBytes);
+        }
+        return segments;
+    }
+
+    /**
+     * 立即释放直接内存
+     */
+    @Override
+    protected void releaseSegments(ByteBuffer[] segments) {
+        for (ByteBuffer segment : segments) {
+            free(segment);
+        }
+    }
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Runtime runtime = Runtime.getRuntime();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+
+        //8字节key(long) -> 16字节value(两个long)
+        try (MyOffHeapHashMap map = new MyOffHeapHashMap(8, 16, n)) {
+            ByteBuffer key = ByteBuffer.allocate(8);
+            ByteBuffer value = ByteBuffer.allocate(16);
+            for (long i = 0; i < n; i++) {
+                key.putLong(0, i * 31);
+                value.putLong(0, i).putLong(8, -i);
+                map.put(key.array(), value.array());
+            }
+            long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+            System.out.println(map.memoryReport());
+            System.out.printf("heap growth %.2fMB%n", (heapAfter - heapBefore) / 1024.0 / 1024.0);
+
+            byte[] dst = new byte[16];
+            key.putLong(0, 42 * 31);
+            System.out.println("get(42 * 31) = " + map.get(key.array(), dst) + ", value = "
+                    + ByteBuffer.wrap(dst).getLong(0));
+            System.out.println("remove = " + map.remove(key.array()) + ", containsKey = " + map.containsKey(key.array())
+                    + ", size = " + map.size());
+
+            long sum = 0;
+            byte[] k = new byte[8];
+            Cursor cursor = map.cursor();
+            while (cursor.advance()) {
+                cursor.key(k);
+                sum += ByteBuffer.wrap(k).getLong();
+            }
+            System.out.println("sum of keys = " + sum + ", expected = " + (31L * n * (n - 1) / 2 - 42 * 31));
+        }
+    }
+}
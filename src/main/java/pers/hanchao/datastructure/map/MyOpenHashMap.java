@@ -0,0 +1,497 @@
+package pers.hanchao.datastructure.map;
+
+import java.util.*;
+
+/**
+ * <p>用开放地址法(线性探测)实现散列表</P>
+ * 1.keys[]和values[]两个平行数组存放键值，没有Node对象，查找时沿数组顺序探测，对CPU缓存友好
+ * 2.capacity = keys.length = 2的幂次方，下标 = mix(hashCode) & (capacity - 1)；keys[i] == null表示空槽位，所以不支持null键
+ * 3.threshold = capacity * loadFactor，当size >= threshold时，二倍扩容；至少保留一个空槽位，保证探测一定能终止
+ * 4.containsKey(key)、get(key): 从下标开始向后线性探测，遇到相同key命中，遇到空槽位未命中；复杂度O(1)
+ * 5.put(key,value): 探测到相同key则覆盖，探测到空槽位则插入；复杂度O(1)
+ * 6.remove(key): 后移删除(backward-shift)，把后面"不在自己理想位置"的元素逐个前移补位，不需要墓碑标记；复杂度O(1)
+ * 7.containsValue(value): 遍历数组；复杂度O(N)
+ * 8.keySet()、values()、entrySet()：视图，直接遍历数组，不额外保存元素
+ *
+ * @author hanchao
+ */
+public class MyOpenHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V> {
+
+    /**
+     * 默认容量
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * 默认负载因子
+     */
+    private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * 键数组，null表示空槽位
+     */
+    private Object[] keys;
+
+    /**
+     * 值数组，与键数组下标一一对应
+     */
+    private Object[] values;
+
+    /**
+     * 负载因子
+     */
+    private final float loadFactor;
+
+    /**
+     * 扩容阈值
+     */
+    private int threshold;
+
+    /**
+     * 实际元素个数
+     */
+    private int size;
+
+    /**
+     * 结构修改次数，用于迭代器快速失败
+     */
+    private int modCount;
+
+    private Set<K> keySetView;
+
+    private Collection<V> valuesView;
+
+    private Set<Entry<K, V>> entrySetView;
+
+    public MyOpenHashMap() {
+        this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 预估元素数量构造函数
+     */
+    public MyOpenHashMap(int expectedSize) {
+        this(expectedSize, DEFAULT_LOAD_FACTOR);
+    }
+
+    public MyOpenHashMap(int expectedSize, float loadFactor) {
+        int capacity = HashUtil.capacityFor(expectedSize, loadFactor);
+        this.loadFactor = loadFactor;
+        allocate(Math.max(capacity, 2));
+    }
+
+    /**
+     * 分配数组，并计算阈值
+     */
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        threshold = Math.min(capacity - 1, (int) (capacity * loadFactor));
+    }
+
+    /**
+     * 线性探测查找key所在下标，不存在返回-1
+     */
+    private int indexOf(Object key) {
+        if (key == null) {
+            return -1;
+        }
+        int i = HashUtil.probe(keys, key);
+        return i >= 0 ? i : -1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null && Objects.equals(values[i], value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public V get(Object key) {
+        int i = indexOf(key);
+        return i < 0 ? null : (V) values[i];
+    }
+
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(key, "MyOpenHashMap does not permit null keys !");
+        //1.线性探测
+        int i = HashUtil.probe(keys, key);
+        //2.相同key则覆盖
+        if (i >= 0) {
+            V old = (V) values[i];
+            values[i] = value;
+            return old;
+        }
+        //3.空槽位则插入
+        i = -i - 1;
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        modCount++;
+        //4.超出阈值则二倍扩容
+        if (size >= threshold) {
+            resize(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * 扩容：所有元素按新掩码重新放置；旧数组中不存在重复key，所以找到空槽位直接放入即可
+     */
+    private void resize(int newCapacity) {
+        if (keys.length >= HashUtil.MAXIMUM_CAPACITY) {
+            if (size >= keys.length - 1) {
+                throw new IllegalStateException("MyOpenHashMap is full !");
+            }
+            return;
+        }
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            Object k = oldKeys[j];
+            if (k != null) {
+                int i = HashUtil.freeSlot(keys, k);
+                keys[i] = k;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        V old = (V) values[i];
+        removeAt(i);
+        return old;
+    }
+
+    /**
+     * 删除指定下标的元素
+     */
+    private void removeAt(int pos) {
+        size--;
+        modCount++;
+        shiftKeys(pos);
+    }
+
+    /**
+     * 后移删除：从空出的槽位last向后扫描，遇到理想下标不在(last, pos]之间的元素，就把它前移到last补位，
+     * 然后把它原来的位置当作新的空槽位继续，直到遇到空槽位为止
+     */
+    private void shiftKeys(int pos) {
+        for (int next; (next = HashUtil.shiftSource(keys, pos)) >= 0; pos = next) {
+            keys[pos] = keys[next];
+            values[pos] = values[next];
+        }
+        keys[pos] = null;
+        values[pos] = null;
+    }
+
+    @Override
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, null);
+            Arrays.fill(values, null);
+            size = 0;
+            modCount++;
+        }
+    }
+
+    @Override
+    public Set<K> keySet() {
+        if (keySetView == null) {
+            keySetView = new KeySet();
+        }
+        return keySetView;
+    }
+
+    @Override
+    public Collection<V> values() {
+        if (valuesView == null) {
+            valuesView = new Values();
+        }
+        return valuesView;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if (entrySetView == null) {
+            entrySetView = new EntrySet();
+        }
+        return entrySetView;
+    }
+
+    /**
+     * 数组迭代器：从后向前遍历数组。
+     * 删除时后移补位的元素都来自更大的下标(已经遍历过)；只有绕回数组头部时，
+     * 才会把尚未遍历的元素移到已遍历区域，这些元素暂存在wrapped中，最后再遍历
+     */
+    private abstract class HashIterator<T> implements Iterator<T> {
+        /**
+         * 下一个待检查的下标 + 1，小于0时表示正在遍历wrapped
+         */
+        int pos = keys.length;
+        /**
+         * 上一次返回元素的下标，-1表示不可删除
+         */
+        int last = -1;
+        /**
+         * 上一次返回的元素是否来自wrapped
+         */
+        Object lastWrappedKey;
+        int remaining = size;
+        List<Object> wrapped;
+        int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        int nextIndex() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            remaining--;
+            lastWrappedKey = null;
+            while (--pos >= 0) {
+                if (keys[pos] != null) {
+                    return last = pos;
+                }
+            }
+            //数组已遍历完，剩余的元素在wrapped中
+            lastWrappedKey = wrapped.get(-pos - 1);
+            return last = indexOf(lastWrappedKey);
+        }
+
+        @Override
+        public void remove() {
+            if (last == -1) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (lastWrappedKey != null) {
+                //数组已遍历完，位置移动不再影响遍历
+                MyOpenHashMap.this.remove(lastWrappedKey);
+            } else {
+                size--;
+                shiftKeys(last);
+            }
+            modCount++;
+            expectedModCount = modCount;
+            last = -1;
+        }
+
+        /**
+         * 与外部类的shiftKeys相同，额外记录从未遍历区域移到已遍历区域的元素
+         */
+        private void shiftKeys(int pos) {
+            for (int next; (next = HashUtil.shiftSource(keys, pos)) >= 0; pos = next) {
+                if (next < pos) {
+                    if (wrapped == null) {
+                        wrapped = new ArrayList<>(2);
+                    }
+                    wrapped.add(keys[next]);
+                }
+                keys[pos] = keys[next];
+                values[pos] = values[next];
+            }
+            keys[pos] = null;
+            values[pos] = null;
+        }
+    }
+
+    private final class KeyIterator extends HashIterator<K> {
+        @Override
+        public K next() {
+            return (K) keys[nextIndex()];
+        }
+    }
+
+    private final class ValueIterator extends HashIterator<V> {
+        @Override
+        public V next() {
+            return (V) values[nextIndex()];
+        }
+    }
+
+    private final class EntryIterator extends HashIterator<Entry<K, V>> {
+        @Override
+        public Entry<K, V> next() {
+            return new MapEntry(nextIndex());
+        }
+    }
+
+    /**
+     * 数组槽位上的键值对，创建时记录键值；setValue时key还在map中则写回数组(原槽位或重新查找)，
+     * 已被删除则只修改这个键值对，不会重新插入
+     */
+    private final class MapEntry extends SimpleEntry<K, V> {
+        final int index;
+
+        MapEntry(int index) {
+            super((K) keys[index], (V) values[index]);
+            this.index = index;
+        }
+
+        @Override
+        public V setValue(V value) {
+            int i = keys[index] == getKey() ? index : indexOf(getKey());
+            if (i >= 0) {
+                values[i] = value;
+            }
+            return super.setValue(value);
+        }
+    }
+
+    private final class KeySet extends AbstractSet<K> {
+        @Override
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            int i = indexOf(o);
+            if (i < 0) {
+                return false;
+            }
+            removeAt(i);
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            MyOpenHashMap.this.clear();
+        }
+    }
+
+    private final class Values extends AbstractCollection<V> {
+        @Override
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsValue(o);
+        }
+
+        @Override
+        public void clear() {
+            MyOpenHashMap.this.clear();
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<K, V>> {
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            int i = indexOf(e.getKey());
+            return i >= 0 && Objects.equals(values[i], e.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!contains(o)) {
+                return false;
+            }
+            removeAt(indexOf(((Entry<?, ?>) o).getKey()));
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            MyOpenHashMap.this.clear();
+        }
+    }
+
+    public static void main(String[] args) {
+        MyOpenHashMap<String, String> map = new MyOpenHashMap<>();
+
+        System.out.println(map.size());
+        System.out.println(map.isEmpty());
+
+        map.put("code", "1");
+        map.put("reason", "param is not right");
+        map.put("data", null);
+        map.put("size", "10");
+
+        System.out.println(map.containsKey("code"));
+        System.out.println(map.containsKey("size"));
+        System.out.println(map.containsKey("java"));
+        System.out.println(map.get("reason"));
+        System.out.println(map.keySet());
+        System.out.println(map.values());
+
+        System.out.println(map.remove("size"));
+        System.out.println(map.containsKey("size"));
+        System.out.println(map.keySet());
+        System.out.println(map.values());
+        System.out.println(map.entrySet());
+
+        //遍历过程中删除
+        for (int i = 0; i < 1000; i++) {
+            map.put("key" + i, "value" + i);
+        }
+        map.keySet().removeIf(key -> key.hashCode() % 3 == 0);
+        System.out.println(map.size() + " " + map.keySet().stream().noneMatch(key -> key.hashCode() % 3 == 0));
+    }
+}
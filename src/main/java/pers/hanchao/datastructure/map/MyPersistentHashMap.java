@@ -0,0 +1,661 @@
+package pers.hanchao.datastructure.map;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>持久化散列表：哈希数组映射前缀树(HAMT，Hash Array Mapped Trie)，不可变，修改时返回新版本</P>
+ * 1.hash = mix(hashCode)，每层取5位(0~31)，32叉树，最多7层；不存在的子节点不占空间：bitmap记录哪些位置存在，
+ *   数组只存放存在的元素，下标 = bitCount(bitmap & (bit - 1))
+ * 2.节点数组按[key, value]成对存放，key == null表示value是子节点；hash完全相同的key放入CollisionNode顺序查找
+ * 3.get(key)、containsKey(key)：逐层按5位下标向下查找；复杂度O(log32 N)，接近O(1)
+ * 4.plus(key,value)、minus(key)：只复制从根到目标位置路径上的节点(最多7个)，其余节点新旧版本共享(结构共享)；复杂度O(log32 N)
+ * 5.快照：每个版本本身就是不可变的快照，创建快照复杂度O(1)；读线程持有旧版本遍历，不阻塞写线程，也不需要整体复制
+ *   用法：写线程 map = map.plus(k, v)(map为volatile字段)，读线程 MyPersistentHashMap snapshot = map 后随意读取、遍历
+ * 6.Transient：可变的批量构建模式，asTransient()创建，修改时原地修改本次创建的节点(节点记录edit标记)，不复制路径；
+ *   persistent()之后转换为不可变版本，transient不能再使用；transient非线程安全
+ * 7.实现Map接口的只读操作，Map的put、remove等修改方法抛出UnsupportedOperationException；不支持null键
+ *
+ * @author hanchao
+ */
+public class MyPersistentHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V> {
+
+    private static final MyPersistentHashMap<?, ?> EMPTY = new MyPersistentHashMap<>(null, 0);
+
+    /**
+     * 每层的位数
+     */
+    private static final int BITS = 5;
+
+    private static final int MASK = (1 << BITS) - 1;
+
+    /**
+     * 找不到时find的返回值
+     */
+    private static final Object NOT_FOUND = new Object();
+
+    /**
+     * 修改结果：是否新增、是否删除，以及被覆盖或删除的旧值
+     */
+    static final class Box {
+        boolean added;
+        boolean removed;
+        Object oldValue;
+    }
+
+    /**
+     * 树节点
+     */
+    abstract static class Node {
+        /**
+         * 创建该节点的transient标记，null表示不可变
+         */
+        final Object edit;
+
+        Node(Object edit) {
+            this.edit = edit;
+        }
+
+        /**
+         * 节点是否属于当前transient，可以原地修改
+         */
+        boolean editable(Object edit) {
+            return edit != null && this.edit == edit;
+        }
+
+        abstract Object find(int shift, int hash, Object key);
+
+        /**
+         * 插入或覆盖，没有变化时返回this
+         */
+        abstract Node assoc(Object edit, int shift, int hash, Object key, Object value, Box box);
+
+        /**
+         * 删除，没有变化时返回this，节点为空时返回null
+         */
+        abstract Node without(Object edit, int shift, int hash, Object key, Box box);
+    }
+
+    /**
+     * 位图节点：bitmap的第i位表示子位置i存在，array按bitmap中的顺序存放[key, value]或[null, 子节点]
+     */
+    static final class BitmapNode extends Node {
+        int bitmap;
+        Object[] array;
+
+        BitmapNode(Object edit, int bitmap, Object[] array) {
+            super(edit);
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return NOT_FOUND;
+            }
+            int i = index(bit) << 1;
+            Object k = array[i];
+            if (k == null) {
+                return ((Node) array[i + 1]).find(shift + BITS, hash, key);
+            }
+            return k == key || k.equals(key) ? array[i + 1] : NOT_FOUND;
+        }
+
+        @Override
+        Node assoc(Object edit, int shift, int hash, Object key, Object value, Box box) {
+            int bit = bitpos(hash, shift);
+            int i = index(bit) << 1;
+            if ((bitmap & bit) != 0) {
+                Object k = array[i];
+                Object v = array[i + 1];
+                //1.子节点：递归插入
+                if (k == null) {
+                    Node child = ((Node) v).assoc(edit, shift + BITS, hash, key, value, box);
+                    return child == v ? this : set(edit, i + 1, child);
+                }
+                //2.相同key：覆盖
+                if (k == key || k.equals(key)) {
+                    box.oldValue = v;
+                    return v == value ? this : set(edit, i + 1, value);
+                }
+                //3.不同key：两个元素下沉到新的子节点
+                box.added = true;
+                Node child = createNode(edit, shift + BITS, k, v, hash, key, value);
+                BitmapNode node = editable(edit) ? this : copy(edit);
+                node.array[i] = null;
+                node.array[i + 1] = child;
+                return node;
+            }
+            //4.空位置：插入[key, value]
+            box.added = true;
+            int n = Integer.bitCount(bitmap) << 1;
+            if (editable(edit) && n + 2 <= array.length) {
+                System.arraycopy(array, i, array, i + 2, n - i);
+                array[i] = key;
+                array[i + 1] = value;
+                bitmap |= bit;
+                return this;
+            }
+            //transient预留空位，后续插入不必再分配数组
+            Object[] newArray = new Object[edit != null ? n + 8 : n + 2];
+            System.arraycopy(array, 0, newArray, 0, i);
+            newArray[i] = key;
+            newArray[i + 1] = value;
+            System.arraycopy(array, i, newArray, i + 2, n - i);
+            if (editable(edit)) {
+                array = newArray;
+                bitmap |= bit;
+                return this;
+            }
+            return new BitmapNode(edit, bitmap | bit, newArray);
+        }
+
+        @Override
+        Node without(Object edit, int shift, int hash, Object key, Box box) {
+            int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int i = index(bit) << 1;
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) {
+                Node child = ((Node) v).without(edit, shift + BITS, hash, key, box);
+                if (child == v) {
+                    return this;
+                }
+                if (child == null) {
+                    return remove(edit, bit, i);
+                }
+                //子节点只剩一个元素时上提到本层，保持树尽量矮
+                if (child instanceof BitmapNode) {
+                    BitmapNode c = (BitmapNode) child;
+                    if (Integer.bitCount(c.bitmap) == 1 && c.array[0] != null) {
+                        BitmapNode node = editable(edit) ? this : copy(edit);
+                        node.array[i] = c.array[0];
+                        node.array[i + 1] = c.array[1];
+                        return node;
+                    }
+                }
+                return set(edit, i + 1, child);
+            }
+            if (k == key || k.equals(key)) {
+                box.removed = true;
+                box.oldValue = v;
+                return remove(edit, bit, i);
+            }
+            return this;
+        }
+
+        /**
+         * 删除第i个位置的[key, value]，为空时返回null
+         */
+        private Node remove(Object edit, int bit, int i) {
+            if (bitmap == bit) {
+                return null;
+            }
+            int n = Integer.bitCount(bitmap) << 1;
+            if (editable(edit)) {
+                System.arraycopy(array, i + 2, array, i, n - i - 2);
+                array[n - 2] = null;
+                array[n - 1] = null;
+                bitmap ^= bit;
+                return this;
+            }
+            Object[] newArray = new Object[n - 2];
+            System.arraycopy(array, 0, newArray, 0, i);
+            System.arraycopy(array, i + 2, newArray, i, n - i - 2);
+            return new BitmapNode(edit, bitmap ^ bit, newArray);
+        }
+
+        private BitmapNode set(Object edit, int i, Object value) {
+            BitmapNode node = editable(edit) ? this : copy(edit);
+            node.array[i] = value;
+            return node;
+        }
+
+        private BitmapNode copy(Object edit) {
+            int n = Integer.bitCount(bitmap) << 1;
+            return new BitmapNode(edit, bitmap, Arrays.copyOf(array, edit != null ? n + 8 : n));
+        }
+    }
+
+    /**
+     * hash完全相同的key：顺序存放在array中
+     */
+    static final class CollisionNode extends Node {
+        final int hash;
+        int count;
+        Object[] array;
+
+        CollisionNode(Object edit, int hash, int count, Object[] array) {
+            super(edit);
+            this.hash = hash;
+            this.count = count;
+            this.array = array;
+        }
+
+        int indexOf(Object key) {
+            for (int i = 0; i < count << 1; i += 2) {
+                Object k = array[i];
+                if (k == key || k.equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int i = indexOf(key);
+            return i < 0 ? NOT_FOUND : array[i + 1];
+        }
+
+        @Override
+        Node assoc(Object edit, int shift, int hash, Object key, Object value, Box box) {
+            //hash不同：本节点下沉到位图节点中
+            if (hash != this.hash) {
+                return new BitmapNode(edit, bitpos(this.hash, shift), new Object[]{null, this})
+                        .assoc(edit, shift, hash, key, value, box);
+            }
+            int i = indexOf(key);
+            if (i >= 0) {
+                box.oldValue = array[i + 1];
+                if (array[i + 1] == value) {
+                    return this;
+                }
+                CollisionNode node = editable(edit) ? this : copy(edit, 0);
+                node.array[i + 1] = value;
+                return node;
+            }
+            box.added = true;
+            int n = count << 1;
+            CollisionNode node = editable(edit) && n + 2 <= array.length ? this : copy(edit, 2);
+            node.array[n] = key;
+            node.array[n + 1] = value;
+            node.count++;
+            return node;
+        }
+
+        @Override
+        Node without(Object edit, int shift, int hash, Object key, Box box) {
+            int i = indexOf(key);
+            if (i < 0) {
+                return this;
+            }
+            box.removed = true;
+            box.oldValue = array[i + 1];
+            if (count == 1) {
+                return null;
+            }
+            //只剩一个元素时转换为位图节点，由上层上提
+            if (count == 2) {
+                int j = i == 0 ? 2 : 0;
+                return new BitmapNode(edit, bitpos(this.hash, shift), new Object[]{array[j], array[j + 1]});
+            }
+            int n = count << 1;
+            CollisionNode node = editable(edit) ? this : copy(edit, 0);
+            node.array[i] = node.array[n - 2];
+            node.array[i + 1] = node.array[n - 1];
+            node.array[n - 2] = null;
+            node.array[n - 1] = null;
+            node.count--;
+            return node;
+        }
+
+        private CollisionNode copy(Object edit, int extra) {
+            return new CollisionNode(edit, hash, count, Arrays.copyOf(array, (count << 1) + extra));
+        }
+    }
+
+    /**
+     * 根节点，空表为null
+     */
+    private final Node root;
+
+    private final int size;
+
+    private Set<Entry<K, V>> entrySetView;
+
+    private MyPersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * 空表
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> MyPersistentHashMap<K, V> empty() {
+        return (MyPersistentHashMap<K, V>) EMPTY;
+    }
+
+    /**
+     * 由普通Map批量构建
+     */
+    public static <K, V> MyPersistentHashMap<K, V> of(Map<? extends K, ? extends V> map) {
+        return MyPersistentHashMap.<K, V>empty().plusAll(map);
+    }
+
+    private static int hash(Object key) {
+        return HashUtil.mix(key.hashCode());
+    }
+
+    /**
+     * 第shift位开始的5位对应的bitmap位
+     */
+    private static int bitpos(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /**
+     * 两个不同的key下沉到新的子节点：hash相同则创建CollisionNode，否则继续按下一层的5位分开
+     */
+    private static Node createNode(Object edit, int shift, Object k1, Object v1, int h2, Object k2, Object v2) {
+        int h1 = hash(k1);
+        if (h1 == h2) {
+            return new CollisionNode(edit, h1, 2, new Object[]{k1, v1, k2, v2});
+        }
+        Box box = new Box();
+        BitmapNode empty = new BitmapNode(edit, 0, new Object[0]);
+        return empty.assoc(edit, shift, h1, k1, v1, box).assoc(edit, shift, h2, k2, v2, box);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && root != null && root.find(0, hash(key), key) != NOT_FOUND;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (key == null || root == null) {
+            return null;
+        }
+        Object value = root.find(0, hash(key), key);
+        return value == NOT_FOUND ? null : (V) value;
+    }
+
+    /**
+     * 返回插入或覆盖之后的新版本，原版本不变；value没有变化时返回this
+     */
+    public MyPersistentHashMap<K, V> plus(K key, V value) {
+        Objects.requireNonNull(key, "MyPersistentHashMap does not permit null keys !");
+        Box box = new Box();
+        Node base = root != null ? root : new BitmapNode(null, 0, new Object[0]);
+        Node newRoot = base.assoc(null, 0, hash(key), key, value, box);
+        return newRoot == root ? this : new MyPersistentHashMap<>(newRoot, box.added ? size + 1 : size);
+    }
+
+    /**
+     * 返回删除之后的新版本，原版本不变；key不存在时返回this
+     */
+    public MyPersistentHashMap<K, V> minus(Object key) {
+        if (key == null || root == null) {
+            return this;
+        }
+        Box box = new Box();
+        Node newRoot = root.without(null, 0, hash(key), key, box);
+        if (!box.removed) {
+            return this;
+        }
+        return newRoot == null ? empty() : new MyPersistentHashMap<>(newRoot, size - 1);
+    }
+
+    /**
+     * 批量插入：内部使用transient，只分配一次路径
+     */
+    public MyPersistentHashMap<K, V> plusAll(Map<? extends K, ? extends V> map) {
+        Transient<K, V> builder = asTransient();
+        for (Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            builder.put(entry.getKey(), entry.getValue());
+        }
+        return builder.persistent();
+    }
+
+    /**
+     * 创建可变的批量构建器，当前版本不受影响
+     */
+    public Transient<K, V> asTransient() {
+        return new Transient<>(root, size);
+    }
+
+    /**
+     * 可变的批量构建模式：本transient创建的节点带有edit标记，再次修改时原地修改
+     */
+    public static final class Transient<K, V> {
+        private Object edit = new Object();
+        private Node root;
+        private int size;
+        private final Box box = new Box();
+
+        private Transient(Node root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+
+        private void ensureEditable() {
+            if (edit == null) {
+                throw new IllegalStateException("Transient used after persistent() call");
+            }
+        }
+
+        /**
+         * 插入或覆盖，返回旧值
+         */
+        @SuppressWarnings("unchecked")
+        public V put(K key, V value) {
+            ensureEditable();
+            Objects.requireNonNull(key, "MyPersistentHashMap does not permit null keys !");
+            box.added = false;
+            box.oldValue = null;
+            Node base = root != null ? root : new BitmapNode(edit, 0, new Object[8]);
+            root = base.assoc(edit, 0, hash(key), key, value, box);
+            if (box.added) {
+                size++;
+            }
+            return (V) box.oldValue;
+        }
+
+        /**
+         * 删除，返回旧值
+         */
+        @SuppressWarnings("unchecked")
+        public V remove(Object key) {
+            ensureEditable();
+            if (key == null || root == null) {
+                return null;
+            }
+            box.removed = false;
+            box.oldValue = null;
+            root = root.without(edit, 0, hash(key), key, box);
+            if (box.removed) {
+                size--;
+            }
+            return (V) box.oldValue;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V get(Object key) {
+            ensureEditable();
+            if (key == null || root == null) {
+                return null;
+            }
+            Object value = root.find(0, hash(key), key);
+            return value == NOT_FOUND ? null : (V) value;
+        }
+
+        public int size() {
+            ensureEditable();
+            return size;
+        }
+
+        /**
+         * 转换为不可变版本：清空edit标记，之后本transient创建的节点不会再被修改
+         */
+        public MyPersistentHashMap<K, V> persistent() {
+            ensureEditable();
+            edit = null;
+            return size == 0 ? empty() : new MyPersistentHashMap<>(root, size);
+        }
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if (entrySetView == null) {
+            entrySetView = new AbstractSet<Entry<K, V>>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    if (!(o instanceof Entry)) {
+                        return false;
+                    }
+                    Entry<?, ?> e = (Entry<?, ?>) o;
+                    Object key = e.getKey();
+                    return containsKey(key) && Objects.equals(get(key), e.getValue());
+                }
+            };
+        }
+        return entrySetView;
+    }
+
+    /**
+     * 深度优先遍历：栈中保存每一层的数组和下一个位置；树最多7层位图节点 + 1层CollisionNode
+     */
+    private final class EntryIterator implements Iterator<Entry<K, V>> {
+        final Object[][] arrays = new Object[8][];
+        final int[] positions = new int[8];
+        final int[] ends = new int[8];
+        int depth = -1;
+        Object nextKey;
+        Object nextValue;
+
+        EntryIterator() {
+            if (root != null) {
+                push(root);
+            }
+            advance();
+        }
+
+        private void push(Node node) {
+            depth++;
+            if (node instanceof BitmapNode) {
+                arrays[depth] = ((BitmapNode) node).array;
+                ends[depth] = Integer.bitCount(((BitmapNode) node).bitmap) << 1;
+            } else {
+                arrays[depth] = ((CollisionNode) node).array;
+                ends[depth] = ((CollisionNode) node).count << 1;
+            }
+            positions[depth] = 0;
+        }
+
+        private void advance() {
+            nextKey = null;
+            while (depth >= 0) {
+                int i = positions[depth];
+                if (i == ends[depth]) {
+                    arrays[depth--] = null;
+                    continue;
+                }
+                positions[depth] = i + 2;
+                Object k = arrays[depth][i];
+                Object v = arrays[depth][i + 1];
+                if (k == null) {
+                    push((Node) v);
+                } else {
+                    nextKey = k;
+                    nextValue = v;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextKey != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Entry<K, V> next() {
+            if (nextKey == null) {
+                throw new NoSuchElementException();
+            }
+            Entry<K, V> entry = new SimpleImmutableEntry<>((K) nextKey, (V) nextValue);
+            advance();
+            return entry;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        MyPersistentHashMap<String, Integer> v1 = MyPersistentHashMap.<String, Integer>empty().plus("a", 1).plus("b", 2);
+        MyPersistentHashMap<String, Integer> v2 = v1.plus("c", 3).minus("a");
+        System.out.println("v1 = " + v1 + ", v2 = " + v2);
+
+        //批量构建：transient与逐个plus对比
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Integer[] keys = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = i;
+        }
+        for (int round = 0; round < 3; round++) {
+            long begin = System.nanoTime();
+            MyPersistentHashMap<Integer, Integer> slow = empty();
+            for (Integer key : keys) {
+                slow = slow.plus(key, key);
+            }
+            long middle = System.nanoTime();
+            Transient<Integer, Integer> builder = MyPersistentHashMap.<Integer, Integer>empty().asTransient();
+            for (Integer key : keys) {
+                builder.put(key, key);
+            }
+            MyPersistentHashMap<Integer, Integer> fast = builder.persistent();
+            long end = System.nanoTime();
+            System.out.printf("build %d: plus %.1fms, transient %.1fms, equal %b%n",
+                    n, (middle - begin) / 1e6, (end - middle) / 1e6, slow.equals(fast));
+        }
+
+        //读线程遍历快照，写线程同时修改，互不阻塞
+        AtomicReference<MyPersistentHashMap<Integer, Integer>> current = new AtomicReference<>(empty());
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 200_000; i++) {
+                current.set(current.get().plus(i, i));
+            }
+        });
+        writer.start();
+        int snapshots = 0;
+        while (writer.isAlive()) {
+            MyPersistentHashMap<Integer, Integer> snapshot = current.get();
+            int count = 0;
+            for (Integer ignored : snapshot.keySet()) {
+                count++;
+            }
+            if (count != snapshot.size()) {
+                throw new IllegalStateException("inconsistent snapshot");
+            }
+            snapshots++;
+        }
+        writer.join();
+        System.out.println("iterated " + snapshots + " consistent snapshots, final size = " + current.get().size());
+    }
+}
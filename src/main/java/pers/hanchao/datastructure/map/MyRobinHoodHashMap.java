@@ -0,0 +1,451 @@
+package pers.hanchao.datastructure.map;
+
+import java.util.*;
+
+/**
+ * <p>用Robin Hood散列(开放地址法的一种)实现散列表</P>
+ * 1.keys[]、values[]、distances[]三个平行数组；distances[i] = 元素所在下标与理想下标的距离(探测距离)，-1表示空槽位
+ * 2.劫富济贫：插入时如果待插入元素的探测距离大于当前槽位元素的探测距离("更穷")，就抢占这个槽位，被挤出的元素继续向后探测
+ * 3.所有元素的探测距离都很接近，方差很小，所以get的尾延迟很稳定，可以用更高的负载因子(默认0.875)
+ * 4.get(key)、containsKey(key): 向后探测，当前槽位的探测距离小于已走过的距离时，key不可能在后面，提前结束；复杂度O(1)
+ * 5.put(key,value): 探测距离相等时才可能是相同key，相同则覆盖；否则在第一个"更富"的槽位开始劫富济贫；复杂度O(1)
+ * 6.remove(key): 后移删除，后续探测距离大于0的元素逐个前移一位，探测距离-1；复杂度O(1)
+ * 7.maxProbeDistance()：遍历数组求最大探测距离，复杂度O(N)；meanProbeDistance()：增量维护探测距离总和，复杂度O(1)
+ *
+ * @author hanchao
+ */
+public class MyRobinHoodHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V> {
+
+    /**
+     * 默认容量
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * 默认负载因子，Robin Hood的探测距离方差小，可以比线性探测更高
+     */
+    private static final float DEFAULT_LOAD_FACTOR = 0.875f;
+
+    /**
+     * 空槽位标记
+     */
+    private static final int EMPTY = -1;
+
+    private Object[] keys;
+
+    private Object[] values;
+
+    /**
+     * 每个槽位的探测距离，EMPTY表示空槽位
+     */
+    private int[] distances;
+
+    /**
+     * 掩码 = capacity - 1
+     */
+    private int mask;
+
+    private final float loadFactor;
+
+    private int threshold;
+
+    private int size;
+
+    /**
+     * 所有元素探测距离之和
+     */
+    private long totalDistance;
+
+    private int modCount;
+
+    private Set<Entry<K, V>> entrySetView;
+
+    public MyRobinHoodHashMap() {
+        this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 预估元素数量构造函数
+     */
+    public MyRobinHoodHashMap(int expectedSize) {
+        this(expectedSize, DEFAULT_LOAD_FACTOR);
+    }
+
+    public MyRobinHoodHashMap(int expectedSize, float loadFactor) {
+        int capacity = HashUtil.capacityFor(expectedSize, loadFactor);
+        this.loadFactor = loadFactor;
+        allocate(Math.max(capacity, 2));
+    }
+
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        distances = new int[capacity];
+        Arrays.fill(distances, EMPTY);
+        mask = capacity - 1;
+        threshold = Math.min(capacity - 1, (int) (capacity * loadFactor));
+        totalDistance = 0;
+    }
+
+    /**
+     * 理想下标
+     */
+    private int slot(Object key) {
+        return HashUtil.mix(key.hashCode()) & mask;
+    }
+
+    /**
+     * 查找key所在下标，不存在返回-1
+     */
+    private int indexOf(Object key) {
+        if (key == null) {
+            return -1;
+        }
+        int i = slot(key);
+        for (int dist = 0; ; dist++) {
+            int d = distances[i];
+            //空槽位或者遇到更"富"的元素，key不可能在后面
+            if (d < dist) {
+                return -1;
+            }
+            //相同的key必然有相同的探测距离
+            if (d == dist) {
+                Object k = keys[i];
+                if (k == key || k.equals(key)) {
+                    return i;
+                }
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        for (int i = 0; i < keys.length; i++) {
+            if (distances[i] != EMPTY && Objects.equals(values[i], value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public V get(Object key) {
+        int i = indexOf(key);
+        return i < 0 ? null : (V) values[i];
+    }
+
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(key, "MyRobinHoodHashMap does not permit null keys !");
+        //1.查找相同key，遇到空槽位或更"富"的元素则停止
+        int i = slot(key);
+        int dist = 0;
+        for (; ; ) {
+            int d = distances[i];
+            if (d < dist) {
+                break;
+            }
+            if (d == dist) {
+                Object k = keys[i];
+                if (k == key || k.equals(key)) {
+                    V old = (V) values[i];
+                    values[i] = value;
+                    return old;
+                }
+            }
+            i = (i + 1) & mask;
+            dist++;
+        }
+        //2.从停止的槽位开始劫富济贫
+        insert(i, dist, key, value);
+        size++;
+        modCount++;
+        //3.超出阈值则二倍扩容
+        if (size >= threshold) {
+            resize(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * 从下标i开始插入探测距离为dist的元素，遇到更"富"的元素就交换，直到放入空槽位
+     */
+    private void insert(int i, int dist, Object key, Object value) {
+        for (; ; ) {
+            int d = distances[i];
+            if (d == EMPTY) {
+                keys[i] = key;
+                values[i] = value;
+                distances[i] = dist;
+                totalDistance += dist;
+                return;
+            }
+            if (d < dist) {
+                //抢占槽位，被挤出的元素继续向后探测
+                Object k = keys[i];
+                Object v = values[i];
+                keys[i] = key;
+                values[i] = value;
+                distances[i] = dist;
+                totalDistance += dist - d;
+                key = k;
+                value = v;
+                dist = d;
+            }
+            i = (i + 1) & mask;
+            dist++;
+        }
+    }
+
+    /**
+     * 扩容：所有元素按新掩码重新插入
+     */
+    private void resize(int newCapacity) {
+        if (keys.length >= HashUtil.MAXIMUM_CAPACITY) {
+            if (size >= keys.length - 1) {
+                throw new IllegalStateException("MyRobinHoodHashMap is full !");
+            }
+            return;
+        }
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        int[] oldDistances = distances;
+        allocate(newCapacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldDistances[j] != EMPTY) {
+                insert(slot(oldKeys[j]), 0, oldKeys[j], oldValues[j]);
+            }
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        V old = (V) values[i];
+        removeAt(i, null);
+        return old;
+    }
+
+    /**
+     * 后移删除：后续探测距离大于0的元素逐个前移一位，直到遇到空槽位或者已在理想下标的元素。
+     * 迭代器从后向前遍历，如果元素从数组头部绕回移到数组末尾，则记录到迭代器的wrapped中
+     */
+    private void removeAt(int pos, HashIterator iterator) {
+        totalDistance -= distances[pos];
+        int next = (pos + 1) & mask;
+        while (distances[next] > 0) {
+            if (iterator != null && next < pos) {
+                iterator.addWrapped(keys[next]);
+            }
+            keys[pos] = keys[next];
+            values[pos] = values[next];
+            distances[pos] = distances[next] - 1;
+            totalDistance--;
+            pos = next;
+            next = (next + 1) & mask;
+        }
+        keys[pos] = null;
+        values[pos] = null;
+        distances[pos] = EMPTY;
+        size--;
+        modCount++;
+    }
+
+    @Override
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, null);
+            Arrays.fill(values, null);
+            Arrays.fill(distances, EMPTY);
+            size = 0;
+            totalDistance = 0;
+            modCount++;
+        }
+    }
+
+    /**
+     * 最大探测距离，即最坏情况下get需要多探测的槽位数
+     */
+    public int maxProbeDistance() {
+        int max = 0;
+        for (int d : distances) {
+            max = Math.max(max, d);
+        }
+        return max;
+    }
+
+    /**
+     * 平均探测距离
+     */
+    public double meanProbeDistance() {
+        return size == 0 ? 0 : (double) totalDistance / size;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if (entrySetView == null) {
+            entrySetView = new EntrySet();
+        }
+        return entrySetView;
+    }
+
+    /**
+     * 数组迭代器：从后向前遍历数组，删除时前移的元素都来自已遍历区域，绕回的元素最后再遍历
+     */
+    private final class HashIterator implements Iterator<Entry<K, V>> {
+        int pos = keys.length;
+        int last = -1;
+        Object lastWrappedKey;
+        int remaining = size;
+        List<Object> wrapped;
+        int expectedModCount = modCount;
+
+        void addWrapped(Object key) {
+            if (wrapped == null) {
+                wrapped = new ArrayList<>(2);
+            }
+            wrapped.add(key);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            remaining--;
+            lastWrappedKey = null;
+            while (--pos >= 0) {
+                if (distances[pos] != EMPTY) {
+                    return new MapEntry(last = pos);
+                }
+            }
+            lastWrappedKey = wrapped.get(-pos - 1);
+            return new MapEntry(last = indexOf(lastWrappedKey));
+        }
+
+        @Override
+        public void remove() {
+            if (last == -1) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(last, lastWrappedKey == null ? this : null);
+            expectedModCount = modCount;
+            last = -1;
+        }
+    }
+
+    /**
+     * 数组槽位上的键值对，创建时记录键值；setValue时key还在map中则写回数组(原槽位或重新查找)，
+     * 已被删除则只修改这个键值对，不会重新插入
+     */
+    private final class MapEntry extends SimpleEntry<K, V> {
+        final int index;
+
+        MapEntry(int index) {
+            super((K) keys[index], (V) values[index]);
+            this.index = index;
+        }
+
+        @Override
+        public V setValue(V value) {
+            int i = keys[index] == getKey() ? index : indexOf(getKey());
+            if (i >= 0) {
+                values[i] = value;
+            }
+            return super.setValue(value);
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<K, V>> {
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new HashIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            int i = indexOf(e.getKey());
+            return i >= 0 && Objects.equals(values[i], e.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!contains(o)) {
+                return false;
+            }
+            removeAt(indexOf(((Entry<?, ?>) o).getKey()), null);
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            MyRobinHoodHashMap.this.clear();
+        }
+    }
+
+    public static void main(String[] args) {
+        MyRobinHoodHashMap<String, String> map = new MyRobinHoodHashMap<>();
+
+        map.put("code", "1");
+        map.put("reason", "param is not right");
+        map.put("data", null);
+        map.put("size", "10");
+
+        System.out.println(map.containsKey("code"));
+        System.out.println(map.containsKey("java"));
+        System.out.println(map.get("reason"));
+        System.out.println(map.remove("size"));
+        System.out.println(map.containsKey("size"));
+        System.out.println(map.entrySet());
+
+        //高负载下的探测距离
+        MyRobinHoodHashMap<Integer, Integer> numbers = new MyRobinHoodHashMap<>();
+        for (int i = 0; i < 1_000_000; i++) {
+            numbers.put(i * 31, i);
+        }
+        System.out.println("size = " + numbers.size() + ", max probe = " + numbers.maxProbeDistance()
+                + ", mean probe = " + numbers.meanProbeDistance());
+        numbers.keySet().removeIf(key -> key % 3 == 0);
+        System.out.println("size = " + numbers.size() + ", max probe = " + numbers.maxProbeDistance()
+                + ", mean probe = " + numbers.meanProbeDistance());
+    }
+}
@@ -0,0 +1,473 @@
+package pers.hanchao.datastructure.map;
+
+import java.util.*;
+
+/**
+ * <p>用SwissTable(分组控制字节 + SWAR)实现散列表</P>
+ * 1.keys[]、values[]存放键值，另有一组控制字节，每个槽位1个字节：0xxxxxxx = 有元素(低7位是hash片段h2)，0x80 = 空，0xFE = 已删除(墓碑)
+ * 2.8个槽位为一组，一组的8个控制字节打包成一个long，controls[g]就是第g组，一次读取即可拿到整组元数据
+ * 3.hash = mix(hashCode)，h1 = hash >>> 7 决定从哪一组开始探测，h2 = hash & 0x7F 存入控制字节；组与组之间按三角数序列二次探测
+ * 4.SWAR(SIMD within a register)：用long的位运算一次比较8个控制字节，只有h2相同的槽位才去比较key，
+ *   未命中时通常一次long比较就能确定"这一组没有、并且有空槽位"，直接返回，几乎不碰key数组
+ * 5.get(key)、containsKey(key)：逐组匹配h2，组内有空槽位则结束；复杂度O(1)
+ * 6.put(key,value)：先查找，不存在则放入探测序列上第一个空槽位或墓碑；复杂度O(1)
+ * 7.remove(key)：所在组还有空槽位时直接置空，否则置为墓碑，保证后续探测不会提前结束；复杂度O(1)
+ * 8.growthLeft = 还能占用多少个空槽位(墓碑不计入)，为0时扩容；墓碑太多时按原容量重新散列清理墓碑
+ *
+ * @author hanchao
+ */
+public class MySwissHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V> {
+
+    /**
+     * 每组槽位数
+     */
+    private static final int GROUP_WIDTH = 8;
+
+    /**
+     * 默认容量
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * 最大负载 = 7/8
+     */
+    private static final float MAX_LOAD_FACTOR = 0.875f;
+
+    /**
+     * 控制字节：空
+     */
+    private static final int EMPTY = 0x80;
+
+    /**
+     * 控制字节：已删除
+     */
+    private static final int DELETED = 0xFE;
+
+    /**
+     * 每个字节的最低位
+     */
+    private static final long LSBS = 0x0101010101010101L;
+
+    /**
+     * 每个字节的最高位
+     */
+    private static final long MSBS = 0x8080808080808080L;
+
+    /**
+     * 全部为EMPTY的一组
+     */
+    private static final long EMPTY_GROUP = LSBS * EMPTY;
+
+    private Object[] keys;
+
+    private Object[] values;
+
+    /**
+     * 控制字节，每8个打包为一个long
+     */
+    private long[] controls;
+
+    /**
+     * 组掩码 = 组数 - 1
+     */
+    private int groupMask;
+
+    private int size;
+
+    /**
+     * 还可以占用的空槽位数量
+     */
+    private int growthLeft;
+
+    private int modCount;
+
+    private Set<Entry<K, V>> entrySetView;
+
+    public MySwissHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * 预估元素数量构造函数
+     */
+    public MySwissHashMap(int expectedSize) {
+        allocate(Math.max(GROUP_WIDTH, HashUtil.capacityFor(expectedSize, MAX_LOAD_FACTOR)));
+    }
+
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        controls = new long[capacity / GROUP_WIDTH];
+        Arrays.fill(controls, EMPTY_GROUP);
+        groupMask = controls.length - 1;
+        growthLeft = (int) (capacity * MAX_LOAD_FACTOR) - size;
+    }
+
+    /**
+     * 组内与h2相同的字节，对应字节的最高位为1；可能有极少的误报，调用方需要再比较key
+     */
+    private static long match(long group, int h2) {
+        long x = group ^ (LSBS * h2);
+        return (x - LSBS) & ~x & MSBS;
+    }
+
+    /**
+     * 组内为EMPTY的字节：最高位为1且次高位为0
+     */
+    private static long matchEmpty(long group) {
+        return group & ~(group << 1) & MSBS;
+    }
+
+    /**
+     * 组内为EMPTY或DELETED的字节：最高位为1
+     */
+    private static long matchEmptyOrDeleted(long group) {
+        return group & MSBS;
+    }
+
+    /**
+     * 组内有元素的字节：最高位为0
+     */
+    private static long matchFull(long group) {
+        return ~group & MSBS;
+    }
+
+    /**
+     * 匹配结果中最低的一个字节在组内的位置
+     */
+    private static int lowestIndex(long matches) {
+        return Long.numberOfTrailingZeros(matches) >>> 3;
+    }
+
+    private static int h1(int hash) {
+        return hash >>> 7;
+    }
+
+    private static int h2(int hash) {
+        return hash & 0x7F;
+    }
+
+    /**
+     * 读取槽位的控制字节
+     */
+    private int control(int index) {
+        return (int) (controls[index / GROUP_WIDTH] >>> ((index % GROUP_WIDTH) << 3)) & 0xFF;
+    }
+
+    /**
+     * 写入槽位的控制字节
+     */
+    private void setControl(int index, int control) {
+        int g = index / GROUP_WIDTH;
+        int shift = (index % GROUP_WIDTH) << 3;
+        controls[g] = (controls[g] & ~(0xFFL << shift)) | ((long) control << shift);
+    }
+
+    /**
+     * 查找key所在下标，不存在返回-1
+     */
+    private int indexOf(Object key) {
+        if (key == null) {
+            return -1;
+        }
+        int hash = HashUtil.mix(key.hashCode());
+        int h2 = h2(hash);
+        int g = h1(hash) & groupMask;
+        for (int step = 1; ; step++) {
+            long group = controls[g];
+            //1.只比较h2相同的槽位
+            for (long m = match(group, h2); m != 0; m &= m - 1) {
+                int index = g * GROUP_WIDTH + lowestIndex(m);
+                Object k = keys[index];
+                if (k == key || key.equals(k)) {
+                    return index;
+                }
+            }
+            //2.本组有空槽位，说明key从未越过这一组
+            if (matchEmpty(group) != 0) {
+                return -1;
+            }
+            //3.三角数序列探测下一组，组数为2的幂次方时可以遍历所有组
+            g = (g + step) & groupMask;
+        }
+    }
+
+    /**
+     * 探测序列上第一个空槽位或墓碑
+     */
+    private int findInsertSlot(int hash) {
+        int g = h1(hash) & groupMask;
+        for (int step = 1; ; step++) {
+            long m = matchEmptyOrDeleted(controls[g]);
+            if (m != 0) {
+                return g * GROUP_WIDTH + lowestIndex(m);
+            }
+            g = (g + step) & groupMask;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        for (int g = 0; g < controls.length; g++) {
+            for (long m = matchFull(controls[g]); m != 0; m &= m - 1) {
+                if (Objects.equals(values[g * GROUP_WIDTH + lowestIndex(m)], value)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public V get(Object key) {
+        int i = indexOf(key);
+        return i < 0 ? null : (V) values[i];
+    }
+
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(key, "MySwissHashMap does not permit null keys !");
+        //1.存在则覆盖
+        int i = indexOf(key);
+        if (i >= 0) {
+            V old = (V) values[i];
+            values[i] = value;
+            return old;
+        }
+        //2.放入第一个空槽位或墓碑，占用空槽位时消耗growthLeft
+        int hash = HashUtil.mix(key.hashCode());
+        i = findInsertSlot(hash);
+        if (growthLeft == 0 && control(i) == EMPTY) {
+            rehash();
+            i = findInsertSlot(hash);
+        }
+        if (control(i) == EMPTY) {
+            growthLeft--;
+        }
+        setControl(i, h2(hash));
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        modCount++;
+        return null;
+    }
+
+    /**
+     * 重新散列：墓碑占了一半以上的空间时按原容量重建，否则二倍扩容
+     */
+    private void rehash() {
+        int capacity = keys.length;
+        int newCapacity = size * 2 <= (int) (capacity * MAX_LOAD_FACTOR) ? capacity : capacity << 1;
+        if (newCapacity > HashUtil.MAXIMUM_CAPACITY) {
+            throw new IllegalStateException("MySwissHashMap is full !");
+        }
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        long[] oldControls = controls;
+        allocate(newCapacity);
+        for (int g = 0; g < oldControls.length; g++) {
+            for (long m = matchFull(oldControls[g]); m != 0; m &= m - 1) {
+                int j = g * GROUP_WIDTH + lowestIndex(m);
+                int hash = HashUtil.mix(oldKeys[j].hashCode());
+                int i = findInsertSlot(hash);
+                setControl(i, h2(hash));
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        V old = (V) values[i];
+        removeAt(i);
+        return old;
+    }
+
+    /**
+     * 删除指定下标的元素：所在组还有空槽位时，探测不会越过这一组，可以直接置空；否则置为墓碑
+     */
+    private void removeAt(int index) {
+        if (matchEmpty(controls[index / GROUP_WIDTH]) != 0) {
+            setControl(index, EMPTY);
+            growthLeft++;
+        } else {
+            setControl(index, DELETED);
+        }
+        keys[index] = null;
+        values[index] = null;
+        size--;
+        modCount++;
+    }
+
+    @Override
+    public void clear() {
+        if (size > 0 || growthLeft < (int) (keys.length * MAX_LOAD_FACTOR)) {
+            Arrays.fill(keys, null);
+            Arrays.fill(values, null);
+            Arrays.fill(controls, EMPTY_GROUP);
+            size = 0;
+            growthLeft = (int) (keys.length * MAX_LOAD_FACTOR);
+            modCount++;
+        }
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if (entrySetView == null) {
+            entrySetView = new EntrySet();
+        }
+        return entrySetView;
+    }
+
+    /**
+     * 按组遍历控制字节，只访问有元素的槽位；删除不会移动其他元素，所以迭代中删除很简单
+     */
+    private final class HashIterator implements Iterator<Entry<K, V>> {
+        int group = -1;
+        long pending;
+        int last = -1;
+        int remaining = size;
+        int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            while (pending == 0) {
+                pending = matchFull(controls[++group]);
+            }
+            last = group * GROUP_WIDTH + lowestIndex(pending);
+            pending &= pending - 1;
+            remaining--;
+            return new MapEntry(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last == -1) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(last);
+            expectedModCount = modCount;
+            last = -1;
+        }
+    }
+
+    /**
+     * 槽位上的键值对，setValue时key还在map中则写回数组(原槽位或重新查找)，
+     * 已被删除则只修改这个键值对，不会重新插入
+     */
+    private final class MapEntry extends SimpleEntry<K, V> {
+        final int index;
+
+        MapEntry(int index) {
+            super((K) keys[index], (V) values[index]);
+            this.index = index;
+        }
+
+        @Override
+        public V setValue(V value) {
+            int i = keys[index] == getKey() ? index : indexOf(getKey());
+            if (i >= 0) {
+                values[i] = value;
+            }
+            return super.setValue(value);
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<K, V>> {
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new HashIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            int i = indexOf(e.getKey());
+            return i >= 0 && Objects.equals(values[i], e.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!contains(o)) {
+                return false;
+            }
+            removeAt(indexOf(((Entry<?, ?>) o).getKey()));
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            MySwissHashMap.this.clear();
+        }
+    }
+
+    public static void main(String[] args) {
+        MySwissHashMap<String, String> map = new MySwissHashMap<>();
+
+        map.put("code", "1");
+        map.put("reason", "param is not right");
+        map.put("data", null);
+        map.put("size", "10");
+
+        System.out.println(map.containsKey("code"));
+        System.out.println(map.containsKey("java"));
+        System.out.println(map.get("reason"));
+        System.out.println(map.remove("size"));
+        System.out.println(map.containsKey("size"));
+        System.out.println(map.entrySet());
+
+        //反复增删，墓碑会被重新散列清理
+        MySwissHashMap<Integer, Integer> numbers = new MySwissHashMap<>();
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 100_000; i++) {
+                numbers.put(round * 100_000 + i, i);
+            }
+            for (int i = 0; i < 100_000; i++) {
+                numbers.remove(round * 100_000 + i);
+            }
+        }
+        System.out.println("size = " + numbers.size() + ", capacity = " + numbers.keys.length);
+    }
+}
@@ -0,0 +1,345 @@
+package pers.hanchao.datastructure.map;
+
+import java.util.function.Function;
+
+/**
+ * <p>W-TinyLFU缓存：窗口LRU + 分段LRU主区 + Count-Min Sketch准入过滤</P>
+ * 1.MyHashMap(key -> Node)负责查找，Node再通过prev、next挂在三个LRU队列之一：window、probation、protected
+ * 2.window：约占1%，新元素先进入window；window满时把最久未访问的元素作为候选者(candidate)送往主区
+ * 3.主区(SLRU)：probation + protected(约占主区80%)；probation中的元素再次命中则晋升到protected，protected满时把最久未访问的元素降级回probation
+ * 4.准入(TinyLFU)：主区已满时，比较候选者和probation头部元素(victim)的访问频率，候选者频率更高才替换victim，否则淘汰候选者；
+ *   一次性扫描的key频率很低，进不了主区，不会冲掉热点数据
+ * 5.访问频率由FrequencySketch(4位Count-Min Sketch)估算，每次get、put都记录一次，定期减半衰减
+ * 6.get(key)、put(key,value)、remove(key)：只移动指针，命中时不创建对象；复杂度O(1)
+ * 7.get(key, loader)：未命中时调用loader加载并放入缓存，只记录一次访问，用于按trace模拟缓存
+ * 8.hitCount()、missCount()、evictionCount()、hitRate()：统计信息；非线程安全
+ *
+ * @author hanchao
+ */
+public class MyTinyLfuCache<K, V> {
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    /**
+     * 缓存节点
+     */
+    static final class Node<K, V> {
+        final K key;
+        V value;
+        Node<K, V> prev;
+        Node<K, V> next;
+        /**
+         * 所在队列：WINDOW、PROBATION、PROTECTED
+         */
+        int queue;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * LRU队列：head最久未访问，tail最近访问
+     */
+    static final class AccessQueue<K, V> {
+        Node<K, V> head;
+        Node<K, V> tail;
+        int size;
+
+        void linkLast(Node<K, V> node) {
+            Node<K, V> last = tail;
+            node.prev = last;
+            node.next = null;
+            tail = node;
+            if (last == null) {
+                head = node;
+            } else {
+                last.next = node;
+            }
+            size++;
+        }
+
+        void unlink(Node<K, V> node) {
+            Node<K, V> prev = node.prev, next = node.next;
+            if (prev == null) {
+                head = next;
+            } else {
+                prev.next = next;
+            }
+            if (next == null) {
+                tail = prev;
+            } else {
+                next.prev = prev;
+            }
+            node.prev = node.next = null;
+            size--;
+        }
+
+        void moveToLast(Node<K, V> node) {
+            if (node != tail) {
+                unlink(node);
+                linkLast(node);
+            }
+        }
+
+        Node<K, V> pollFirst() {
+            Node<K, V> first = head;
+            if (first != null) {
+                unlink(first);
+            }
+            return first;
+        }
+
+        void clear() {
+            head = tail = null;
+            size = 0;
+        }
+    }
+
+    private final MyHashMap<K, Node<K, V>> data = new MyHashMap<>();
+
+    private final FrequencySketch sketch;
+
+    private final AccessQueue<K, V> window = new AccessQueue<>();
+
+    private final AccessQueue<K, V> probation = new AccessQueue<>();
+
+    private final AccessQueue<K, V> protectedQueue = new AccessQueue<>();
+
+    private final int maxSize;
+
+    private final int windowMax;
+
+    private final int mainMax;
+
+    private final int protectedMax;
+
+    private final MyLruCache.EvictionListener<K, V> listener;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    public MyTinyLfuCache(int maxSize) {
+        this(maxSize, null);
+    }
+
+    public MyTinyLfuCache(int maxSize, MyLruCache.EvictionListener<K, V> listener) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.listener = listener;
+        //1.window约1%，至少1个
+        windowMax = Math.max(1, maxSize / 100);
+        //2.主区为剩余部分，protected约占主区80%
+        mainMax = maxSize - windowMax;
+        protectedMax = (int) (mainMax * 0.8);
+        sketch = new FrequencySketch(maxSize);
+    }
+
+    /**
+     * 查找，记录一次访问
+     */
+    public V get(Object key) {
+        sketch.increment(key);
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        onHit(node);
+        return node.value;
+    }
+
+    /**
+     * 查找，未命中时调用loader加载并放入缓存；loader返回null时不放入缓存
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value == null && !data.containsKey(key)) {
+            value = loader.apply(key);
+            if (value != null) {
+                insert(key, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 放入缓存，key已存在时覆盖value并视为一次命中，返回旧值
+     */
+    public V put(K key, V value) {
+        sketch.increment(key);
+        Node<K, V> node = data.get(key);
+        if (node != null) {
+            V oldValue = node.value;
+            node.value = value;
+            onHit(node);
+            return oldValue;
+        }
+        insert(key, value);
+        return null;
+    }
+
+    /**
+     * 删除，不算淘汰
+     */
+    public V remove(Object key) {
+        Node<K, V> node = data.remove(key);
+        if (node == null) {
+            return null;
+        }
+        queueOf(node).unlink(node);
+        return node.value;
+    }
+
+    public boolean containsKey(Object key) {
+        return data.containsKey(key);
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    public void clear() {
+        data.clear();
+        window.clear();
+        probation.clear();
+        protectedQueue.clear();
+        sketch.clear();
+    }
+
+    /**
+     * 命中：window、protected中移到队尾；probation中晋升到protected，protected满则降级头部元素
+     */
+    private void onHit(Node<K, V> node) {
+        if (node.queue == WINDOW) {
+            window.moveToLast(node);
+        } else if (node.queue == PROTECTED) {
+            protectedQueue.moveToLast(node);
+        } else {
+            probation.unlink(node);
+            node.queue = PROTECTED;
+            protectedQueue.linkLast(node);
+            if (protectedQueue.size > protectedMax) {
+                Node<K, V> demoted = protectedQueue.pollFirst();
+                demoted.queue = PROBATION;
+                probation.linkLast(demoted);
+            }
+        }
+    }
+
+    /**
+     * 新元素进入window，window满则把候选者送往主区
+     */
+    private void insert(K key, V value) {
+        Node<K, V> node = new Node<>(key, value);
+        node.queue = WINDOW;
+        data.put(key, node);
+        window.linkLast(node);
+        if (window.size > windowMax) {
+            admit(window.pollFirst());
+        }
+    }
+
+    /**
+     * 准入：主区未满直接进入probation；否则候选者和victim比较访问频率，淘汰频率低的一方
+     */
+    private void admit(Node<K, V> candidate) {
+        candidate.queue = PROBATION;
+        if (probation.size + protectedQueue.size < mainMax) {
+            probation.linkLast(candidate);
+            return;
+        }
+        Node<K, V> victim = probation.head != null ? probation.head : protectedQueue.head;
+        if (victim == null || sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+            evict(candidate);
+            return;
+        }
+        queueOf(victim).unlink(victim);
+        evict(victim);
+        probation.linkLast(candidate);
+    }
+
+    /**
+     * 淘汰：节点已经不在任何队列中
+     */
+    private void evict(Node<K, V> node) {
+        data.remove(node.key);
+        evictions++;
+        if (listener != null) {
+            listener.onEviction(node.key, node.value);
+        }
+    }
+
+    private AccessQueue<K, V> queueOf(Node<K, V> node) {
+        return node.queue == WINDOW ? window : node.queue == PROBATION ? probation : protectedQueue;
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    public long hitCount() {
+        return hits;
+    }
+
+    public long missCount() {
+        return misses;
+    }
+
+    public long evictionCount() {
+        return evictions;
+    }
+
+    /**
+     * 命中率，没有访问过时返回0
+     */
+    public double hitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * 各区域元素个数，用于观察
+     */
+    public String regionSizes() {
+        return "window " + window.size + "/" + windowMax + ", probation " + probation.size
+                + ", protected " + protectedQueue.size + "/" + protectedMax;
+    }
+
+    public static void main(String[] args) {
+        MyTinyLfuCache<Integer, Integer> cache = new MyTinyLfuCache<>(100,
+                (key, value) -> {
+                    if (key < 50) {
+                        System.out.println("------evict hot key = " + key);
+                    }
+                });
+        //热点key 0~49反复访问
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 50; i++) {
+                cache.get(i, k -> k);
+            }
+        }
+        //一次性扫描1000个新key
+        for (int i = 1000; i < 2000; i++) {
+            cache.get(i, k -> k);
+        }
+        int hot = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.containsKey(i)) {
+                hot++;
+            }
+        }
+        System.out.println("hot keys kept after scan = " + hot + "/50, " + cache.regionSizes());
+        System.out.printf("hits %d, misses %d, evictions %d, hitRate %.2f%n",
+                cache.hitCount(), cache.missCount(), cache.evictionCount(), cache.hitRate());
+    }
+}
@@ -0,0 +1,376 @@
+package pers.hanchao.datastructure.map;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>带过期时间(TTL)的缓存：MyHashMap + 分层时间轮(hierarchical timing wheel)</P>
+ * 1.expireAfterWrite：写入后经过指定时间过期；expireAfterAccess：最后一次读写后经过指定时间过期；两者同时设置时先到者生效，0表示不启用
+ * 2.put(key, value, ttl, unit)：为单个元素指定写入过期时间，代替expireAfterWrite
+ * 3.时间轮：6层，每层的桶是带哨兵的双向链表；第0层每个桶约1ms(2^20ns)，每层64个桶，上一层一圈 = 下一层一个桶，
+ *   最后一层只有1个桶，存放13天以上的元素；元素按剩余时间放入对应层的桶中，加入、移出都是O(1)
+ * 4.惰性推进：没有后台线程，每次get、put、remove、containsKey、size时按当前时间推进时间轮；推进时只处理走过的桶，
+ *   到期的元素删除，未到期的(上层桶中的元素)放入下层的桶；每个元素最多下沉6次，均摊O(1)
+ * 5.桶的精度有限，get(key)、containsKey(key)还会检查元素本身的过期时间，已过期立即删除，不会返回过期元素
+ * 6.expiredCount()：已过期删除的元素个数；wheelLag(unit)：距离上次推进时间轮的时间，长时间没有读写时滞后变大
+ * 7.size()可能包含当前1ms桶内已过期、尚未处理的元素；非线程安全
+ *
+ * @author hanchao
+ */
+public class MyTtlCache<K, V> {
+
+    /**
+     * 每层桶的数量，都是2的幂次方
+     */
+    private static final int[] BUCKETS = {64, 64, 64, 64, 64, 1};
+
+    /**
+     * 每层一个桶的时间跨度 = 2^SHIFT纳秒：约1ms、67ms、4.3s、4.6min、4.9h、13天
+     */
+    private static final int[] SHIFT = {20, 26, 32, 38, 44, 50};
+
+    /**
+     * 缓存节点，同时是时间轮桶中的链表节点
+     */
+    static final class Node<K, V> {
+        final K key;
+        V value;
+        /**
+         * 是否按写入时间过期，以及写入过期的时间点
+         */
+        boolean expiresAfterWrite;
+        long writeDeadline;
+        /**
+         * 访问过期时长，0表示不启用
+         */
+        long accessTtl;
+        /**
+         * 实际过期时间点 = min(写入过期时间点, 最后访问时间 + accessTtl)
+         */
+        long expireAt;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        /**
+         * 永不过期
+         */
+        boolean eternal() {
+            return !expiresAfterWrite && accessTtl == 0;
+        }
+    }
+
+    private final MyHashMap<K, Node<K, V>> data = new MyHashMap<>();
+
+    /**
+     * 时间轮：wheel[层][桶]是哨兵节点
+     */
+    private final Node<K, V>[][] wheel;
+
+    private final long expireAfterWrite;
+
+    private final long expireAfterAccess;
+
+    /**
+     * 时钟(纳秒)，默认System.nanoTime()，可以替换为模拟时钟
+     */
+    private final LongSupplier ticker;
+
+    /**
+     * 时间轮当前时间(纳秒)，即上次推进的时间
+     */
+    private long nanos;
+
+    private long expiredCount;
+
+    public MyTtlCache(long expireAfterWrite, long expireAfterAccess, TimeUnit unit) {
+        this(expireAfterWrite, expireAfterAccess, unit, System::nanoTime);
+    }
+
+    @SuppressWarnings("unchecked")
+    public MyTtlCache(long expireAfterWrite, long expireAfterAccess, TimeUnit unit, LongSupplier ticker) {
+        if (expireAfterWrite < 0 || expireAfterAccess < 0) {
+            throw new IllegalArgumentException("ttl must not be negative");
+        }
+        this.expireAfterWrite = unit.toNanos(expireAfterWrite);
+        this.expireAfterAccess = unit.toNanos(expireAfterAccess);
+        this.ticker = ticker;
+        this.nanos = ticker.getAsLong();
+        wheel = (Node<K, V>[][]) new Node<?, ?>[BUCKETS.length][];
+        for (int i = 0; i < BUCKETS.length; i++) {
+            wheel[i] = (Node<K, V>[]) new Node<?, ?>[BUCKETS[i]];
+            for (int j = 0; j < BUCKETS[i]; j++) {
+                Node<K, V> sentinel = new Node<>(null, null);
+                sentinel.prev = sentinel.next = sentinel;
+                wheel[i][j] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * 查找：已过期则删除并返回null；启用了访问过期时刷新过期时间
+     */
+    public V get(Object key) {
+        long now = ticker.getAsLong();
+        advance(now);
+        Node<K, V> node = data.get(key);
+        if (node == null || expireIfNeeded(node, now)) {
+            return null;
+        }
+        if (node.accessTtl > 0) {
+            node.expireAt = expireAt(node, now);
+            reschedule(node);
+        }
+        return node.value;
+    }
+
+    /**
+     * 放入缓存，使用expireAfterWrite；返回未过期的旧值
+     */
+    public V put(K key, V value) {
+        return put(key, value, expireAfterWrite);
+    }
+
+    /**
+     * 放入缓存，指定写入过期时间；返回未过期的旧值
+     */
+    public V put(K key, V value, long ttl, TimeUnit unit) {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl must be positive: " + ttl);
+        }
+        return put(key, value, unit.toNanos(ttl));
+    }
+
+    private V put(K key, V value, long writeTtl) {
+        long now = ticker.getAsLong();
+        advance(now);
+        Node<K, V> node = data.get(key);
+        V oldValue = null;
+        if (node == null || expireIfNeeded(node, now)) {
+            node = new Node<>(key, value);
+            data.put(key, node);
+        } else {
+            oldValue = node.value;
+            node.value = value;
+        }
+        node.expiresAfterWrite = writeTtl > 0;
+        node.writeDeadline = now + writeTtl;
+        node.accessTtl = expireAfterAccess;
+        if (node.eternal()) {
+            unlink(node);
+        } else {
+            node.expireAt = expireAt(node, now);
+            reschedule(node);
+        }
+        return oldValue;
+    }
+
+    /**
+     * 删除，返回未过期的旧值
+     */
+    public V remove(Object key) {
+        long now = ticker.getAsLong();
+        advance(now);
+        Node<K, V> node = data.remove(key);
+        if (node == null) {
+            return null;
+        }
+        unlink(node);
+        return isExpired(node, now) ? null : node.value;
+    }
+
+    /**
+     * 是否包含未过期的key，不刷新访问过期时间
+     */
+    public boolean containsKey(Object key) {
+        long now = ticker.getAsLong();
+        advance(now);
+        Node<K, V> node = data.get(key);
+        return node != null && !expireIfNeeded(node, now);
+    }
+
+    public int size() {
+        advance(ticker.getAsLong());
+        return data.size();
+    }
+
+    public void clear() {
+        data.clear();
+        for (Node<K, V>[] buckets : wheel) {
+            for (Node<K, V> sentinel : buckets) {
+                sentinel.prev = sentinel.next = sentinel;
+            }
+        }
+    }
+
+    /**
+     * 立即按当前时间推进时间轮，删除到期的元素
+     */
+    public void cleanUp() {
+        advance(ticker.getAsLong());
+    }
+
+    /**
+     * 已过期删除的元素个数
+     */
+    public long expiredCount() {
+        return expiredCount;
+    }
+
+    /**
+     * 时间轮滞后：当前时间 - 上次推进的时间
+     */
+    public long wheelLag(TimeUnit unit) {
+        return unit.convert(ticker.getAsLong() - nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 过期时间点：写入过期和访问过期先到者
+     */
+    private long expireAt(Node<K, V> node, long now) {
+        if (node.accessTtl == 0) {
+            return node.writeDeadline;
+        }
+        long accessDeadline = now + node.accessTtl;
+        return node.expiresAfterWrite && node.writeDeadline - accessDeadline < 0 ? node.writeDeadline : accessDeadline;
+    }
+
+    private boolean isExpired(Node<K, V> node, long now) {
+        return !node.eternal() && node.expireAt - now <= 0;
+    }
+
+    /**
+     * 已过期则删除
+     */
+    private boolean expireIfNeeded(Node<K, V> node, long now) {
+        if (!isExpired(node, now)) {
+            return false;
+        }
+        unlink(node);
+        data.remove(node.key);
+        expiredCount++;
+        return true;
+    }
+
+    /**
+     * 推进时间轮：每一层从上次的桶走到当前的桶，某一层没有走过新的桶时，更上层也不会走过新的桶
+     */
+    private void advance(long now) {
+        long previous = nanos;
+        if (now - previous <= 0) {
+            return;
+        }
+        nanos = now;
+        for (int i = 0; i < SHIFT.length; i++) {
+            long previousTicks = previous >>> SHIFT[i];
+            long delta = (now >>> SHIFT[i]) - previousTicks;
+            if (delta <= 0) {
+                break;
+            }
+            expire(i, previousTicks, delta);
+        }
+    }
+
+    /**
+     * 处理第level层走过的桶(包括上次所在的桶)：到期的删除，未到期的重新放入下层
+     */
+    private void expire(int level, long previousTicks, long delta) {
+        Node<K, V>[] buckets = wheel[level];
+        int mask = buckets.length - 1;
+        int steps = (int) Math.min(1 + delta, buckets.length);
+        int start = (int) (previousTicks & mask);
+        for (int i = start; i < start + steps; i++) {
+            Node<K, V> sentinel = buckets[i & mask];
+            Node<K, V> node = sentinel.next;
+            sentinel.prev = sentinel.next = sentinel;
+            while (node != sentinel) {
+                Node<K, V> next = node.next;
+                node.prev = node.next = null;
+                if (node.expireAt - nanos <= 0) {
+                    data.remove(node.key);
+                    expiredCount++;
+                } else {
+                    schedule(node);
+                }
+                node = next;
+            }
+        }
+    }
+
+    /**
+     * 按剩余时间放入对应层的桶：剩余时间小于上一层一个桶的跨度时放入本层
+     */
+    private void schedule(Node<K, V> node) {
+        long delay = node.expireAt - nanos;
+        Node<K, V> sentinel;
+        if (delay <= 0) {
+            //已经到期，放入当前的桶，下次推进时删除
+            sentinel = wheel[0][(int) (nanos >>> SHIFT[0]) & (BUCKETS[0] - 1)];
+        } else {
+            int level = 0;
+            while (level < SHIFT.length - 1 && delay >= 1L << SHIFT[level + 1]) {
+                level++;
+            }
+            sentinel = wheel[level][(int) (node.expireAt >>> SHIFT[level]) & (BUCKETS[level] - 1)];
+        }
+        //接在桶的末尾
+        Node<K, V> last = sentinel.prev;
+        node.prev = last;
+        node.next = sentinel;
+        last.next = node;
+        sentinel.prev = node;
+    }
+
+    private void reschedule(Node<K, V> node) {
+        unlink(node);
+        schedule(node);
+    }
+
+    /**
+     * 从桶中摘除，不在时间轮中时什么都不做
+     */
+    private void unlink(Node<K, V> node) {
+        if (node.prev != null) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = node.next = null;
+        }
+    }
+
+    public static void main(String[] args) {
+        //模拟时钟，单位纳秒
+        long[] clock = {0};
+        MyTtlCache<String, Integer> cache = new MyTtlCache<>(10, 0, TimeUnit.SECONDS, () -> clock[0]);
+        cache.put("a", 1);
+        cache.put("b", 2, 100, TimeUnit.MILLISECONDS);
+        cache.put("c", 3, 1, TimeUnit.HOURS);
+        clock[0] += TimeUnit.MILLISECONDS.toNanos(150);
+        System.out.println("150ms: get(b) = " + cache.get("b") + ", wheelLag = " + cache.wheelLag(TimeUnit.MILLISECONDS)
+                + "ms, expiredCount = " + cache.expiredCount());
+        clock[0] += TimeUnit.SECONDS.toNanos(20);
+        System.out.println("20s later, before cleanUp: wheelLag = " + cache.wheelLag(TimeUnit.MILLISECONDS) + "ms");
+        cache.cleanUp();
+        System.out.println("after cleanUp: size = " + cache.size() + ", expiredCount = " + cache.expiredCount()
+                + ", get(c) = " + cache.get("c"));
+
+        //大量随机TTL：时间推进时按桶删除，不扫描整个散列表
+        int n = 1_000_000;
+        MyTtlCache<Integer, Integer> big = new MyTtlCache<>(0, 0, TimeUnit.SECONDS, () -> clock[0]);
+        Random random = new Random(42);
+        for (int i = 0; i < n; i++) {
+            big.put(i, i, 1 + random.nextInt(60_000), TimeUnit.MILLISECONDS);
+        }
+        long begin = System.nanoTime();
+        for (int second = 1; second <= 60; second++) {
+            clock[0] += TimeUnit.SECONDS.toNanos(1);
+            big.cleanUp();
+        }
+        System.out.printf("1M entries expired over 60s: size %d, expiredCount %d, %.1fms%n",
+                big.size(), big.expiredCount(), (System.nanoTime() - begin) / 1e6);
+    }
+}